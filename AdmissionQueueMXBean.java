@@ -0,0 +1,58 @@
+package m10d20.project2;
+
+/**
+ * 单个服务的准入队列的JMX管理接口
+ * <p>
+ * 每个服务的队列以"m10d20.project2:type=AdmissionQueue,name=英文标识"的名称
+ * 注册到平台MBean服务器。等待时间从请求进入队列算起，到获得执行许可为止，单位为微秒。
+ * </p>
+ */
+public interface AdmissionQueueMXBean {
+
+    /** @return 服务名称 */
+    String getName();
+
+    /** @return 同时执行的请求数上限 */
+    int getConcurrencyLimit();
+
+    /**
+     * 修改同时执行的请求数上限，立即生效
+     * @param limit 新的上限，至少为1
+     */
+    void setConcurrencyLimit(int limit);
+
+    /** @return 正在执行的请求数 */
+    int getRunning();
+
+    /** @return 正在排队等待的请求数 */
+    int getQueueDepth();
+
+    /** @return 获得执行许可的请求数 */
+    long getAdmitted();
+
+    /** @return 因队列已满被拒绝的请求数 */
+    long getRejected();
+
+    /** @return 等待超时的请求数 */
+    long getTimedOut();
+
+    /** @return 执行超过截止时间被取消的请求数 */
+    long getDeadlineExceeded();
+
+    /** @return 平均等待时间（微秒） */
+    double getMeanWaitMicros();
+
+    /** @return 等待时间中位数（微秒） */
+    double getP50WaitMicros();
+
+    /** @return 99百分位等待时间（微秒） */
+    double getP99WaitMicros();
+
+    /** @return 最大等待时间（微秒） */
+    double getMaxWaitMicros();
+
+    /**
+     * 清空计数器和等待时间统计，不影响正在排队和执行的请求
+     */
+    void reset();
+}
@@ -0,0 +1,533 @@
+package m10d20.project2;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 准入调度器 - 在执行服务之前按并发上限、输入大小和截止时间决定请求何时开始执行
+ * <p>
+ * 没有准入控制时，一个超大的请求（例如对几十MB的输入打乱或重复）会和其他请求平分CPU和内存，
+ * 几个这样的请求就足以让所有小请求排在它们后面。调度器限制三种并发数：
+ * 每个服务同时执行的请求数、所有服务合计的请求数，以及输入不小于{@link #LARGE_INPUT}个字符的大请求数。
+ * 超出上限的请求进入该服务的有界等待队列，队列满时立即以{@link OverloadException}拒绝，而不是无限堆积。
+ * </p>
+ * <p>
+ * 所有等待的请求按优先级排序，有空闲的执行名额时依次放行能够执行的请求。
+ * 优先级是进入队列的时间加上按输入大小计算的延后量：输入每大一倍，相当于晚到{@link #AGING_NANOS}纳秒，
+ * 小请求因此排在大请求前面；而大请求等待得足够久之后优先级会超过新到的小请求，不会被饿死。
+ * </p>
+ * <p>
+ * 每个请求有一个截止时间：在截止时间之前没有获得执行许可就以{@link OverloadException.Reason#TIMEOUT}失败；
+ * 已经开始执行但超过截止时间时，调度器中断执行线程，服务在下一个{@link Cancellation#checkpoint()}处结束。
+ * </p>
+ * <p>
+ * 调用方在自己的线程中阻塞等待，不需要额外的线程池，因此平台线程和虚拟线程都可以使用；
+ * 等待使用ReentrantLock和Condition而不是synchronized，虚拟线程等待时不会占住载体线程。
+ * 各服务的队列长度、执行数和等待时间通过JMX公开（见{@link AdmissionQueueMXBean}）。
+ * </p>
+ * <pre>
+ * try (AdmissionScheduler.Ticket ticket = scheduler.acquire(id, input.length(), 5, TimeUnit.SECONDS)) {
+ *     result = ServiceRegistry.get(id).execute(input);
+ * }
+ * </pre>
+ */
+final class AdmissionScheduler {
+
+    /** 输入字符数不小于这个值的请求是大请求，受{@link #getMaxLarge()}限制 */
+    static final long LARGE_INPUT = 256 * 1024;
+    /** 输入每大一倍，排队时相当于晚到达的纳秒数 */
+    static final long AGING_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /** 不超过这个字符数的输入没有延后量 */
+    private static final long SMALL_INPUT = 1024;
+    /** 每个服务的默认等待队列长度 */
+    static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private static final String DOMAIN = "m10d20.project2";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** 所有正在等待的请求，按优先级排序 */
+    private final TreeSet<Ticket> waiting = new TreeSet<>();
+    private final ServiceQueue[] queues;
+    private final int maxRunning;
+    private final int maxLarge;
+    private final int queueCapacity;
+    private int running;
+    private int runningLarge;
+    private long sequence;
+
+    /**
+     * @param maxRunning 所有服务合计同时执行的请求数上限
+     * @param maxLarge 同时执行的大请求数上限
+     * @param queueCapacity 每个服务的等待队列长度
+     */
+    AdmissionScheduler(int maxRunning, int maxLarge, int queueCapacity) {
+        this.maxRunning = Math.max(1, maxRunning);
+        this.maxLarge = Math.max(1, Math.min(maxLarge, this.maxRunning));
+        this.queueCapacity = Math.max(0, queueCapacity);
+        queues = new ServiceQueue[ServiceRegistry.size()];
+        for (int id = 0; id < queues.length; id++) {
+            StreamingService service = ServiceRegistry.getStreaming(id);
+            // 需要完整输入的服务在内存中保存整个输入和结果，默认最多占一半的执行名额
+            int limit = service.requiresFullInput() ? Math.max(1, this.maxRunning / 2) : this.maxRunning;
+            queues[id] = new ServiceQueue(ServiceRegistry.getKey(id), service.getName(), limit);
+        }
+    }
+
+    private static final class SharedHolder {
+        static final AdmissionScheduler SHARED = new AdmissionScheduler(
+                2 * Runtime.getRuntime().availableProcessors(),
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * 获取所有前端共享的调度器
+     * <p>
+     * 合计上限是CPU核心数的两倍：HTTP请求在执行期间还要读写网络，只按核心数放行会让CPU空闲；
+     * 大请求最多占一半的核心，其余核心总是留给小请求。
+     * </p>
+     * @return 调度器
+     */
+    static AdmissionScheduler shared() {
+        return SharedHolder.SHARED;
+    }
+
+    private static final class DeadlinesHolder {
+        static final ScheduledThreadPoolExecutor DEADLINES = newDeadlineTimer();
+
+        private static ScheduledThreadPoolExecutor newDeadlineTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                    ServiceExecutors.daemonThreads("admission-deadline"));
+            // 大多数请求在截止时间之前完成，取消的定时任务立即从队列中移除
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+
+    /**
+     * 等待获得执行许可
+     * @param serviceId 服务编号
+     * @param inputLength 输入字符数，未知时传-1（按大请求处理）
+     * @param timeout 从现在起到截止时间的时长，不大于0表示没有截止时间
+     * @param unit 时长单位
+     * @return 执行许可，执行结束后必须关闭
+     * @throws OverloadException 队列已满，或在截止时间之前未能获得许可时抛出
+     * @throws CancellationException 等待期间线程被中断时抛出，中断标志保持设置
+     */
+    Ticket acquire(int serviceId, long inputLength, long timeout, TimeUnit unit) {
+        ServiceQueue queue = queue(serviceId);
+        long now = System.nanoTime();
+        long deadline = timeout > 0 ? now + unit.toNanos(timeout) : Long.MAX_VALUE;
+        boolean large = inputLength < 0 || inputLength >= LARGE_INPUT;
+        lock.lock();
+        try {
+            if (queue.waiting >= queueCapacity && !canRun(queue, large)) {
+                queue.rejected.increment();
+                throw new OverloadException(OverloadException.Reason.QUEUE_FULL, queue.key,
+                        "服务繁忙，等待队列已满: " + queue.key);
+            }
+            Ticket ticket = new Ticket(serviceId, large, now + delay(inputLength), sequence++, deadline);
+            waiting.add(ticket);
+            queue.waiting++;
+            dispatch();
+            while (ticket.state == Ticket.WAITING) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    abandon(ticket, queue);
+                    queue.timedOut.increment();
+                    throw new OverloadException(OverloadException.Reason.TIMEOUT, queue.key,
+                            "等待执行超时: " + queue.key);
+                }
+                try {
+                    ticket.admitted.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    if (ticket.state != Ticket.WAITING) {
+                        // 已经获得许可，保留中断标志交给服务处理
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    abandon(ticket, queue);
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("等待执行时被取消: " + queue.key);
+                }
+            }
+            queue.wait.record(System.nanoTime() - now);
+            if (deadline != Long.MAX_VALUE) {
+                ticket.thread = Thread.currentThread();
+                ticket.timer = DeadlinesHolder.DEADLINES.schedule(ticket, deadline - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+            }
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在调度器的控制下执行服务
+     * @param serviceId 服务编号
+     * @param input 输入文本
+     * @param timeout 从现在起到截止时间的时长，不大于0表示没有截止时间
+     * @param unit 时长单位
+     * @return 处理结果
+     * @throws OverloadException 被拒绝、等待超时或执行超过截止时间时抛出
+     */
+    String execute(int serviceId, String input, long timeout, TimeUnit unit) {
+        Ticket ticket = acquire(serviceId, input.length(), timeout, unit);
+        try {
+            return ServiceRegistry.get(serviceId).execute(input);
+        } catch (CancellationException e) {
+            throw ticket.expiredOr(e);
+        } finally {
+            ticket.close();
+        }
+    }
+
+    /**
+     * 依次放行能够执行的等待请求，调用时必须持有锁
+     */
+    private void dispatch() {
+        Iterator<Ticket> iterator = waiting.iterator();
+        while (running < maxRunning && iterator.hasNext()) {
+            Ticket ticket = iterator.next();
+            ServiceQueue queue = queues[ticket.serviceId];
+            if (!canRun(queue, ticket.large)) {
+                // 这个服务或大请求的名额已满，优先级更低的其他请求仍然可能执行
+                continue;
+            }
+            iterator.remove();
+            queue.waiting--;
+            queue.running++;
+            queue.admitted.increment();
+            running++;
+            if (ticket.large) {
+                runningLarge++;
+            }
+            ticket.state = Ticket.RUNNING;
+            ticket.admitted.signal();
+        }
+    }
+
+    private boolean canRun(ServiceQueue queue, boolean large) {
+        return running < maxRunning && queue.running < queue.limit && !(large && runningLarge >= maxLarge);
+    }
+
+    private void abandon(Ticket ticket, ServiceQueue queue) {
+        waiting.remove(ticket);
+        queue.waiting--;
+    }
+
+    private void release(Ticket ticket) {
+        lock.lock();
+        try {
+            if (ticket.state != Ticket.RUNNING) {
+                return;
+            }
+            ticket.state = Ticket.RELEASED;
+            queues[ticket.serviceId].running--;
+            running--;
+            if (ticket.large) {
+                runningLarge--;
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 输入大小对应的延后量：不超过{@link #SMALL_INPUT}为0，之后每大一倍增加{@link #AGING_NANOS}
+     */
+    private static long delay(long inputLength) {
+        long length = inputLength < 0 ? LARGE_INPUT : inputLength;
+        if (length <= SMALL_INPUT) {
+            return 0;
+        }
+        int doublings = 64 - Long.numberOfLeadingZeros((length - 1) / SMALL_INPUT);
+        return doublings * AGING_NANOS;
+    }
+
+    private ServiceQueue queue(int serviceId) {
+        if (serviceId < 0 || serviceId >= queues.length) {
+            throw new IllegalArgumentException("无效的服务编号: " + serviceId);
+        }
+        return queues[serviceId];
+    }
+
+    /**
+     * 获取服务的队列统计
+     * @param serviceId 服务编号
+     * @return 统计，可以直接读取也可以通过JMX公开
+     */
+    AdmissionQueueMXBean getQueue(int serviceId) {
+        return queue(serviceId);
+    }
+
+    /**
+     * 修改服务同时执行的请求数上限
+     * @param serviceId 服务编号
+     * @param limit 新的上限，至少为1
+     */
+    void setConcurrencyLimit(int serviceId, int limit) {
+        queue(serviceId).setConcurrencyLimit(limit);
+    }
+
+    /**
+     * @return 所有服务合计同时执行的请求数上限
+     */
+    int getMaxRunning() {
+        return maxRunning;
+    }
+
+    /**
+     * @return 同时执行的大请求数上限
+     */
+    int getMaxLarge() {
+        return maxLarge;
+    }
+
+    /**
+     * 以"m10d20.project2:type=AdmissionQueue,name=英文标识"注册各服务的队列，重复注册会被忽略
+     */
+    void registerMBeans() {
+        for (ServiceQueue queue : queues) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(queue,
+                        new ObjectName(DOMAIN + ":type=AdmissionQueue,name=" + ObjectName.quote(queue.key)));
+            } catch (InstanceAlreadyExistsException e) {
+                // 已注册
+            } catch (JMException | SecurityException e) {
+                // 没有权限时不公开统计，不影响调度
+            }
+        }
+    }
+
+    /**
+     * 执行许可，执行结束后关闭以归还名额；关闭多次与关闭一次相同
+     */
+    final class Ticket implements Comparable<Ticket>, AutoCloseable, Runnable {
+        static final int WAITING = 0;
+        static final int RUNNING = 1;
+        static final int RELEASED = 2;
+
+        final int serviceId;
+        final boolean large;
+        /** 排序键：进入队列的时间加上延后量，相同时按进入队列的顺序 */
+        private final long priority;
+        private final long order;
+        private final long deadline;
+        private final Condition admitted = lock.newCondition();
+        /** 以下字段只在持有锁时访问 */
+        private int state = WAITING;
+        private Thread thread;
+        private ScheduledFuture<?> timer;
+        private boolean expired;
+
+        Ticket(int serviceId, boolean large, long priority, long order, long deadline) {
+            this.serviceId = serviceId;
+            this.large = large;
+            this.priority = priority;
+            this.order = order;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            // System.nanoTime()的值只能相减比较，不能直接比较大小
+            long difference = priority - other.priority;
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+
+        /**
+         * @return 截止时间（System.nanoTime()），没有截止时间时为Long.MAX_VALUE
+         */
+        long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * @return 执行是否因超过截止时间被中断
+         */
+        boolean isExpired() {
+            lock.lock();
+            try {
+                return expired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 把服务因中断抛出的取消异常换成过载异常
+         * @param cause 服务抛出的异常
+         * @return 超过截止时间时为过载异常，否则为原异常
+         */
+        RuntimeException expiredOr(RuntimeException cause) {
+            if (!isExpired()) {
+                return cause;
+            }
+            String key = queues[serviceId].key;
+            OverloadException e = new OverloadException(OverloadException.Reason.DEADLINE_EXCEEDED, key,
+                    "执行超过截止时间: " + key);
+            e.initCause(cause);
+            return e;
+        }
+
+        /**
+         * 截止时间到：仍在执行时中断执行线程
+         */
+        @Override
+        public void run() {
+            lock.lock();
+            try {
+                if (state == RUNNING && !expired) {
+                    expired = true;
+                    queues[serviceId].deadlineExceeded.increment();
+                    thread.interrupt();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            release(this);
+            boolean interrupted;
+            lock.lock();
+            try {
+                if (timer != null) {
+                    timer.cancel(false);
+                    timer = null;
+                }
+                interrupted = expired && thread == Thread.currentThread();
+            } finally {
+                lock.unlock();
+            }
+            if (interrupted) {
+                // 清除截止时间造成的中断，执行线程（可能是线程池中复用的线程）可以继续处理其他请求
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * 一个服务的并发上限、队列计数和等待时间统计；计数字段只在持有锁时修改
+     */
+    private final class ServiceQueue implements AdmissionQueueMXBean {
+        final String key;
+        final String name;
+        volatile int limit;
+        volatile int running;
+        volatile int waiting;
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder timedOut = new LongAdder();
+        final LongAdder deadlineExceeded = new LongAdder();
+        final LatencyHistogram wait = new LatencyHistogram();
+
+        ServiceQueue(String key, String name, int limit) {
+            this.key = key;
+            this.name = name;
+            this.limit = limit;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getConcurrencyLimit() {
+            return limit;
+        }
+
+        @Override
+        public void setConcurrencyLimit(int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("并发上限至少为1: " + limit);
+            }
+            lock.lock();
+            try {
+                this.limit = limit;
+                // 上限提高后可能有等待的请求可以执行
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int getRunning() {
+            return running;
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return waiting;
+        }
+
+        @Override
+        public long getAdmitted() {
+            return admitted.sum();
+        }
+
+        @Override
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        @Override
+        public long getTimedOut() {
+            return timedOut.sum();
+        }
+
+        @Override
+        public long getDeadlineExceeded() {
+            return deadlineExceeded.sum();
+        }
+
+        @Override
+        public double getMeanWaitMicros() {
+            return wait.snapshot().mean() / 1000.0;
+        }
+
+        @Override
+        public double getP50WaitMicros() {
+            return wait.snapshot().percentile(50) / 1000.0;
+        }
+
+        @Override
+        public double getP99WaitMicros() {
+            return wait.snapshot().percentile(99) / 1000.0;
+        }
+
+        @Override
+        public double getMaxWaitMicros() {
+            return wait.snapshot().max() / 1000.0;
+        }
+
+        @Override
+        public void reset() {
+            admitted.reset();
+            rejected.reset();
+            timedOut.reset();
+            deadlineExceeded.reset();
+            wait.reset();
+        }
+    }
+}
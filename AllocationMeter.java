@@ -0,0 +1,137 @@
+package m10d20.project2;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 内存分配计量工具
+ * <p>
+ * 借助HotSpot提供的com.sun.management.ThreadMXBean读取当前线程累计分配的字节数，
+ * 两次读数之差即为期间分配的内存量，作用相当于JMH的GC profiler中的
+ * gc.alloc.rate.norm指标。JVM不支持该功能时所有读数返回-1。
+ * </p>
+ * <p>
+ * 并行执行的服务在fork-join线程池的工作线程上分配内存，只读当前线程会漏掉这部分，
+ * 这时用{@link #allThreadsAllocatedBytes()}和{@link #allocatedSince(Map)}统计所有线程的分配量。
+ * </p>
+ */
+final class AllocationMeter {
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = initThreadBean();
+
+    private AllocationMeter() {
+    }
+
+    private static com.sun.management.ThreadMXBean initThreadBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+        try {
+            if (!hotspot.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            if (!hotspot.isThreadAllocatedMemoryEnabled()) {
+                hotspot.setThreadAllocatedMemoryEnabled(true);
+            }
+            return hotspot;
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 是否能够统计线程分配量
+     * @return 支持时返回true
+     */
+    static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * 读取当前线程累计分配的字节数
+     * @return 累计分配字节数，不支持时返回-1
+     */
+    static long currentThreadAllocatedBytes() {
+        if (THREAD_BEAN == null) {
+            return -1;
+        }
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * 读取JVM中所有存活线程累计分配的字节数
+     * @return 线程编号到累计分配字节数，不支持时返回null
+     */
+    static Map<Long, Long> allThreadsAllocatedBytes() {
+        if (THREAD_BEAN == null) {
+            return null;
+        }
+        long[] ids = THREAD_BEAN.getAllThreadIds();
+        long[] allocated = THREAD_BEAN.getThreadAllocatedBytes(ids);
+        Map<Long, Long> snapshot = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            // 读取期间已经结束的线程返回-1
+            if (allocated[i] >= 0) {
+                snapshot.put(ids[i], allocated[i]);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 计算从快照到现在所有线程分配的字节数
+     * <p>
+     * 快照之后新建的线程从0开始计算；期间结束的线程读不到最终的分配量，这部分不计入，
+     * 因此测量期间线程池不应回收工作线程。其他后台线程的分配也会计入，测量时应保持空闲。
+     * </p>
+     * @param before {@link #allThreadsAllocatedBytes()}返回的快照
+     * @return 分配的字节数，不支持时返回-1
+     */
+    static long allocatedSince(Map<Long, Long> before) {
+        Map<Long, Long> after = allThreadsAllocatedBytes();
+        if (before == null || after == null) {
+            return -1;
+        }
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            Long start = before.get(entry.getKey());
+            total += entry.getValue() - (start != null ? start : 0L);
+        }
+        return total;
+    }
+
+    /**
+     * 读取所有垃圾收集器累计的收集次数
+     * @return 收集次数之和
+     */
+    static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long count = gc.getCollectionCount();
+            if (count > 0) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 读取所有垃圾收集器累计的收集耗时
+     * @return 收集耗时之和（毫秒）
+     */
+    static long gcTimeMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long time = gc.getCollectionTime();
+            if (time > 0) {
+                total += time;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,75 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 字节服务接口 - 直接处理UTF-8字节的服务契约
+ * <p>
+ * 数据来自文件或网络时，{@link Service}要求先把UTF-8字节解码为String，处理后再编码回字节，
+ * 即使变换只涉及ASCII字符（大小写转换、凯撒加密、空格去除）也要付出两次转换和两份拷贝的代价。
+ * 字节服务从一个ByteBuffer读取UTF-8输入、向另一个ByteBuffer写出UTF-8结果，
+ * 两者都可以是堆缓冲区、直接缓冲区或内存映射缓冲区。
+ * </p>
+ * <p>
+ * 逐字符映射服务有直接处理字节的实现，其余服务由适配器解码、调用{@link Service#execute(String)}再编码，
+ * 见{@link ByteServices#of(Service)}。两种实现的结果都与对解码后的文本调用execute再按UTF-8编码完全相同，
+ * 非法的UTF-8字节按U+FFFD处理。
+ * </p>
+ */
+public interface ByteService {
+
+    /**
+     * 处理source中剩余的全部UTF-8字节，把结果写入target
+     * <p>
+     * source应当在UTF-8字符边界处结束，否则末尾不完整的字符按非法字节处理。
+     * </p>
+     * @param source 输入，读取position到limit之间的字节，返回时position等于limit
+     * @param target 输出，从position开始写入
+     * @return 写入了结果的缓冲区，结果到它的position为止：target剩余空间足够时就是target本身，
+     *         否则是一个同类型（堆或直接）的更大的新缓冲区，其中已复制了target中position之前的内容
+     */
+    ByteBuffer execute(ByteBuffer source, ByteBuffer target);
+
+    /**
+     * 流式处理：从输入通道读到结束，结果写入输出通道
+     * <p>
+     * 默认实现见{@link ByteServices#execute(ByteService, ReadableByteChannel, WritableByteChannel)}，
+     * 按块调用{@link #execute(ByteBuffer, ByteBuffer)}；统计包装器把整个流记作一次调用。
+     * </p>
+     * @param in 输入
+     * @param out 输出，不关闭
+     * @throws IOException 读写失败时抛出
+     */
+    default void execute(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        ByteServices.execute(this, in, out);
+    }
+
+    /**
+     * 获取服务的名称标识
+     * @return 服务的名称
+     */
+    String getName();
+
+    /**
+     * 是否可以把输入在空白字节之后切成若干块分别处理，含义与{@link StreamingService#isSplittable()}相同
+     * @return 可以切分处理时返回true
+     */
+    default boolean isSplittable() {
+        return false;
+    }
+
+    /**
+     * 是否逐字符处理、与上下文无关，即可以在任意字符边界切开
+     * <p>
+     * 可切分的服务只保证在空白之后切开时结果不变；大小写转换、首字母大写等服务在单词中间切开会改变结果。
+     * 只有与上下文无关的服务在很长一段都没有空白时才可以在字符边界处切开。
+     * </p>
+     * @return 可以在任意字符边界切开时返回true
+     */
+    default boolean isContextFree() {
+        return false;
+    }
+}
@@ -0,0 +1,403 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字节服务的实现和工具方法
+ * <p>
+ * 逐字符映射服务（{@link CharMappingService}）直接在UTF-8字节上处理：ASCII字节按预先计算的
+ * 128项映射表转换或删除，多字节序列解码为一个字符后调用mapChar，结果再编码写出。
+ * 大写转换、凯撒加密和空格去除处理ASCII文本时完全不经过char，也不创建任何String。
+ * 遇到mapChar返回{@link CharMappingService#UNMAPPED}的字符或非法的UTF-8序列时，
+ * 整段输入退回到解码、execute、编码的适配器路径，与{@link CharMappingService#executeBatch(String[])}的做法一致。
+ * </p>
+ * <p>
+ * 与服务链融合一样，直接处理字节时只调用mapChar，不经过服务的统计包装器；
+ * 注册表中的字节服务另外由{@link ServiceMetrics#bytes(StreamingService)}在字节服务的边界上统计。
+ * </p>
+ */
+final class ByteServices {
+
+    /** 流式处理时每次读取的字节数 */
+    static final int CHUNK_BYTES = 64 << 10;
+    /** 与上下文无关的服务流式处理时找不到空白也必须切开的最大滞留字节数 */
+    private static final int MAX_TAIL = 1 << 20;
+
+    private ByteServices() {
+    }
+
+    /**
+     * 为服务创建字节服务：逐字符映射服务直接处理字节，其他服务使用解码、编码适配器
+     * @param service 服务
+     * @return 字节服务
+     */
+    static ByteService of(Service service) {
+        if (service instanceof CharMappingService) {
+            return new MappingByteService((CharMappingService) service);
+        }
+        return adapter(service);
+    }
+
+    /**
+     * 创建解码、编码适配器：把输入按UTF-8解码为String，调用execute，再把结果编码为UTF-8
+     * @param service 服务
+     * @return 字节服务
+     */
+    static ByteService adapter(final Service service) {
+        final boolean splittable = service instanceof StreamingService && ((StreamingService) service).isSplittable();
+        return new ByteService() {
+            @Override
+            public ByteBuffer execute(ByteBuffer source, ByteBuffer target) {
+                byte[] result = service.execute(decode(source)).getBytes(StandardCharsets.UTF_8);
+                target = ensureRemaining(target, result.length);
+                target.put(result);
+                return target;
+            }
+
+            @Override
+            public boolean isSplittable() {
+                return splittable;
+            }
+
+            @Override
+            public String getName() {
+                return service.getName();
+            }
+        };
+    }
+
+    /**
+     * 流式处理：可切分的服务每读到一段就处理到最后一个空白字节为止，其余部分留到与下一段一起处理；
+     * 不可切分的服务读完全部输入后处理一次。
+     * 很长一段都没有空白时，只有与上下文无关的服务（见{@link ByteService#isContextFree()}）在字符边界切开，
+     * 其他服务继续扩大缓冲区，直到遇到空白或输入结束
+     * @param service 字节服务
+     * @param in 输入
+     * @param out 输出，不关闭
+     * @throws IOException 读写失败时抛出
+     */
+    static void execute(ByteService service, ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        boolean splittable = service.isSplittable();
+        boolean contextFree = service.isContextFree();
+        ByteBuffer input = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        ByteBuffer output = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        while (true) {
+            Cancellation.checkpoint();
+            if (in.read(input) < 0) {
+                break;
+            }
+            int cut = splittable ? lastSpaceEnd(input) : 0;
+            if (cut == 0 && !input.hasRemaining()) {
+                if (splittable && contextFree && input.capacity() >= MAX_TAIL) {
+                    // 逐字符处理的服务可以切开超长的单词，切在最后一个字符的起始字节处
+                    cut = lastCharStart(input);
+                } else {
+                    input = ensureRemaining(input, input.capacity());
+                }
+            }
+            if (cut > 0) {
+                output = process(service, input, cut, output, out);
+            }
+        }
+        // 不可切分的服务即使输入为空也要执行一次（例如字数统计总有输出）
+        if (input.position() > 0 || !splittable) {
+            process(service, input, input.position(), output, out);
+        }
+    }
+
+    /**
+     * 处理input中[0, cut)的字节并写出，剩余的字节移到input的开头
+     */
+    private static ByteBuffer process(ByteService service, ByteBuffer input, int cut, ByteBuffer output,
+                                      WritableByteChannel out) throws IOException {
+        int end = input.position();
+        input.position(0).limit(cut);
+        output.clear();
+        output = service.execute(input, output);
+        output.flip();
+        while (output.hasRemaining()) {
+            out.write(output);
+        }
+        input.limit(end).position(cut);
+        input.compact();
+        return output;
+    }
+
+    /**
+     * @return [0, position)中最后一个空白字节之后的位置，没有空白时返回0
+     */
+    private static int lastSpaceEnd(ByteBuffer buffer) {
+        for (int i = buffer.position(); i > 0; i--) {
+            byte b = buffer.get(i - 1);
+            if (b >= 0 && WordCounter.isSpace((char) b)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return [0, position)中最后一个UTF-8字符的起始位置
+     */
+    private static int lastCharStart(ByteBuffer buffer) {
+        int i = buffer.position() - 1;
+        while (i > 0 && (buffer.get(i) & 0xC0) == 0x80 && buffer.position() - i < 4) {
+            i--;
+        }
+        return Math.max(i, 1);
+    }
+
+    /**
+     * 保证缓冲区至少还有needed字节的剩余空间，不够时换成同类型的更大缓冲区
+     * @param buffer 缓冲区
+     * @param needed 需要的剩余字节数
+     * @return 剩余空间足够的缓冲区，已复制原缓冲区中position之前的内容
+     */
+    static ByteBuffer ensureRemaining(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(buffer.capacity() * 2L, (long) buffer.position() + needed));
+        ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * 把剩余的字节按UTF-8解码，非法字节替换为U+FFFD，与new String(bytes, UTF_8)相同
+     */
+    private static String decode(ByteBuffer source) {
+        int length = source.remaining();
+        String text;
+        if (source.hasArray()) {
+            text = new String(source.array(), source.arrayOffset() + source.position(), length, StandardCharsets.UTF_8);
+            source.position(source.limit());
+        } else {
+            byte[] bytes = new byte[length];
+            source.get(bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return text;
+    }
+
+    /**
+     * 逐字符映射服务的字节实现
+     */
+    private static final class MappingByteService implements ByteService {
+        private final CharMappingService service;
+        private final ByteService fallback;
+        /** ASCII字符的映射结果：字符、DELETE或UNMAPPED */
+        private final int[] ascii = new int[128];
+        /** 所有ASCII字符都映射为ASCII字符或被删除，此时ASCII连续段的输出不会比输入长 */
+        private final boolean asciiClosed;
+        /** 是否与上下文无关，要检查全部字符，第一次用到时才计算 */
+        private volatile Boolean contextFree;
+
+        MappingByteService(CharMappingService service) {
+            this.service = service;
+            this.fallback = adapter(service);
+            boolean closed = true;
+            for (char c = 0; c < ascii.length; c++) {
+                ascii[c] = service.mapChar(c);
+                closed &= ascii[c] < 0x80 && ascii[c] != CharMappingService.UNMAPPED;
+            }
+            this.asciiClosed = closed;
+        }
+
+        @Override
+        public ByteBuffer execute(ByteBuffer source, ByteBuffer target) {
+            int start = source.position();
+            int limit = source.limit();
+            int targetStart = target.position();
+            // 映射通常不改变长度，先按输入长度预留空间，之后只有多字节结果才可能需要扩容
+            target = ensureRemaining(target, limit - start);
+            int i = start;
+            while (i < limit) {
+                if ((i & Cancellation.CHECK_MASK) == 0) {
+                    Cancellation.checkpoint();
+                }
+                byte b = source.get(i);
+                if (b >= 0 && asciiClosed) {
+                    target = ensureRemaining(target, limit - i);
+                    i = mapAscii(source, i, limit, target);
+                    continue;
+                }
+                int mapped;
+                int length;
+                if (b >= 0) {
+                    mapped = ascii[b];
+                    length = 1;
+                } else {
+                    length = sequenceLength(source, i, limit);
+                    if (length < 0) {
+                        break;
+                    }
+                    if (length == 4) {
+                        // 补充平面字符由代理对表示，两半都不改变时原样复制，否则交给适配器
+                        int codePoint = decode(source, i, length);
+                        char high = Character.highSurrogate(codePoint);
+                        char low = Character.lowSurrogate(codePoint);
+                        if (service.mapChar(high) != high || service.mapChar(low) != low) {
+                            break;
+                        }
+                        target = ensureRemaining(target, 4);
+                        for (int k = 0; k < 4; k++) {
+                            target.put(source.get(i + k));
+                        }
+                        i += 4;
+                        continue;
+                    }
+                    mapped = service.mapChar((char) decode(source, i, length));
+                }
+                if (mapped == CharMappingService.UNMAPPED || Character.isSurrogate((char) mapped)) {
+                    break;
+                }
+                if (mapped != CharMappingService.DELETE) {
+                    target = put(target, (char) mapped);
+                }
+                i += length;
+            }
+            if (i < limit) {
+                target.position(targetStart);
+                source.position(start);
+                return fallback.execute(source, target);
+            }
+            source.position(limit);
+            return target;
+        }
+
+        @Override
+        public boolean isSplittable() {
+            return true;
+        }
+
+        @Override
+        public boolean isContextFree() {
+            Boolean result = contextFree;
+            if (result == null) {
+                result = ServicePipeline.isContextFree(service);
+                contextFree = result;
+            }
+            return result;
+        }
+
+        @Override
+        public String getName() {
+            return service.getName();
+        }
+
+        /**
+         * 查表转换从i开始的ASCII连续段，target的剩余空间不小于输入的剩余字节数
+         * @return 连续段之后的位置
+         */
+        private int mapAscii(ByteBuffer source, int i, int limit, ByteBuffer target) {
+            int[] table = ascii;
+            int o = target.position();
+            if (target.hasArray()) {
+                byte[] out = target.array();
+                int base = target.arrayOffset();
+                for (byte b; i < limit && (b = source.get(i)) >= 0; i++) {
+                    if ((i & Cancellation.CHECK_MASK) == 0) {
+                        Cancellation.checkpoint();
+                    }
+                    int mapped = table[b];
+                    if (mapped >= 0) {
+                        out[base + o++] = (byte) mapped;
+                    }
+                }
+            } else {
+                for (byte b; i < limit && (b = source.get(i)) >= 0; i++) {
+                    if ((i & Cancellation.CHECK_MASK) == 0) {
+                        Cancellation.checkpoint();
+                    }
+                    int mapped = table[b];
+                    if (mapped >= 0) {
+                        target.put(o++, (byte) mapped);
+                    }
+                }
+            }
+            target.position(o);
+            return i;
+        }
+
+        /**
+         * 按UTF-8编码写出一个非代理项字符
+         */
+        private static ByteBuffer put(ByteBuffer target, char c) {
+            if (c < 0x80) {
+                if (!target.hasRemaining()) {
+                    target = ensureRemaining(target, 1);
+                }
+                return target.put((byte) c);
+            }
+            target = ensureRemaining(target, 3);
+            if (c < 0x800) {
+                target.put((byte) (0xC0 | (c >> 6)));
+            } else {
+                target.put((byte) (0xE0 | (c >> 12)));
+                target.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            }
+            return target.put((byte) (0x80 | (c & 0x3F)));
+        }
+
+        /**
+         * 检查从i开始的多字节UTF-8序列是否合法（按RFC 3629，不允许超长编码和代理项）
+         * @return 序列的字节数，不合法或不完整时返回-1
+         */
+        private static int sequenceLength(ByteBuffer source, int i, int limit) {
+            int lead = source.get(i) & 0xFF;
+            int length;
+            int min = 0x80;
+            int max = 0xBF;
+            if (lead >= 0xC2 && lead <= 0xDF) {
+                length = 2;
+            } else if (lead >= 0xE0 && lead <= 0xEF) {
+                length = 3;
+                if (lead == 0xE0) {
+                    min = 0xA0;
+                } else if (lead == 0xED) {
+                    max = 0x9F;
+                }
+            } else if (lead >= 0xF0 && lead <= 0xF4) {
+                length = 4;
+                if (lead == 0xF0) {
+                    min = 0x90;
+                } else if (lead == 0xF4) {
+                    max = 0x8F;
+                }
+            } else {
+                return -1;
+            }
+            if (i + length > limit) {
+                return -1;
+            }
+            int second = source.get(i + 1) & 0xFF;
+            if (second < min || second > max) {
+                return -1;
+            }
+            for (int k = 2; k < length; k++) {
+                if ((source.get(i + k) & 0xC0) != 0x80) {
+                    return -1;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * 解码一个已经检查过的多字节序列
+         */
+        private static int decode(ByteBuffer source, int i, int length) {
+            int codePoint = source.get(i) & (0xFF >> (length + 1));
+            for (int k = 1; k < length; k++) {
+                codePoint = (codePoint << 6) | (source.get(i + k) & 0x3F);
+            }
+            return codePoint;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package m10d20.project2;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 凯撒密码引擎 - 查表实现的可配置位移加密与解密
+ * <p>
+ * 加密规则与原先的加密服务完全一致：对Character.isLetter为真的字符，
+ * 按Character.isUpperCase选择基准'A'或'a'，计算(c - 基准 + 位移) % 26 + 基准；其他字符不变。
+ * 注意这条规则也作用于非ASCII字母（例如é、中），它们会被映射为某个ASCII字母，
+ * 这一映射不可逆，因此解密只把ASCII字母反向移位，其他字符保持不变：
+ * 对只含ASCII字母的文本，decrypt(encrypt(x))等于x。
+ * </p>
+ * <p>
+ * 构造时预先计算Latin-1范围（0-255）内每个字符加密和解密后的结果，
+ * 热循环中这些字符只需查一次表，不再调用isLetter、isUpperCase和取模；
+ * 更大的字符退回到逐字符的标量计算。输出与输入等长且逐位对应，
+ * 因此先用String.getChars批量复制到输出数组，再原地查表替换；
+ * 超过{@link #PARALLEL_THRESHOLD}个字符的输入切成若干段在fork-join线程池中并行处理。
+ * </p>
+ */
+public final class CaesarCipher {
+
+    /** 输入达到此长度时加密服务改用并行处理 */
+    public static final int PARALLEL_THRESHOLD = 1 << 20;
+    /** 并行处理时每个任务处理的最小字符数 */
+    private static final int SPLIT_THRESHOLD = 1 << 18;
+    private static final int TABLE_SIZE = 256;
+
+    private final int shift;
+    private final char[] encryptTable = new char[TABLE_SIZE];
+    private final char[] decryptTable = new char[TABLE_SIZE];
+
+    /**
+     * @param shift 位移量，可以为负数或大于26，按模26处理
+     */
+    public CaesarCipher(int shift) {
+        this.shift = Math.floorMod(shift, 26);
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            encryptTable[c] = encryptScalar(c);
+            decryptTable[c] = decryptScalar(c);
+        }
+    }
+
+    /**
+     * @return 规范化到[0, 26)的位移量
+     */
+    public int getShift() {
+        return shift;
+    }
+
+    /**
+     * 加密单个字符
+     * @param c 字符
+     * @return 加密后的字符
+     */
+    public char encrypt(char c) {
+        return c < TABLE_SIZE ? encryptTable[c] : encryptScalar(c);
+    }
+
+    /**
+     * 解密单个字符
+     * @param c 字符
+     * @return 解密后的字符
+     */
+    public char decrypt(char c) {
+        return c < TABLE_SIZE ? decryptTable[c] : c;
+    }
+
+    /**
+     * 加密文本
+     * @param input 明文
+     * @return 密文
+     */
+    public String encrypt(String input) {
+        return transform(input, true, null);
+    }
+
+    /**
+     * 解密文本
+     * @param input 密文
+     * @return 明文
+     */
+    public String decrypt(String input) {
+        return transform(input, false, null);
+    }
+
+    /**
+     * 在指定线程池中并行加密文本，结果与{@link #encrypt(String)}完全一致
+     * @param input 明文
+     * @param pool 线程池
+     * @return 密文
+     */
+    public String encryptParallel(String input, ForkJoinPool pool) {
+        return transform(input, true, pool);
+    }
+
+    /**
+     * 在指定线程池中并行解密文本
+     * @param input 密文
+     * @param pool 线程池
+     * @return 明文
+     */
+    public String decryptParallel(String input, ForkJoinPool pool) {
+        return transform(input, false, pool);
+    }
+
+    /**
+     * 原地加密字符数组的一部分，供流式处理使用
+     * @param buffer 字符数组
+     * @param from 起始位置（包含）
+     * @param to 结束位置（不包含）
+     */
+    void encryptInPlace(char[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = buffer[i];
+            buffer[i] = c < TABLE_SIZE ? encryptTable[c] : encryptScalar(c);
+        }
+    }
+
+    /**
+     * 原地解密字符数组的一部分，供流式处理使用
+     * @param buffer 字符数组
+     * @param from 起始位置（包含）
+     * @param to 结束位置（不包含）
+     */
+    void decryptInPlace(char[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = buffer[i];
+            if (c < TABLE_SIZE) {
+                buffer[i] = decryptTable[c];
+            }
+        }
+    }
+
+    private String transform(String input, boolean encrypt, ForkJoinPool pool) {
+        int length = input.length();
+        char[] chars = new char[length];
+        input.getChars(0, length, chars, 0);
+        if (pool != null && length > SPLIT_THRESHOLD) {
+            pool.invoke(new TransformTask(chars, 0, length, encrypt));
+            return new String(chars);
+        }
+        for (int from = 0; from < length; from += Cancellation.CHECK_MASK + 1) {
+            Cancellation.checkpoint();
+            int to = Math.min(length, from + Cancellation.CHECK_MASK + 1);
+            if (encrypt) {
+                encryptInPlace(chars, from, to);
+            } else {
+                decryptInPlace(chars, from, to);
+            }
+        }
+        return new String(chars);
+    }
+
+    private char encryptScalar(char c) {
+        if (Character.isLetter(c)) {
+            // 根据大小写分别处理，对字母进行替换，保持在字母范围内循环
+            char base = Character.isUpperCase(c) ? 'A' : 'a';
+            return (char) ((c - base + shift) % 26 + base);
+        }
+        return c;
+    }
+
+    private char decryptScalar(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) ((c - 'A' + 26 - shift) % 26 + 'A');
+        }
+        if (c >= 'a' && c <= 'z') {
+            return (char) ((c - 'a' + 26 - shift) % 26 + 'a');
+        }
+        return c;
+    }
+
+    /**
+     * 并行变换任务：递归二分区间，叶子任务原地查表
+     */
+    private final class TransformTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final char[] chars;
+        private final int from;
+        private final int to;
+        private final boolean encrypt;
+
+        TransformTask(char[] chars, int from, int to, boolean encrypt) {
+            this.chars = chars;
+            this.from = from;
+            this.to = to;
+            this.encrypt = encrypt;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                if (encrypt) {
+                    encryptInPlace(chars, from, to);
+                } else {
+                    decryptInPlace(chars, from, to);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TransformTask(chars, from, middle, encrypt),
+                    new TransformTask(chars, middle, to, encrypt));
+        }
+    }
+}
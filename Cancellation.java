@@ -0,0 +1,31 @@
+package m10d20.project2;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 协作式取消
+ * <p>
+ * 服务在长时间运行的循环中定期调用{@link #checkpoint()}：
+ * 如果执行线程已被中断（例如界面上点击了"取消"，调用了Future.cancel(true)），
+ * 就抛出CancellationException尽快结束，而不是把整个输入处理完。
+ * 检查只读取线程的中断标志，开销很小，但仍建议每处理数万个字符检查一次。
+ * </p>
+ */
+final class Cancellation {
+
+    /** 建议的检查间隔掩码：每65536次循环检查一次 */
+    static final int CHECK_MASK = 0xFFFF;
+
+    private Cancellation() {
+    }
+
+    /**
+     * 检查当前线程是否已被要求取消
+     * @throws CancellationException 线程已被中断时抛出
+     */
+    static void checkpoint() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("服务执行已取消");
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * 首字母大写引擎 - 单遍扫描、保留原有空白的单词首字母大写
+ * <p>
+ * 单词是由正则表达式\s中的空白字符分隔的连续字符。每个单词的第一个码点转换为标题大小写
+ * （Character.toTitleCase，例如ǆ变为ǅ），其余部分按语言环境转换为小写；
+ * 空格、制表符和换行原样保留，输出与输入逐段对应。
+ * </p>
+ * <p>
+ * 整个输入只扫描一遍，结果写入一个按输入长度预先分配的字符数组，不为单词创建子串。
+ * 小写部分由{@link CaseConverter}逐字符查表；单词中出现无法逐字符转换的字符
+ * （例如需要看上下文的词尾Σ、土耳其语的I）时，只有这个单词退回到String.toLowerCase(Locale)。
+ * </p>
+ * <p>
+ * {@link #capitalize(Reader, Writer)}以固定大小的缓冲区流式处理：每块只处理到最后一个空白为止，
+ * 未结束的单词与下一块一起处理，内存占用与输入大小无关。
+ * </p>
+ */
+public final class Capitalizer {
+
+    /** 流式处理时找不到空白也必须切开的最大滞留字符数 */
+    private static final int MAX_TAIL = 1 << 16;
+
+    private final Locale locale;
+    private final CaseConverter lower;
+    /** 土耳其语和阿塞拜疆语中i的大写是带点的İ */
+    private final boolean dottedCapitalI;
+
+    /**
+     * @param locale 语言环境，为null时使用Locale.ROOT
+     */
+    public Capitalizer(Locale locale) {
+        this.locale = locale == null ? Locale.ROOT : locale;
+        this.lower = CaseConverter.lower(this.locale);
+        String language = this.locale.getLanguage();
+        this.dottedCapitalI = "tr".equals(language) || "az".equals(language);
+    }
+
+    /**
+     * @return 使用的语言环境
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * 把每个单词的首字母大写、其余字母小写
+     * @param input 文本
+     * @return 处理结果，空白与输入完全相同
+     */
+    public String capitalize(String input) {
+        int length = input.length();
+        char[] chars = new char[length];
+        input.getChars(0, length, chars, 0);
+        Output output = new Output(length);
+        capitalize(chars, 0, length, false, output);
+        return new String(output.chars, 0, output.length);
+    }
+
+    /**
+     * 流式处理，结果与对完整文本调用{@link #capitalize(String)}相同
+     * @param in 输入
+     * @param out 输出，处理完成后刷新但不关闭
+     * @throws IOException 读写失败时抛出
+     */
+    public void capitalize(Reader in, Writer out) throws IOException {
+        ChunkReader chunks = new ChunkReader(in);
+        char[] buffer = chunks.buffer();
+        Output output = new Output(buffer.length);
+        char[] work = new char[buffer.length];
+        int tailLength = 0;
+        boolean inWord = false;
+        int n;
+        while ((n = chunks.next()) != -1) {
+            int cut = n;
+            while (cut > 0 && !WordCounter.isSpace(buffer[cut - 1])) {
+                cut--;
+            }
+            if (cut == 0 && tailLength + n < MAX_TAIL) {
+                work = append(work, tailLength, buffer, n);
+                tailLength += n;
+                continue;
+            }
+            if (cut == 0) {
+                // 超长的单词只能切开，inWord保证后半段不会再次大写
+                cut = n;
+            }
+            if (tailLength == 0) {
+                inWord = capitalize(buffer, 0, cut, inWord, output);
+            } else {
+                work = append(work, tailLength, buffer, cut);
+                inWord = capitalize(work, 0, tailLength + cut, inWord, output);
+            }
+            out.write(output.chars, 0, output.length);
+            output.length = 0;
+            tailLength = n - cut;
+            if (tailLength > 0) {
+                System.arraycopy(buffer, cut, work, 0, tailLength);
+            }
+        }
+        if (tailLength > 0) {
+            capitalize(work, 0, tailLength, inWord, output);
+            out.write(output.chars, 0, output.length);
+        }
+        out.flush();
+    }
+
+    private static char[] append(char[] work, int length, char[] source, int count) {
+        if (length + count > work.length) {
+            char[] grown = new char[Math.max(work.length * 2, length + count)];
+            System.arraycopy(work, 0, grown, 0, length);
+            work = grown;
+        }
+        System.arraycopy(source, 0, work, length, count);
+        return work;
+    }
+
+    /**
+     * 处理[from, to)区间
+     * @param inWord 区间之前的字符属于一个尚未结束的单词
+     * @return 区间的最后一个字符是否属于单词
+     */
+    private boolean capitalize(char[] chars, int from, int to, boolean inWord, Output output) {
+        int i = from;
+        while (i < to) {
+            if ((i & Cancellation.CHECK_MASK) == 0) {
+                Cancellation.checkpoint();
+            }
+            char c = chars[i];
+            if (WordCounter.isSpace(c)) {
+                output.append(c);
+                inWord = false;
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < to && !WordCounter.isSpace(chars[end])) {
+                end++;
+            }
+            int restStart = i;
+            if (!inWord) {
+                int first = Character.codePointAt(chars, i, end);
+                output.appendCodePoint(titleCase(first));
+                restStart = i + Character.charCount(first);
+                inWord = true;
+            }
+            lowerCase(chars, i, restStart, end, output);
+            i = end;
+        }
+        return inWord;
+    }
+
+    private int titleCase(int codePoint) {
+        if (dottedCapitalI && codePoint == 'i') {
+            return 'İ';
+        }
+        return Character.toTitleCase(codePoint);
+    }
+
+    /**
+     * 把单词[wordStart, to)中[from, to)的部分转换为小写
+     */
+    private void lowerCase(char[] chars, int wordStart, int from, int to, Output output) {
+        output.ensureCapacity(to - from);
+        char[] target = output.chars;
+        int start = output.length;
+        for (int i = from; i < to; i++) {
+            int mapped = lower.mapChar(chars[i]);
+            if (mapped < 0) {
+                // 逐字符查表失败：按完整的Unicode语义转换整个单词（词尾Σ等需要看到前面的字母），
+                // 再去掉首字母对应的部分
+                output.length = start;
+                String word = lower.convert(new String(chars, wordStart, to - wordStart));
+                String head = lower.convert(new String(chars, wordStart, from - wordStart));
+                output.append(word.startsWith(head) ? word.substring(head.length())
+                        : lower.convert(new String(chars, from, to - from)));
+                return;
+            }
+            target[start + i - from] = (char) mapped;
+        }
+        output.length = start + to - from;
+    }
+
+    /**
+     * 输出字符数组，按输入长度预先分配，只有一对多的转换才可能让它增长
+     */
+    private static final class Output {
+        char[] chars;
+        int length;
+
+        Output(int capacity) {
+            chars = new char[capacity];
+        }
+
+        void ensureCapacity(int extra) {
+            if (length + extra > chars.length) {
+                char[] grown = new char[Math.max(chars.length * 2, length + extra)];
+                System.arraycopy(chars, 0, grown, 0, length);
+                chars = grown;
+            }
+        }
+
+        void append(char c) {
+            ensureCapacity(1);
+            chars[length++] = c;
+        }
+
+        void appendCodePoint(int codePoint) {
+            ensureCapacity(2);
+            length += Character.toChars(codePoint, chars, length);
+        }
+
+        void append(String s) {
+            ensureCapacity(s.length());
+            s.getChars(0, s.length(), chars, length);
+            length += s.length();
+        }
+    }
+}
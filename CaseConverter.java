@@ -0,0 +1,238 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * 大小写转换器 - 带ASCII/Latin-1快速路径的大写、小写转换
+ * <p>
+ * 日志类文本几乎全是ASCII字符。构造时按指定的语言环境预先计算0-255每个字符转换后的结果，
+ * 转换时先逐字符查表：遇到第一个会改变的字符之前只做比较，整段都不变时直接返回原String对象；
+ * 否则批量复制不变的前缀，其余字符查表写入输出数组。
+ * 一旦遇到Latin-1以外的字符或一对多的转换（例如ß大写为SS），整段退回到
+ * String.toUpperCase(Locale)/toLowerCase(Locale)，保证结果与完整的Unicode语义一致。
+ * </p>
+ * <p>
+ * 默认使用{@link Locale#ROOT}，结果不随运行环境的默认语言环境变化。
+ * {@link #setFastPathEnabled(boolean)}可以全局关闭快速路径，
+ * 便于基准测试对比快速路径与String自带实现的性能。
+ * </p>
+ */
+public final class CaseConverter {
+
+    private static final int TABLE_SIZE = 256;
+    /** 流式转换时找不到空白也必须切开的最大滞留字符数 */
+    private static final int MAX_TAIL = 1 << 16;
+    private static volatile boolean fastPathEnabled = true;
+
+    private final boolean upper;
+    private final Locale locale;
+    /** 转换结果，UNMAPPED表示该字符需要按整段文本处理 */
+    private final int[] table = new int[TABLE_SIZE];
+    /** 土耳其语等语言环境的转换依赖上下文，逐字符映射只适用于非字母字符 */
+    private final boolean contextual;
+
+    private CaseConverter(boolean upper, Locale locale) {
+        this.upper = upper;
+        this.locale = locale;
+        String language = locale.getLanguage();
+        this.contextual = "tr".equals(language) || "az".equals(language) || "lt".equals(language);
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            String single = String.valueOf(c);
+            String mapped = upper ? single.toUpperCase(locale) : single.toLowerCase(locale);
+            // 映射后长度变化说明存在一对多的转换，此时无法逐字符映射
+            table[c] = mapped.length() == 1 ? mapped.charAt(0) : CharMappingService.UNMAPPED;
+        }
+    }
+
+    /**
+     * 创建大写转换器
+     * @param locale 语言环境，为null时使用Locale.ROOT
+     * @return 转换器
+     */
+    public static CaseConverter upper(Locale locale) {
+        return new CaseConverter(true, locale == null ? Locale.ROOT : locale);
+    }
+
+    /**
+     * 创建小写转换器
+     * @param locale 语言环境，为null时使用Locale.ROOT
+     * @return 转换器
+     */
+    public static CaseConverter lower(Locale locale) {
+        return new CaseConverter(false, locale == null ? Locale.ROOT : locale);
+    }
+
+    /**
+     * 全局开启或关闭快速路径，关闭后所有转换直接调用String自带的实现
+     * @param enabled 是否启用快速路径
+     */
+    public static void setFastPathEnabled(boolean enabled) {
+        fastPathEnabled = enabled;
+    }
+
+    /**
+     * @return 快速路径是否启用
+     */
+    public static boolean isFastPathEnabled() {
+        return fastPathEnabled;
+    }
+
+    /**
+     * @return 转换使用的语言环境
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * @return 是否为大写转换器
+     */
+    public boolean isUpper() {
+        return upper;
+    }
+
+    /**
+     * 转换整段文本
+     * @param s 文本
+     * @return 转换结果；没有任何字符需要改变时返回s本身
+     */
+    public String convert(String s) {
+        if (!fastPathEnabled) {
+            return fullConvert(s);
+        }
+        int length = s.length();
+        int i = 0;
+        // 找到第一个会改变的字符，在此之前不需要任何输出
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= TABLE_SIZE || table[c] != c) {
+                break;
+            }
+        }
+        if (i == length) {
+            return s;
+        }
+        char[] output = new char[length];
+        s.getChars(0, i, output, 0);
+        for (; i < length; i++) {
+            if ((i & Cancellation.CHECK_MASK) == 0) {
+                Cancellation.checkpoint();
+            }
+            char c = s.charAt(i);
+            int mapped = c < TABLE_SIZE ? table[c] : CharMappingService.UNMAPPED;
+            if (mapped < 0) {
+                return fullConvert(s);
+            }
+            output[i] = (char) mapped;
+        }
+        return new String(output);
+    }
+
+    /**
+     * 流式转换，结果与对完整文本调用{@link #convert(String)}相同
+     * <p>
+     * 词尾Σ小写为ς、立陶宛语的附加点等转换依赖相邻字符，但这些上下文都不会跨越空白，
+     * 因此每块只转换到最后一个空白为止，其余部分留到与下一块一起转换。
+     * 连续{@link #MAX_TAIL}个字符都没有空白时直接切开。
+     * </p>
+     * @param in 输入
+     * @param out 输出，转换完成后刷新但不关闭
+     * @throws IOException 读写失败时抛出
+     */
+    public void convert(Reader in, Writer out) throws IOException {
+        ChunkReader chunks = new ChunkReader(in);
+        char[] buffer = chunks.buffer();
+        char[] converted = new char[buffer.length];
+        StringBuilder tail = new StringBuilder();
+        int n;
+        while ((n = chunks.next()) != -1) {
+            int cut = n;
+            while (cut > 0 && !Character.isWhitespace(buffer[cut - 1])) {
+                cut--;
+            }
+            if (cut == 0) {
+                if (tail.length() + n < MAX_TAIL) {
+                    tail.append(buffer, 0, n);
+                    continue;
+                }
+                cut = n;
+            }
+            if (tail.length() == 0 && convert(buffer, cut, converted)) {
+                out.write(converted, 0, cut);
+            } else {
+                tail.append(buffer, 0, cut);
+                out.write(convert(tail.toString()));
+            }
+            tail.setLength(0);
+            tail.append(buffer, cut, n - cut);
+        }
+        if (tail.length() > 0) {
+            out.write(convert(tail.toString()));
+        }
+        out.flush();
+    }
+
+    /**
+     * 查表转换字符数组的前length个字符，供流式处理使用
+     * @param source 输入字符
+     * @param length 有效字符数
+     * @param target 输出数组，长度不小于length
+     * @return 全部转换完成时返回true；遇到无法查表转换的字符时返回false，
+     *         此时调用方应改用{@link #convert(String)}处理原文
+     */
+    boolean convert(char[] source, int length, char[] target) {
+        if (!fastPathEnabled) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = source[i];
+            int mapped = c < TABLE_SIZE ? table[c] : CharMappingService.UNMAPPED;
+            if (mapped < 0) {
+                return false;
+            }
+            target[i] = (char) mapped;
+        }
+        return true;
+    }
+
+    /**
+     * 映射单个字符，供服务链融合使用
+     * @param c 字符
+     * @return 转换后的字符，或{@link CharMappingService#UNMAPPED}
+     */
+    int mapChar(char c) {
+        if (contextual && Character.isLetter(c)) {
+            return CharMappingService.UNMAPPED;
+        }
+        if (c < TABLE_SIZE) {
+            return table[c];
+        }
+        return isCaseInert(c) ? c : CharMappingService.UNMAPPED;
+    }
+
+    private String fullConvert(String s) {
+        return upper ? s.toUpperCase(locale) : s.toLowerCase(locale);
+    }
+
+    /**
+     * 判断非Latin-1字符是否不受大小写转换影响（如汉字、标点）
+     * <p>
+     * 字母类字符可能涉及一对多或依赖上下文的转换（词尾Σ等），代理项属于补充平面字符，
+     * 都不视为不受影响，由调用方退回整段处理。
+     * </p>
+     */
+    private static boolean isCaseInert(char c) {
+        if (Character.isSurrogate(c)) {
+            return false;
+        }
+        int type = Character.getType(c);
+        return type != Character.UPPERCASE_LETTER
+                && type != Character.LOWERCASE_LETTER
+                && type != Character.TITLECASE_LETTER
+                && Character.toUpperCase(c) == c
+                && Character.toLowerCase(c) == c;
+    }
+}
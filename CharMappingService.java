@@ -0,0 +1,79 @@
+package m10d20.project2;
+
+/**
+ * 逐字符映射服务接口
+ * <p>
+ * 实现此接口的服务对每个字符的处理互不相关：输出等于把每个输入字符
+ * 单独映射为一个字符（或删除）后依次拼接。大写转换、小写转换、空格去除
+ * 和凯撒加密都属于这一类。{@link ServicePipeline}会把相邻的这类服务融合为
+ * 一次遍历，每个字符依次经过各阶段的{@link #mapChar(char)}，只写一次输出缓冲区。
+ * </p>
+ * <p>
+ * 有些字符的处理结果取决于上下文或会变成多个字符（例如德语ß大写为SS、
+ * 希腊字母Σ在词尾小写为ς），这时mapChar返回{@link #UNMAPPED}，
+ * 调用方必须退回到对整段文本调用{@link #execute(String)}，以保证结果完全一致。
+ * </p>
+ */
+public interface CharMappingService extends StreamingService {
+
+    /**
+     * 表示该字符应从输出中删除
+     */
+    int DELETE = -1;
+
+    /**
+     * 表示该字符无法逐字符映射，必须按整段文本处理
+     */
+    int UNMAPPED = -2;
+
+    /**
+     * 映射单个字符
+     * @param c 输入字符
+     * @return 映射后的字符，或{@link #DELETE}、{@link #UNMAPPED}
+     */
+    int mapChar(char c);
+
+    /**
+     * 批量执行
+     * <p>
+     * 整批输入共用一个按最长输入分配的字符缓冲区，逐字符调用{@link #mapChar(char)}，
+     * 每个输入只在最后创建一次结果String。遇到{@link #UNMAPPED}的输入单独调用execute。
+     * </p>
+     */
+    @Override
+    default String[] executeBatch(String[] inputs) {
+        int longest = 0;
+        for (String input : inputs) {
+            longest = Math.max(longest, input.length());
+        }
+        char[] buffer = new char[longest];
+        String[] outputs = new String[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            Cancellation.checkpoint();
+            String input = inputs[i];
+            int length = input.length();
+            int count = 0;
+            for (int j = 0; j < length; j++) {
+                int mapped = mapChar(input.charAt(j));
+                if (mapped >= 0) {
+                    buffer[count++] = (char) mapped;
+                } else if (mapped == UNMAPPED) {
+                    count = -1;
+                    break;
+                }
+            }
+            outputs[i] = count < 0 ? execute(input) : new String(buffer, 0, count);
+        }
+        return outputs;
+    }
+
+    @Override
+    default boolean requiresFullInput() {
+        return false;
+    }
+
+    @Override
+    default boolean isSplittable() {
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 分块读取器 - 流式服务共用的固定缓冲区读取逻辑
+ * <p>
+ * 每次读取一块字符到同一个缓冲区中。如果一块恰好以高代理项结尾，
+ * 就把它留到下一块的开头，保证补充平面字符（如表情符号）的代理对不会被拆到两块里，
+ * 使逐块调用String.toUpperCase()等方法的结果与整体处理一致。
+ * </p>
+ * <p>
+ * 每读取一块都会检查一次{@link Cancellation#checkpoint()}，流式服务因此都可以被取消。
+ * </p>
+ */
+final class ChunkReader {
+
+    private final Reader in;
+    private final char[] buffer;
+    private boolean hasCarry;
+    private char carry;
+
+    ChunkReader(Reader in) {
+        this(in, StreamingService.BUFFER_SIZE);
+    }
+
+    ChunkReader(Reader in, int bufferSize) {
+        this.in = in;
+        this.buffer = new char[Math.max(2, bufferSize)];
+    }
+
+    /**
+     * 获取存放当前块的缓冲区，有效内容为[0, next()的返回值)
+     * @return 缓冲区
+     */
+    char[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * 读取下一块
+     * @return 本块的字符数（大于0），输入结束时返回-1
+     * @throws IOException 读取失败时抛出
+     */
+    int next() throws IOException {
+        Cancellation.checkpoint();
+        int length = 0;
+        if (hasCarry) {
+            buffer[0] = carry;
+            length = 1;
+            hasCarry = false;
+        }
+        while (true) {
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                return length > 0 ? length : -1;
+            }
+            length += n;
+            if (length > 0 && Character.isHighSurrogate(buffer[length - 1])) {
+                if (length > 1) {
+                    carry = buffer[length - 1];
+                    hasCarry = true;
+                    return length - 1;
+                }
+                // 只读到了一个高代理项，继续读取它的低代理项
+                continue;
+            }
+            if (length > 0) {
+                return length;
+            }
+        }
+    }
+}
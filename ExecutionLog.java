@@ -0,0 +1,700 @@
+package m10d20.project2;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 执行日志 - 只追加、按段滚动的内存映射二进制日志，记录每次服务执行以便审计和重放
+ * <p>
+ * 每条记录包含服务编号、时间戳、UTF-8编码的输入、输出的64位哈希值和长度以及执行耗时。
+ * 调用{@link #record(int, String, CharSequence, long)}的线程只把记录放进有界队列就返回，
+ * 不做编码、哈希和任何I/O；队列满时丢弃记录并计数，而不是让调用方等待磁盘。
+ * 一个后台线程从队列中一次取出所有积压的记录，依次写入内存映射的日志段，
+ * 再对整批记录只调用一次force()（组提交）：负载越高每批越大，每条记录分摊的刷盘开销越小。
+ * </p>
+ * <p>
+ * 日志目录中的每个段是一对文件：execution-00001.log保存记录，execution-00001.idx是偏移索引。
+ * 段文件按{@link #DEFAULT_SEGMENT_BYTES}预先映射，写满后滚动到下一段，未写的尾部是全零（稀疏文件）。
+ * 段头保存写入时的服务编号到英文标识的映射，服务编号以后发生变化也能按标识重放。
+ * 每条记录带CRC32校验，崩溃时写了一半的记录在读取时被忽略；每次打开日志都从新的段开始写，已有的段不再修改。
+ * </p>
+ * <pre>
+ * 段头:   int 魔数 | short 版本 | short 服务数 | 每个服务: short 长度 + UTF-8英文标识
+ * 记录:   int 记录体长度(0表示段结束) | int 记录体的CRC32 | 记录体
+ * 记录体: long 时间戳(毫秒) | long 耗时(纳秒) | long 输出哈希 | long 输出长度(字符)
+ *         | short 服务编号 | int 输入字节数 | 输入(UTF-8)
+ * 索引项: long 时间戳 | int 记录在段中的偏移 | short 服务编号 | short 保留
+ * </pre>
+ * <p>
+ * 按服务和时间范围查询（{@link #scan(Path, String, long, long, Visitor)}）只扫描每段的索引，
+ * 然后直接定位到匹配的记录；索引比日志短（例如写完记录后在写索引之前崩溃）时，从最后一个索引项之后继续扫描日志；
+ * 索引项只在记录落盘之后写入，索引指向的记录校验失败说明它已损坏，只跳过这一条。
+ * 重放工具见{@link ExecutionReplay}。
+ * </p>
+ */
+final class ExecutionLog implements AutoCloseable {
+
+    /** 每个日志段预先映射的字节数，单条记录更大时该段按记录大小映射 */
+    static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    /** 默认的队列长度（条） */
+    static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+    private static final int MAGIC = 0x53564C47;
+    private static final short VERSION = 1;
+    private static final int RECORD_HEADER = 8;
+    private static final int BODY_FIXED = 8 + 8 + 8 + 8 + 2 + 4;
+    private static final int INDEX_ENTRY = 16;
+    /** 每批最多写入的记录数，写完一批就提交一次 */
+    private static final int MAX_BATCH = 1024;
+    private static final String PREFIX = "execution-";
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /** 各前端记录执行时使用的日志，未开启时为null */
+    private static volatile ExecutionLog active;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean sync;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    private final Entry shutdown = new Entry();
+
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition committedCondition = commitLock.newCondition();
+    /** 已提交（或因写入失败而放弃）的记录数，只在持有commitLock时修改 */
+    private long committed;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /** 以下字段只由写线程访问 */
+    private int segmentNumber;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private FileChannel indexChannel;
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(MAX_BATCH * INDEX_ENTRY);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * 打开日志目录，从一个新的段开始写入
+     * @param directory 日志目录，不存在时创建
+     * @param segmentBytes 每段的字节数
+     * @param queueCapacity 队列长度（条），队列满时新的记录被丢弃
+     * @param sync 每批记录写入后是否强制刷到磁盘
+     * @throws IOException 无法创建目录或第一个段时抛出
+     */
+    ExecutionLog(Path directory, long segmentBytes, int queueCapacity, boolean sync) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(4096, segmentBytes);
+        this.sync = sync;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        Files.createDirectories(directory);
+        for (Path path : segments(directory)) {
+            segmentNumber = Math.max(segmentNumber, segmentNumber(path));
+        }
+        openSegment(0);
+        writer = ServiceExecutors.daemonThreads("execution-log").newThread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        });
+        writer.start();
+    }
+
+    /**
+     * 以默认参数打开日志目录
+     * @param directory 日志目录
+     * @return 日志
+     * @throws IOException 无法创建目录或第一个段时抛出
+     */
+    static ExecutionLog open(Path directory) throws IOException {
+        return new ExecutionLog(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_QUEUE_CAPACITY, true);
+    }
+
+    /**
+     * 设置各前端记录执行时使用的日志
+     * @param log 日志，为null时关闭记录
+     */
+    static void setActive(ExecutionLog log) {
+        active = log;
+    }
+
+    /**
+     * @return 各前端记录执行时使用的日志，未开启时为null
+     */
+    static ExecutionLog active() {
+        return active;
+    }
+
+    /**
+     * 记录一次执行，输出的哈希值由写线程计算
+     * @param serviceId 服务编号
+     * @param input 输入文本
+     * @param output 输出，不可变（String或惰性视图）
+     * @param latencyNanos 执行耗时
+     * @return 放入队列时返回true；队列已满或日志已关闭时返回false
+     */
+    boolean record(int serviceId, String input, CharSequence output, long latencyNanos) {
+        Entry entry = new Entry();
+        entry.output = output;
+        entry.outputLength = output.length();
+        return offer(entry, serviceId, input, latencyNanos);
+    }
+
+    /**
+     * 记录一次输出已经写出的执行，输出的哈希值由{@link HashingWriter}计算
+     * @param serviceId 服务编号
+     * @param input 输入文本
+     * @param outputHash 输出的哈希值，见{@link #hash(CharSequence)}
+     * @param outputLength 输出的字符数
+     * @param latencyNanos 执行耗时
+     * @return 放入队列时返回true；队列已满或日志已关闭时返回false
+     */
+    boolean record(int serviceId, String input, long outputHash, long outputLength, long latencyNanos) {
+        Entry entry = new Entry();
+        entry.outputHash = outputHash;
+        entry.outputLength = outputLength;
+        return offer(entry, serviceId, input, latencyNanos);
+    }
+
+    private boolean offer(Entry entry, int serviceId, String input, long latencyNanos) {
+        entry.serviceId = serviceId;
+        entry.timestamp = System.currentTimeMillis();
+        entry.latencyNanos = latencyNanos;
+        entry.input = input;
+        if (closed || failure != null || !queue.offer(entry)) {
+            dropped.increment();
+            return false;
+        }
+        enqueued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 等待到目前为止放入队列的记录全部提交
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 全部提交时返回true，超时返回false
+     * @throws InterruptedException 等待期间被中断时抛出
+     */
+    boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = enqueued.get();
+        long remaining = unit.toNanos(timeout);
+        commitLock.lock();
+        try {
+            while (committed < target) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = committedCondition.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * 提交队列中剩余的记录后停止写线程；关闭后的记录被丢弃
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(shutdown);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return 已提交的记录数
+     */
+    long getCommitted() {
+        commitLock.lock();
+        try {
+            return committed;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * @return 因队列已满、日志已关闭或写入失败而丢弃的记录数
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return 组提交的次数，记录数除以它就是平均每批的大小
+     */
+    long getCommits() {
+        return commits.get();
+    }
+
+    /**
+     * @return 写入失败的原因，没有失败时为null
+     */
+    IOException getFailure() {
+        return failure;
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // 写线程只在关闭时结束，忽略意外的中断
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            int written = 0;
+            for (Entry entry : batch) {
+                if (entry == shutdown) {
+                    running = false;
+                } else {
+                    written++;
+                    if (failure == null) {
+                        try {
+                            write(entry);
+                        } catch (IOException | RuntimeException e) {
+                            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                        }
+                    }
+                }
+            }
+            if (failure == null) {
+                try {
+                    commit();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            batch.clear();
+            commits.incrementAndGet();
+            commitLock.lock();
+            try {
+                committed += written;
+                committedCondition.signalAll();
+            } finally {
+                commitLock.unlock();
+            }
+        }
+        closeSegment();
+        // 检查closed之后、关闭之前放入队列的记录排在结束标记之后，计为丢弃
+        int abandoned = queue.drainTo(batch);
+        dropped.add(abandoned);
+        commitLock.lock();
+        try {
+            committed += abandoned;
+            committedCondition.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        byte[] input = entry.input.getBytes(StandardCharsets.UTF_8);
+        long outputHash = entry.output != null ? hash(entry.output) : entry.outputHash;
+        int bodyLength = BODY_FIXED + input.length;
+        // 段末尾至少留出4个字节的0作为结束标记
+        if (segment.remaining() < RECORD_HEADER + bodyLength + 4) {
+            commit();
+            closeSegment();
+            openSegment(RECORD_HEADER + bodyLength + 4);
+        }
+        int offset = segment.position();
+        segment.position(offset + RECORD_HEADER);
+        segment.putLong(entry.timestamp);
+        segment.putLong(entry.latencyNanos);
+        segment.putLong(outputHash);
+        segment.putLong(entry.outputLength);
+        segment.putShort((short) entry.serviceId);
+        segment.putInt(input.length);
+        segment.put(input);
+        int end = segment.position();
+        ByteBuffer body = segment.duplicate();
+        body.position(offset + RECORD_HEADER).limit(end);
+        crc.reset();
+        crc.update(body);
+        // 长度最后写入：崩溃时只写了一半的记录要么长度为0，要么校验和不符
+        segment.putInt(offset + 4, (int) crc.getValue());
+        segment.putInt(offset, bodyLength);
+
+        if (!indexBuffer.hasRemaining()) {
+            flushIndex();
+        }
+        indexBuffer.putLong(entry.timestamp);
+        indexBuffer.putInt(offset);
+        indexBuffer.putShort((short) entry.serviceId);
+        indexBuffer.putShort((short) 0);
+    }
+
+    /**
+     * 组提交：先把记录刷到磁盘，再写入并刷新索引，索引项指向的记录一定已经落盘
+     */
+    private void commit() throws IOException {
+        if (sync) {
+            segment.force();
+        }
+        flushIndex();
+        if (sync) {
+            indexChannel.force(false);
+        }
+    }
+
+    private void flushIndex() throws IOException {
+        indexBuffer.flip();
+        while (indexBuffer.hasRemaining()) {
+            indexChannel.write(indexBuffer);
+        }
+        indexBuffer.clear();
+    }
+
+    private void openSegment(int minimumBytes) throws IOException {
+        segmentNumber++;
+        String name = String.format("%s%05d", PREFIX, segmentNumber);
+        ByteBuffer header = segmentHeader();
+        long size = Math.max(segmentBytes, header.remaining() + (long) minimumBytes);
+        segmentChannel = FileChannel.open(directory.resolve(name + ".log"), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segment.put(header);
+        indexChannel = FileChannel.open(directory.resolve(name + ".idx"), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+    }
+
+    private void closeSegment() {
+        try {
+            if (segment != null && sync) {
+                segment.force();
+            }
+            if (indexChannel != null) {
+                flushIndex();
+                indexChannel.close();
+            }
+            if (segmentChannel != null) {
+                // 映射在缓冲区被回收之前一直有效，关闭通道不影响已经写入的内容
+                segmentChannel.close();
+            }
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        segment = null;
+        segmentChannel = null;
+        indexChannel = null;
+    }
+
+    private static ByteBuffer segmentHeader() {
+        int count = ServiceRegistry.size();
+        byte[][] keys = new byte[count][];
+        int size = 4 + 2 + 2;
+        for (int id = 0; id < count; id++) {
+            keys[id] = ServiceRegistry.getKey(id).getBytes(StandardCharsets.UTF_8);
+            size += 2 + keys[id].length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(size);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) count);
+        for (byte[] key : keys) {
+            header.putShort((short) key.length).put(key);
+        }
+        header.flip();
+        return header;
+    }
+
+    /**
+     * 计算输出文本的64位哈希值（按UTF-16单元的FNV-1a）
+     * @param text 文本
+     * @return 哈希值
+     */
+    static long hash(CharSequence text) {
+        long h = FNV_OFFSET;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            h = (h ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * 边写出边计算哈希值的Writer，结果与对写出的全部文本调用{@link #hash(CharSequence)}相同
+     */
+    static final class HashingWriter extends FilterWriter {
+        private long hash = FNV_OFFSET;
+        private long length;
+
+        HashingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            hash = (hash ^ (char) c) * FNV_PRIME;
+            length++;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int count) throws IOException {
+            out.write(buffer, offset, count);
+            long h = hash;
+            for (int i = offset, end = offset + count; i < end; i++) {
+                h = (h ^ buffer[i]) * FNV_PRIME;
+            }
+            hash = h;
+            length += count;
+        }
+
+        @Override
+        public void write(String text, int offset, int count) throws IOException {
+            out.write(text, offset, count);
+            long h = hash;
+            for (int i = offset, end = offset + count; i < end; i++) {
+                h = (h ^ text.charAt(i)) * FNV_PRIME;
+            }
+            hash = h;
+            length += count;
+        }
+
+        long hash() {
+            return hash;
+        }
+
+        long length() {
+            return length;
+        }
+    }
+
+    /**
+     * 一条执行记录；写入时由调用方填写，读取时由{@link #scan(Path, String, long, long, Visitor)}填写
+     */
+    static final class Entry {
+        /** 写入时是服务编号；读取时是当前注册表中的编号，服务已不存在时为-1 */
+        int serviceId;
+        /** 写入时的服务英文标识，只在读取时填写 */
+        String serviceKey;
+        long timestamp;
+        long latencyNanos;
+        String input;
+        long outputHash;
+        long outputLength;
+        /** 写入时输出的哈希值尚未计算，由写线程计算；读取时为null */
+        CharSequence output;
+    }
+
+    /**
+     * 读取记录的访问器
+     */
+    interface Visitor {
+        /**
+         * @param entry 记录
+         * @return 继续读取时返回true，返回false结束扫描
+         */
+        boolean visit(Entry entry);
+    }
+
+    /**
+     * 按服务和时间范围读取日志目录中的记录，按段的顺序、段内按写入顺序访问
+     * @param directory 日志目录
+     * @param serviceKey 服务的英文标识，为null时读取所有服务
+     * @param fromMillis 起始时间（包含）
+     * @param toMillis 结束时间（不包含）
+     * @param visitor 访问器
+     * @return 访问的记录数
+     * @throws IOException 读取失败或段头格式不对时抛出
+     */
+    static long scan(Path directory, String serviceKey, long fromMillis, long toMillis, Visitor visitor)
+            throws IOException {
+        long visited = 0;
+        for (Path log : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                String[] keys = readHeader(data, log);
+                int[] currentIds = new int[keys.length];
+                int wantedId = -1;
+                for (int id = 0; id < keys.length; id++) {
+                    currentIds[id] = ServiceRegistry.indexOf(keys[id]);
+                    if (keys[id].equals(serviceKey)) {
+                        wantedId = id;
+                    }
+                }
+                if (serviceKey != null && wantedId < 0) {
+                    continue;
+                }
+                int recordsStart = data.position();
+                ByteBuffer index = readIndex(log);
+                int end = recordsStart;
+                while (index.remaining() >= INDEX_ENTRY) {
+                    long timestamp = index.getLong();
+                    int offset = index.getInt();
+                    int serviceId = index.getShort();
+                    index.getShort();
+                    int length = recordLength(data, offset);
+                    if (length < 0) {
+                        // 索引项只在记录落盘之后写入，校验和不符说明这条记录已损坏，跳过它继续
+                        continue;
+                    }
+                    end = Math.max(end, offset + length);
+                    if ((wantedId >= 0 && serviceId != wantedId) || timestamp < fromMillis || timestamp >= toMillis) {
+                        continue;
+                    }
+                    visited++;
+                    if (!visitor.visit(readRecord(data, offset, keys, currentIds))) {
+                        return visited;
+                    }
+                }
+                // 索引之后可能还有已经写入但没有来得及写索引的记录
+                while (true) {
+                    int length = recordLength(data, end);
+                    if (length < 0) {
+                        break;
+                    }
+                    Entry entry = readRecord(data, end, keys, currentIds);
+                    end += length;
+                    boolean service = serviceKey == null || serviceKey.equals(entry.serviceKey);
+                    if (service && entry.timestamp >= fromMillis && entry.timestamp < toMillis) {
+                        visited++;
+                        if (!visitor.visit(entry)) {
+                            return visited;
+                        }
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    private static String[] readHeader(ByteBuffer data, Path log) throws IOException {
+        if (data.remaining() < 8 || data.getInt() != MAGIC) {
+            throw new IOException("不是执行日志: " + log);
+        }
+        short version = data.getShort();
+        if (version != VERSION) {
+            throw new IOException("不支持的执行日志版本" + version + ": " + log);
+        }
+        String[] keys = new String[data.getShort()];
+        for (int id = 0; id < keys.length; id++) {
+            byte[] key = new byte[data.getShort()];
+            data.get(key);
+            keys[id] = new String(key, StandardCharsets.UTF_8);
+        }
+        return keys;
+    }
+
+    private static ByteBuffer readIndex(Path log) throws IOException {
+        String name = log.getFileName().toString();
+        Path path = log.resolveSibling(name.substring(0, name.length() - ".log".length()) + ".idx");
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(path));
+        } catch (NoSuchFileException e) {
+            return ByteBuffer.allocate(0);
+        }
+    }
+
+    /**
+     * @return 从offset开始的完整记录的字节数；没有记录、记录不完整或校验和不符时返回-1
+     */
+    private static int recordLength(ByteBuffer data, int offset) {
+        if (offset < 0 || offset + RECORD_HEADER > data.limit()) {
+            return -1;
+        }
+        int bodyLength = data.getInt(offset);
+        if (bodyLength < BODY_FIXED || (long) offset + RECORD_HEADER + bodyLength > data.limit()) {
+            return -1;
+        }
+        ByteBuffer body = data.duplicate();
+        body.position(offset + RECORD_HEADER).limit(offset + RECORD_HEADER + bodyLength);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == data.getInt(offset + 4) ? RECORD_HEADER + bodyLength : -1;
+    }
+
+    private static Entry readRecord(ByteBuffer data, int offset, String[] keys, int[] currentIds) {
+        ByteBuffer record = data.duplicate();
+        record.position(offset + RECORD_HEADER);
+        Entry entry = new Entry();
+        entry.timestamp = record.getLong();
+        entry.latencyNanos = record.getLong();
+        entry.outputHash = record.getLong();
+        entry.outputLength = record.getLong();
+        int serviceId = record.getShort();
+        byte[] input = new byte[record.getInt()];
+        record.get(input);
+        entry.input = new String(input, StandardCharsets.UTF_8);
+        boolean known = serviceId >= 0 && serviceId < keys.length;
+        entry.serviceKey = known ? keys[serviceId] : null;
+        entry.serviceId = known ? currentIds[serviceId] : -1;
+        return entry;
+    }
+
+    /**
+     * @return 目录中按编号排列的日志段文件
+     */
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return result;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*.log")) {
+            for (Path path : stream) {
+                if (segmentNumber(path) > 0) {
+                    result.add(path);
+                }
+            }
+        }
+        Collections.sort(result, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return Integer.compare(segmentNumber(a), segmentNumber(b));
+            }
+        });
+        return result;
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - ".log".length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * 执行日志重放工具 - 把{@link ExecutionLog}中记录的输入重新交给服务执行
+ * <p>
+ * 按服务和时间范围从日志中读出记录，用当前注册表中同一英文标识的服务重新执行每个输入，
+ * 比较输出的哈希值和长度：确定性服务的结果与记录不同说明服务的行为发生了变化（回归），
+ * 随机打乱这类非确定性服务只比较输出长度。同时对比记录时和重放时的耗时分布，
+ * 可以用线上的真实输入评估一次修改对性能的影响。
+ * </p>
+ * <pre>
+ * java m10d20.project2.ExecutionReplay &lt;日志目录&gt; [选项]
+ *   --service upper                只重放这个服务的记录
+ *   --from 2026-10-17T08:00:00Z    起始时间（ISO-8601或毫秒时间戳，包含）
+ *   --to 2026-10-17T09:00:00Z      结束时间（不包含）
+ *   --limit 1000                   最多重放的记录数
+ *   --list                         只列出记录，不重放
+ * </pre>
+ * <p>
+ * 有记录与重放结果不一致时以状态码1退出。
+ * </p>
+ */
+public class ExecutionReplay {
+
+    /** 列出记录时输入最多显示的字符数 */
+    private static final int PREVIEW_CHARS = 40;
+
+    private final int count = ServiceRegistry.size();
+    private final long[] replayed = new long[count];
+    private final long[] mismatches = new long[count];
+    private final LatencyHistogram[] recorded = new LatencyHistogram[count];
+    private final LatencyHistogram[] replay = new LatencyHistogram[count];
+    private long skipped;
+
+    ExecutionReplay() {
+        for (int id = 0; id < count; id++) {
+            recorded[id] = new LatencyHistogram();
+            replay[id] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * 重放一条记录
+     * @param entry 记录
+     * @return 结果与记录一致时返回true；服务已不存在时跳过并返回true
+     */
+    boolean replay(ExecutionLog.Entry entry) {
+        int id = entry.serviceId;
+        if (id < 0) {
+            skipped++;
+            return true;
+        }
+        Service service = ServiceRegistry.get(id);
+        long start = System.nanoTime();
+        String output = service.execute(entry.input);
+        long nanos = System.nanoTime() - start;
+        replayed[id]++;
+        recorded[id].record(entry.latencyNanos);
+        replay[id].record(nanos);
+        boolean same = output.length() == entry.outputLength
+                && (!service.isDeterministic() || ExecutionLog.hash(output) == entry.outputHash);
+        if (!same) {
+            mismatches[id]++;
+        }
+        return same;
+    }
+
+    /**
+     * @return 结果与记录不一致的记录数
+     */
+    long mismatchCount() {
+        long total = 0;
+        for (long value : mismatches) {
+            total += value;
+        }
+        return total;
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-11s %9s %9s %14s %14s %14s %14s%n", "Service", "replayed", "mismatch",
+                "rec p50 us", "rec p99 us", "replay p50 us", "replay p99 us");
+        for (int id = 0; id < count; id++) {
+            if (replayed[id] == 0) {
+                continue;
+            }
+            LatencyHistogram.Snapshot before = recorded[id].snapshot();
+            LatencyHistogram.Snapshot after = replay[id].snapshot();
+            out.printf(Locale.ROOT, "%-11s %9d %9d %14.1f %14.1f %14.1f %14.1f%n", ServiceRegistry.getKey(id),
+                    replayed[id], mismatches[id], before.percentile(50) / 1000.0, before.percentile(99) / 1000.0,
+                    after.percentile(50) / 1000.0, after.percentile(99) / 1000.0);
+        }
+        if (skipped > 0) {
+            out.println("跳过 " + skipped + " 条记录（服务已不存在）");
+        }
+    }
+
+    private static long parseTime(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return Instant.parse(value).toEpochMilli();
+        }
+    }
+
+    private static String preview(String input) {
+        String text = input.length() > PREVIEW_CHARS ? input.substring(0, PREVIEW_CHARS) + "…" : input;
+        return text.replace("\n", "\\n").replace("\t", "\\t");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            usage("缺少日志目录");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        String serviceKey = null;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        long limit = Long.MAX_VALUE;
+        boolean list = false;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String option = args[i];
+                if ("--list".equals(option)) {
+                    list = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    usage("缺少参数值: " + option);
+                    return;
+                }
+                String value = args[++i];
+                switch (option) {
+                    case "--service":
+                        int id = ServiceRegistry.indexOf(value);
+                        serviceKey = id < 0 ? value : ServiceRegistry.getKey(id);
+                        break;
+                    case "--from":
+                        from = parseTime(value);
+                        break;
+                    case "--to":
+                        to = parseTime(value);
+                        break;
+                    case "--limit":
+                        limit = Long.parseLong(value);
+                        break;
+                    default:
+                        usage("未知选项: " + option);
+                        return;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            usage("参数格式错误: " + e.getMessage());
+            return;
+        }
+
+        final PrintStream out = new PrintStream(System.out, true, "UTF-8");
+        final long maxRecords = limit;
+        final boolean listOnly = list;
+        final ExecutionReplay replay = new ExecutionReplay();
+        long start = System.nanoTime();
+        long visited = ExecutionLog.scan(directory, serviceKey, from, to, new ExecutionLog.Visitor() {
+            private long seen;
+
+            @Override
+            public boolean visit(ExecutionLog.Entry entry) {
+                if (listOnly) {
+                    out.printf(Locale.ROOT, "%s %-11s %10.1f us %8d -> %8d  %s%n",
+                            Instant.ofEpochMilli(entry.timestamp), entry.serviceKey, entry.latencyNanos / 1000.0,
+                            entry.input.length(), entry.outputLength, preview(entry.input));
+                } else if (!replay.replay(entry)) {
+                    out.printf("结果不一致: %s %s 输入%d个字符%n", Instant.ofEpochMilli(entry.timestamp),
+                            entry.serviceKey, entry.input.length());
+                }
+                return ++seen < maxRecords;
+            }
+        });
+        if (listOnly) {
+            out.println("共 " + visited + " 条记录");
+            return;
+        }
+        out.printf(Locale.ROOT, "重放 %d 条记录，耗时 %.3f 秒%n", visited, (System.nanoTime() - start) / 1e9);
+        replay.print(out);
+        if (replay.mismatchCount() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("用法: java m10d20.project2.ExecutionReplay <日志目录> [--service 服务] [--from 时间]"
+                + " [--to 时间] [--limit n] [--list]");
+        System.exit(2);
+    }
+}
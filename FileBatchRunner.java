@@ -0,0 +1,191 @@
+package m10d20.project2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 文件批量处理器 - 基于内存映射和fork-join的并行文件处理
+ * <p>
+ * 对于可切分的服务（见{@link StreamingService#isSplittable()}），输入文件通过
+ * FileChannel.map映射到内存，在空白字符处切成若干块（空白字符都是单字节ASCII，
+ * 因此切点一定落在UTF-8字符边界上），各块在fork-join线程池中并行处理，
+ * 最后按原顺序通过聚集写(gathering write)写入输出文件。
+ * 为了限制内存占用，每次只并行处理一"批"块，写出后再处理下一批。
+ * </p>
+ * <p>
+ * 各块由{@link ByteService}处理：逐字符映射服务（大小写转换、加密、空格去除）直接读取映射的字节、
+ * 写出UTF-8结果，不经过String；其他服务由适配器解码、处理再编码。
+ * 小文件或并行度为1时，可切分的服务以字节流的方式单线程处理；
+ * 不可切分的服务退回到基于Reader/Writer的单线程流式处理。
+ * </p>
+ */
+public final class FileBatchRunner {
+
+    /** 单块的最小字节数，块太小时调度开销会超过并行收益 */
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    /** 单块的最大字节数 */
+    private static final long MAX_CHUNK_BYTES = 64L << 20;
+    /** 寻找切点时最多向后扫描的字节数 */
+    private static final int SCAN_LIMIT = 64 << 10;
+
+    private final StreamingService service;
+    private final ByteService bytes;
+    private final int parallelism;
+    /** 服务逐字符处理、与上下文无关，可以在任意字符边界切开 */
+    private final boolean contextFree;
+
+    /**
+     * @param service 要执行的服务
+     * @param parallelism 并行度，通常为CPU核心数
+     */
+    public FileBatchRunner(StreamingService service, int parallelism) {
+        this.service = service;
+        this.bytes = ByteServices.of(service);
+        this.parallelism = Math.max(1, parallelism);
+        this.contextFree = service instanceof CharMappingService
+                && ServicePipeline.isContextFree((CharMappingService) service);
+    }
+
+    /**
+     * 处理输入文件并把结果写入输出文件（UTF-8编码，输出文件已存在时会被覆盖）
+     * @param input 输入文件
+     * @param output 输出文件
+     * @return 处理的输入字节数
+     * @throws IOException 读写失败时抛出
+     */
+    public long run(Path input, Path output) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (service.isSplittable() && parallelism > 1 && size > MIN_CHUNK_BYTES) {
+                runParallel(in, out, size);
+            } else if (service.isSplittable()) {
+                ByteServices.execute(bytes, in, out);
+            } else {
+                runStreaming(in, out);
+            }
+            return size;
+        }
+    }
+
+    private void runStreaming(FileChannel in, FileChannel out) throws IOException {
+        // 与并行路径中的new String(bytes, UTF_8)一致，非法字节替换为U+FFFD
+        Reader reader = Channels.newReader(in, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1);
+        Writer writer = new BufferedWriter(Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), StreamingService.BUFFER_SIZE);
+        service.execute(reader, writer);
+        writer.flush();
+    }
+
+    private void runParallel(FileChannel in, FileChannel out, long size) throws IOException {
+        long chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, size / (parallelism * 4L)));
+        int wave = parallelism * 2;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long position = 0;
+            List<ForkJoinTask<ByteBuffer>> tasks = new ArrayList<>(wave);
+            while (position < size) {
+                // 提交一批块
+                tasks.clear();
+                while (tasks.size() < wave && position < size) {
+                    long end = position + chunkBytes >= size ? size : findBoundary(in, position, position + chunkBytes, size);
+                    tasks.add(pool.submit(new ChunkTask(in.map(FileChannel.MapMode.READ_ONLY, position,
+                            end - position))));
+                    position = end;
+                }
+                // 按顺序收集结果并一次性聚集写出
+                ByteBuffer[] results = new ByteBuffer[tasks.size()];
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = tasks.get(i).join();
+                }
+                writeFully(out, results);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 从指定位置开始寻找切点：优先选择空白字符之后的位置。
+     * 与上下文无关的服务在{@link #SCAN_LIMIT}范围内没有空白时退而选择UTF-8字符的起始字节；
+     * 大小写转换、首字母大写等依赖上下文的服务在单词中间切开会改变结果，
+     * 因此一直向后寻找空白，只有块的大小达到单次映射的上限（2GB）时才在字符边界切开
+     * @param position 当前块的起始位置
+     * @param from 开始寻找的位置
+     * @param size 文件大小
+     */
+    private long findBoundary(FileChannel in, long position, long from, long size) throws IOException {
+        long limit = Math.min(size, contextFree ? from + SCAN_LIMIT : position + Integer.MAX_VALUE);
+        for (long start = from; start < limit; start += SCAN_LIMIT) {
+            int length = (int) Math.min(SCAN_LIMIT, limit - start);
+            MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, start, length);
+            for (int i = 0; i < length; i++) {
+                byte b = window.get(i);
+                if (b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B) {
+                    return start + i + 1;
+                }
+            }
+        }
+        if (limit == size) {
+            return size;
+        }
+        long start = Math.max(from, limit - SCAN_LIMIT);
+        int length = (int) (limit - start);
+        MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, start, length);
+        for (int i = 0; i < length; i++) {
+            if ((window.get(i) & 0xC0) != 0x80) {
+                return start + i;
+            }
+        }
+        return limit;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer[] buffers) throws IOException {
+        int first = 0;
+        while (first < buffers.length) {
+            out.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                first++;
+            }
+        }
+    }
+
+    /**
+     * 处理一块输入：字节服务直接读取映射的内存，结果写入按输入大小分配的缓冲区
+     */
+    private final class ChunkTask extends RecursiveTask<ByteBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ByteBuffer chunk;
+
+        ChunkTask(ByteBuffer chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected ByteBuffer compute() {
+            ByteBuffer result = bytes.execute(chunk, ByteBuffer.allocate(chunk.remaining()));
+            result.flip();
+            return result;
+        }
+    }
+}
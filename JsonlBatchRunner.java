@@ -0,0 +1,284 @@
+package m10d20.project2;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * JSONL批处理器 - 按行读取{"service": ..., "input": ...}记录并批量执行
+ * <p>
+ * 输入的每一行是一个JSON对象，service为服务的英文标识或名称，input为输入文本，
+ * 可选的id字段会原样带到输出中。输出同样是每行一个JSON对象，顺序与输入一致：
+ * 成功时为{"id": ..., "service": ..., "output": ...}，失败时output换成error字段。
+ * 空行会被忽略。
+ * </p>
+ * <p>
+ * 为了让整批记录都能用上{@link Service#executeBatch(String[])}，每次读入一"批"记录，
+ * 按服务分组，每组再按记录数和字符数切成若干片，各片在fork-join线程池中并行执行，
+ * 全部完成后按输入顺序写出，然后再读下一批，因此内存占用只取决于批的大小。
+ * </p>
+ * <pre>
+ * {"id": 1, "service": "upper", "input": "hello"}
+ * {"id": 2, "service": "count", "input": "a b c"}
+ * </pre>
+ */
+public final class JsonlBatchRunner {
+
+    /** 每批最多读入的记录数 */
+    private static final int WINDOW_RECORDS = 8192;
+    /** 每批最多读入的输入字符数 */
+    private static final long WINDOW_CHARS = 32L << 20;
+    /** 每片最多包含的记录数 */
+    private static final int SLICE_RECORDS = 256;
+    /** 每片最多包含的输入字符数 */
+    private static final long SLICE_CHARS = 1L << 20;
+
+    private final int parallelism;
+    /** 共享的线程池，为null时每次run创建自己的线程池 */
+    private final ForkJoinPool sharedPool;
+    private long records;
+    private long failures;
+
+    /**
+     * @param parallelism 并行度，通常为CPU核心数
+     */
+    public JsonlBatchRunner(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.sharedPool = null;
+    }
+
+    /**
+     * 使用共享线程池执行，run结束后不会关闭该线程池
+     * @param pool 线程池
+     */
+    JsonlBatchRunner(ForkJoinPool pool) {
+        this.parallelism = pool.getParallelism();
+        this.sharedPool = pool;
+    }
+
+    /**
+     * 处理输入文件并把结果写入输出文件（UTF-8编码，输出文件已存在时会被覆盖）
+     * @param input 输入文件
+     * @param output 输出文件
+     * @return 处理的记录数
+     * @throws IOException 读写失败时抛出
+     */
+    public long run(Path input, Path output) throws IOException {
+        try (Reader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return run(in, out);
+        }
+    }
+
+    /**
+     * 处理JSONL输入并写出JSONL结果，方法不会关闭传入的Reader和Writer
+     * @param in 输入
+     * @param out 输出
+     * @return 处理的记录数
+     * @throws IOException 读写失败时抛出
+     */
+    public long run(Reader in, Writer out) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        Writer writer = out instanceof BufferedWriter ? out : new BufferedWriter(out, StreamingService.BUFFER_SIZE);
+        records = 0;
+        failures = 0;
+        ForkJoinPool pool = sharedPool != null ? sharedPool : new ForkJoinPool(parallelism);
+        try {
+            List<Record> window = new ArrayList<>();
+            long windowChars = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Record record = Record.parse(line);
+                window.add(record);
+                windowChars += record.input == null ? 0 : record.input.length();
+                if (window.size() >= WINDOW_RECORDS || windowChars >= WINDOW_CHARS) {
+                    processWindow(pool, window, writer);
+                    window.clear();
+                    windowChars = 0;
+                }
+            }
+            processWindow(pool, window, writer);
+            writer.flush();
+            return records;
+        } finally {
+            if (pool != sharedPool) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * 最近一次run处理的记录中执行失败的记录数
+     * @return 失败记录数
+     */
+    public long failureCount() {
+        return failures;
+    }
+
+    private void processWindow(ForkJoinPool pool, List<Record> window, Writer writer) throws IOException {
+        if (window.isEmpty()) {
+            return;
+        }
+        // 按服务编号分组，组内保持输入顺序
+        List<List<Record>> groups = new ArrayList<>();
+        for (int id = 0; id < ServiceRegistry.size(); id++) {
+            groups.add(new ArrayList<Record>());
+        }
+        for (Record record : window) {
+            if (record.serviceId >= 0) {
+                groups.get(record.serviceId).add(record);
+            }
+        }
+
+        List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+        for (int id = 0; id < groups.size(); id++) {
+            List<Record> group = groups.get(id);
+            int start = 0;
+            while (start < group.size()) {
+                int end = start;
+                long chars = 0;
+                while (end < group.size() && end - start < SLICE_RECORDS && chars < SLICE_CHARS) {
+                    chars += group.get(end).input.length();
+                    end++;
+                }
+                tasks.add(pool.submit(new SliceTask(ServiceRegistry.get(id), group.subList(start, end))));
+                start = end;
+            }
+        }
+        for (ForkJoinTask<Void> task : tasks) {
+            task.join();
+        }
+
+        StringBuilder line = new StringBuilder();
+        for (Record record : window) {
+            line.setLength(0);
+            record.writeResult(line);
+            line.append('\n');
+            writer.append(line);
+            records++;
+            if (record.error != null) {
+                failures++;
+            }
+        }
+        // 每批写完就刷新，通过网络流式输出时客户端可以尽早拿到前面的结果
+        writer.flush();
+    }
+
+    /**
+     * 一条记录：解析得到的请求，以及执行后填入的结果或错误
+     */
+    private static final class Record {
+        final Object id;
+        final boolean hasId;
+        final String service;
+        final int serviceId;
+        final String input;
+        String output;
+        String error;
+
+        private Record(Object id, boolean hasId, String service, int serviceId, String input, String error) {
+            this.id = id;
+            this.hasId = hasId;
+            this.service = service;
+            this.serviceId = serviceId;
+            this.input = input;
+            this.error = error;
+        }
+
+        static Record parse(String line) {
+            Map<String, Object> fields;
+            try {
+                fields = Json.parseObject(line);
+            } catch (IllegalArgumentException e) {
+                return new Record(null, false, null, -1, null, e.getMessage());
+            }
+            Object id = fields.get("id");
+            boolean hasId = fields.containsKey("id");
+            Object service = fields.get("service");
+            Object input = fields.get("input");
+            if (!(service instanceof String)) {
+                return new Record(id, hasId, null, -1, null, "缺少字符串字段service");
+            }
+            if (!(input instanceof String)) {
+                return new Record(id, hasId, (String) service, -1, null, "缺少字符串字段input");
+            }
+            int serviceId = ServiceRegistry.indexOf((String) service);
+            if (serviceId < 0) {
+                return new Record(id, hasId, (String) service, -1, (String) input, "未知服务: " + service);
+            }
+            return new Record(id, hasId, (String) service, serviceId, (String) input, null);
+        }
+
+        void writeResult(StringBuilder out) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            if (hasId) {
+                result.put("id", id);
+            }
+            if (service != null) {
+                result.put("service", service);
+            }
+            if (error != null) {
+                result.put("error", error);
+            } else {
+                result.put("output", output);
+            }
+            Json.write(out, result);
+        }
+    }
+
+    /**
+     * 执行同一服务的一片记录
+     */
+    private static final class SliceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Service service;
+        private final transient List<Record> slice;
+
+        SliceTask(Service service, List<Record> slice) {
+            this.service = service;
+            this.slice = slice;
+        }
+
+        @Override
+        protected void compute() {
+            String[] inputs = new String[slice.size()];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = slice.get(i).input;
+            }
+            try {
+                String[] outputs = service.executeBatch(inputs);
+                for (int i = 0; i < outputs.length; i++) {
+                    slice.get(i).output = outputs[i];
+                }
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                // 整片执行失败时逐条重试，只把真正出错的记录标记为失败
+                for (Record record : slice) {
+                    try {
+                        record.output = service.execute(record.input);
+                    } catch (RuntimeException recordFailure) {
+                        record.error = String.valueOf(recordFailure);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package m10d20.project2;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁延迟直方图 - 参照HdrHistogram的对数-线性分桶
+ * <p>
+ * 小于128纳秒的值每纳秒一个桶；更大的值按2的幂分段，每段再线性地分成64个桶，
+ * 因此任意记录值的相对误差都小于1/64（约1.6%），覆盖从1纳秒到long上限的全部范围，
+ * 总共不到4000个桶。
+ * </p>
+ * <p>
+ * 记录一个值只需计算桶下标（几次位运算）并对AtomicLongArray做一次原子加，
+ * 不加锁、不分配对象，可以在生产环境中常开。读取百分位数时先复制一份快照，
+ * 快照与并发写入之间不保证严格一致，对统计展示而言足够。
+ * </p>
+ */
+final class LatencyHistogram {
+
+    /** 线性区的桶数，也是每段的桶数的两倍 */
+    private static final int LINEAR_BUCKETS = 128;
+    /** 每个2的幂区段内的桶数 */
+    private static final int SUB_BUCKETS = LINEAR_BUCKETS / 2;
+    /** 总桶数：线性区 + 第1到第56段（最高段覆盖到Long.MAX_VALUE） */
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + 56 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalSum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值
+     * @param value 值（通常为纳秒），负数按0记录
+     */
+    void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * 把同一个值记录多次
+     * @param value 值，负数按0记录
+     * @param count 次数
+     */
+    void record(long value, long count) {
+        if (count <= 0) {
+            return;
+        }
+        long v = Math.max(0, value);
+        counts.getAndAdd(bucketIndex(v), count);
+        totalCount.add(count);
+        totalSum.add(v * count);
+        long current;
+        while (v > (current = max.get())) {
+            if (max.compareAndSet(current, v)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 清空所有记录
+     */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalSum.reset();
+        max.set(0);
+    }
+
+    /**
+     * 复制当前的统计快照
+     * @return 快照
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, totalSum.sum(), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        // 最高位所在的位置决定区段，区段内取紧随最高位之后的6位作为桶号
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        int sub = (int) (value >>> shift);
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+    }
+
+    /**
+     * 桶内的最大值，作为落在该桶中的值的代表（与HdrHistogram的highestEquivalentValue一致）
+     */
+    static long bucketHighestValue(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int k = index - LINEAR_BUCKETS;
+        int shift = k / SUB_BUCKETS + 1;
+        long sub = SUB_BUCKETS + k % SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * 直方图快照
+     */
+    static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        long count() {
+            return count;
+        }
+
+        long max() {
+            return max;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * 计算百分位数
+         * @param percentile 百分位，例如99.9
+         * @return 不小于该比例的记录值的最小桶代表值，没有记录时返回0
+         */
+        long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(bucketHighestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
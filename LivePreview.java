@@ -0,0 +1,342 @@
+package m10d20.project2;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 实时预览 - 只重新计算被编辑区域的增量服务执行
+ * <p>
+ * 可切分的服务（大小写转换、凯撒加解密、空格去除、首字母大写，见{@link StreamingService#isSplittable()}）
+ * 对在空白之后切开的各段分别执行、按顺序拼接的结果与整体执行相同。
+ * 因此把输入切成若干个以空白结尾、约{@link #BLOCK_SIZE}个字符的块，记住每块的输出长度：
+ * 一次编辑只会使与编辑区间相交的块失效，重新执行这几块，
+ * 再按之前各块输出长度之和定位，把新的输出替换到结果中原来的位置即可，其余部分不需要重新计算。
+ * </p>
+ * <p>
+ * 字数统计不可切分，但每块保存一个{@link WordCounter}，编辑后只重新统计失效的块。
+ * 块都在空白之后结束，单词和代理对不会跨越块的边界，字符数、单词数、字节数、码点数和换行符数可以逐块相加，
+ * 因此另外维护这几项的总数：减去失效块的统计、加上新块的统计即可，不必合并所有块。
+ * 行数不计末尾的空行，由换行符总数减去文档末尾连续的空行数得到，只需从文档末尾向前扫描这些空行。
+ * </p>
+ * <p>
+ * {@link #insert(int, int)}、{@link #remove(int, int)}和{@link #flush(Document)}只在事件调度线程中调用：
+ * 前两者由文档监听器调用，只记录脏区间；防抖计时器到期后flush合并处理这段时间内的所有编辑。
+ * 对整个文档的第一次计算{@link #reset(String)}耗时与文档大小成正比，可以在后台线程中对文档的快照执行，
+ * 期间的编辑照常记录，结果发布到事件调度线程之后再由flush补上。
+ * </p>
+ * <p>
+ * 输入是整个文档，不去掉首尾空白：去掉之后，每次在首尾输入或删除空白都会使之前所有块的位置偏移。
+ * 因此首尾有空白时，预览与"执行服务"（先去掉首尾空白）的结果在首尾可能不同，界面在预览的状态中注明了这一点。
+ * </p>
+ */
+final class LivePreview {
+
+    /** 切块的目标字符数，块在这个位置之前的最后一个空白处结束 */
+    static final int BLOCK_SIZE = 2048;
+    /** 从文档末尾向前寻找空行时每次读取的字符数 */
+    private static final int TAIL_WINDOW = 256;
+
+    private final int serviceId;
+    private final StreamingService service;
+    private final boolean counting;
+    /** 按顺序排列的块，长度之和等于上次更新时的输入长度 */
+    private final List<Block> blocks = new ArrayList<>();
+    /** 上次更新后的结果长度 */
+    private int outputLength;
+    /** 字数统计时所有块可以相加的各项总数 */
+    private long chars;
+    private long words;
+    private long utf8Bytes;
+    private long codePoints;
+    private long newlines;
+    /** 脏区间[dirtyStart, dirtyEnd)以当前文档的坐标表示，delta是累计的长度变化；dirtyStart为-1表示没有编辑 */
+    private int dirtyStart = -1;
+    private int dirtyEnd;
+    private int delta;
+
+    /**
+     * @param serviceId 服务编号，必须满足{@link #supports(int)}
+     */
+    LivePreview(int serviceId) {
+        if (!supports(serviceId)) {
+            throw new IllegalArgumentException("服务不支持增量预览: " + ServiceRegistry.getKey(serviceId));
+        }
+        this.serviceId = serviceId;
+        this.service = ServiceRegistry.getStreaming(serviceId);
+        this.counting = serviceId == ServiceRegistry.COUNT;
+    }
+
+    /**
+     * 判断服务能否增量预览
+     * @param serviceId 服务编号
+     * @return 字数统计和不需要完整输入的可切分服务返回true
+     */
+    static boolean supports(int serviceId) {
+        StreamingService service = ServiceRegistry.getStreaming(serviceId);
+        return serviceId == ServiceRegistry.COUNT || (service.isSplittable() && !service.requiresFullInput());
+    }
+
+    /**
+     * @return 服务编号
+     */
+    int getServiceId() {
+        return serviceId;
+    }
+
+    /**
+     * 对整个文档执行一次服务，建立各块的状态
+     * <p>
+     * 只能在新创建的对象上调用一次，之后的编辑由{@link #flush(Document)}增量处理。
+     * 不访问脏区间，因此可以在后台线程中执行，同时事件调度线程照常记录编辑。
+     * </p>
+     * @param text 文档的快照，即记录编辑的起点
+     * @return 完整的结果
+     */
+    String reset(String text) {
+        StringBuilder output = new StringBuilder(text.length());
+        split(text, blocks, output);
+        String result;
+        if (counting) {
+            WordCounter total = new WordCounter();
+            for (Block block : blocks) {
+                total.merge(block.counter);
+                add(block.counter, 1);
+            }
+            result = total.format();
+        } else {
+            result = output.toString();
+        }
+        outputLength = result.length();
+        return result;
+    }
+
+    /**
+     * 记录一次插入
+     * @param offset 插入位置
+     * @param length 插入的字符数
+     */
+    void insert(int offset, int length) {
+        if (dirtyStart < 0) {
+            dirtyStart = offset;
+            dirtyEnd = offset + length;
+        } else {
+            dirtyStart = Math.min(dirtyStart, offset);
+            dirtyEnd = offset <= dirtyEnd ? dirtyEnd + length : offset + length;
+        }
+        delta += length;
+    }
+
+    /**
+     * 记录一次删除
+     * @param offset 删除位置
+     * @param length 删除的字符数
+     */
+    void remove(int offset, int length) {
+        if (dirtyStart < 0) {
+            dirtyStart = offset;
+            dirtyEnd = offset;
+        } else {
+            dirtyStart = Math.min(dirtyStart, offset);
+            // 删除区间越过脏区间末尾（或在它之后）时，脏区间延伸到删除位置
+            dirtyEnd = dirtyEnd >= offset + length ? dirtyEnd - length : offset;
+        }
+        delta -= length;
+    }
+
+    /**
+     * @return 是否有尚未处理的编辑
+     */
+    boolean isDirty() {
+        return dirtyStart >= 0;
+    }
+
+    /**
+     * 处理记录下来的所有编辑
+     * @param document 编辑后的输入文档
+     * @return 需要应用到上次结果上的修改；没有编辑时返回null
+     */
+    Patch flush(Document document) {
+        if (dirtyStart < 0) {
+            return null;
+        }
+        int oldStart = dirtyStart;
+        int oldEnd = dirtyEnd - delta;
+        // 找到与[oldStart, oldEnd]相交的块：编辑末尾恰好落在块边界上时，
+        // 后一块开头的字符可能与插入的内容连成一个单词，所以也要重新计算
+        int first = blocks.size();
+        int last = blocks.size() - 1;
+        int regionStart = 0;
+        int regionEnd = 0;
+        int outputStart = 0;
+        int removedOutput = 0;
+        int position = 0;
+        int outputPosition = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            int end = position + block.length;
+            boolean isLast = i == blocks.size() - 1;
+            if (first == blocks.size() && (oldStart < end || isLast)) {
+                first = i;
+                regionStart = position;
+                outputStart = outputPosition;
+            }
+            if (first <= i) {
+                removedOutput += block.outputLength;
+                if (oldEnd < end || isLast) {
+                    last = i;
+                    regionEnd = end;
+                    break;
+                }
+            }
+            position = end;
+            outputPosition += block.outputLength;
+        }
+        String text = getText(document, regionStart, regionEnd + delta - regionStart);
+        List<Block> replacement = new ArrayList<>();
+        StringBuilder output = new StringBuilder(text.length());
+        split(text, replacement, output);
+        List<Block> removed = blocks.subList(first, last + 1);
+        if (counting) {
+            for (Block block : removed) {
+                add(block.counter, -1);
+            }
+            for (Block block : replacement) {
+                add(block.counter, 1);
+            }
+        }
+        removed.clear();
+        blocks.addAll(first, replacement);
+        dirtyStart = -1;
+        delta = 0;
+
+        Patch patch;
+        if (counting) {
+            patch = new Patch(0, outputLength, WordCounter.format(chars, words, lines(document), utf8Bytes,
+                    codePoints));
+        } else {
+            patch = new Patch(outputStart, removedOutput, output.toString());
+        }
+        outputLength += patch.text.length() - patch.removed;
+        return patch;
+    }
+
+    /**
+     * 把一段以块边界开始的文本切成块并执行服务
+     */
+    private void split(String text, List<Block> target, StringBuilder output) {
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(length, start + BLOCK_SIZE);
+            if (end < length) {
+                int cut = end;
+                while (cut > start && !WordCounter.isSpace(text.charAt(cut - 1))) {
+                    cut--;
+                }
+                if (cut == start) {
+                    // 整块都没有空白：超长的单词只能整个放进一块
+                    while (end < length && !WordCounter.isSpace(text.charAt(end - 1))) {
+                        end++;
+                    }
+                } else {
+                    end = cut;
+                }
+            }
+            String part = text.substring(start, end);
+            Block block = new Block(part.length());
+            if (counting) {
+                block.counter = WordCounter.count(part);
+            } else {
+                String result = service.execute(part);
+                block.outputLength = result.length();
+                output.append(result);
+            }
+            target.add(block);
+            start = end;
+        }
+    }
+
+    private void add(WordCounter counter, int sign) {
+        chars += sign * counter.chars();
+        words += sign * counter.words();
+        utf8Bytes += sign * counter.utf8Bytes();
+        codePoints += sign * counter.codePoints();
+        newlines += sign * counter.newlines();
+    }
+
+    /**
+     * 按{@link WordCounter#lines()}的规则计算行数：末尾由\n或\r\n组成的空行不计
+     */
+    private long lines(Document document) {
+        int end = document.getLength();
+        if (end == 0) {
+            return 1;
+        }
+        Segment tail = new Segment();
+        int tailStart = end;
+        long trailing = 0;
+        boolean afterNewline = false;
+        while (end > 0) {
+            if (end - 1 < tailStart) {
+                tailStart = Math.max(0, end - TAIL_WINDOW);
+                try {
+                    document.getText(tailStart, end - tailStart, tail);
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            char c = tail.array[tail.offset + end - 1 - tailStart];
+            if (c == '\n') {
+                trailing++;
+                afterNewline = true;
+            } else if (c == '\r' && afterNewline) {
+                // \r\n中的\r属于换行符
+                afterNewline = false;
+            } else {
+                break;
+            }
+            end--;
+        }
+        return end == 0 ? 0 : newlines - trailing + 1;
+    }
+
+    private static String getText(Document document, int offset, int length) {
+        try {
+            return document.getText(offset, length);
+        } catch (BadLocationException e) {
+            // 脏区间由文档自身的事件得出，不会越界
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 一个块：输入长度以及对应的输出长度或统计
+     */
+    private static final class Block {
+        final int length;
+        int outputLength;
+        WordCounter counter;
+
+        Block(int length) {
+            this.length = length;
+        }
+    }
+
+    /**
+     * 对结果的一次修改：把[offset, offset + removed)替换为text
+     */
+    static final class Patch {
+        final int offset;
+        final int removed;
+        final String text;
+
+        Patch(int offset, int removed, String text) {
+            this.offset = offset;
+            this.removed = removed;
+            this.text = text;
+        }
+    }
+}
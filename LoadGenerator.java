@@ -0,0 +1,695 @@
+package m10d20.project2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 负载生成器 - 按固定到达速率驱动服务并报告延迟分布
+ * <p>
+ * 与{@link ServiceBenchmark}测量单个服务的吞吐量不同，负载生成器模拟线上流量：
+ * 按配置的服务比例和输入规模分布随机生成请求，以固定的到达速率（开环）提交给线程池执行，
+ * 服务可以在进程内直接调用，也可以通过{@link ServiceHttpServer}的HTTP接口调用。
+ * </p>
+ * <p>
+ * 开环意味着请求按预定的时间表发出，不等待之前的请求完成。每个请求的延迟从它<em>预定</em>的发出时间算起，
+ * 而不是从实际开始执行的时间算起：服务变慢、线程池排队时，排队的时间同样计入延迟，
+ * 从而校正了"协同遗漏"(coordinated omission)——闭环压测在服务停顿期间少发请求，会严重低估高百分位延迟。
+ * 报告同时给出不含排队时间的服务时间，两者之差就是排队造成的延迟。
+ * </p>
+ * <p>
+ * HTTP调用使用一个极简的HTTP/1.1客户端：连接池复用keep-alive连接，并关闭Nagle算法。
+ * HttpURLConnection把请求头和请求体分两次写出，与服务端的延迟确认叠加后每个请求会多出约40毫秒，
+ * 测得的延迟将主要是这段人为的等待。
+ * </p>
+ * <p>
+ * 结果以JSON报告写出，包括吞吐量和整体及各服务的p50/p99/p999/最大延迟；
+ * 用--baseline与之前的报告对比，可以发现版本之间的性能退化。
+ * </p>
+ * <pre>
+ * java m10d20.project2.LoadGenerator [选项]
+ *   --mix upper:5,count:1     服务及其权重（英文标识，默认所有确定性服务等权重）
+ *   --sizes 1K:9,64K:1        输入UTF-8字节数及其权重（默认1K）
+ *   --inputs mixed            输入类型：ascii、cjk或mixed（默认mixed）
+ *   --rate 1000               每秒发出的请求数（默认1000）
+ *   --arrival uniform         到达间隔：uniform（等间隔）或poisson（指数分布，默认uniform）
+ *   --duration 10000          测量时长（毫秒）
+ *   --warmup 2000             预热时长（毫秒），期间的请求不计入结果
+ *   --threads 8               执行请求的线程数，virtual表示每个请求一个虚拟线程（默认CPU核心数）
+ *   --target http://host:port 通过HTTP接口调用（默认在进程内直接调用）
+ *   --timeout 5000            请求的截止时间（毫秒）：进程内经过{@link AdmissionScheduler}准入后执行，
+ *                             HTTP以X-Timeout-Ms请求头发送（默认进程内不经过准入）
+ *   --seed 42                 请求序列和输入文本的随机种子
+ *   --report load.json        把报告写入文件
+ *   --baseline old.json       与之前的报告对比
+ * </pre>
+ */
+public class LoadGenerator {
+
+    /** 测量结束后等待未完成请求的最长时间 */
+    private static final long DRAIN_MILLIS = 30_000;
+
+    private final int[] serviceIds;
+    private final double[] serviceWeights;
+    private final String[] inputs;
+    private final byte[][] inputBytes;
+    private final double[] sizeWeights;
+    private final double rate;
+    private final boolean poisson;
+    /** 通过HTTP调用时的客户端，进程内调用时为null */
+    private final HttpTarget http;
+    /** 请求的截止时间（毫秒），0表示进程内直接调用、HTTP使用服务端的默认值 */
+    private final long timeoutMillis;
+
+    /** 按服务编号记录的校正延迟（从预定发出时间算起）和服务时间（从开始执行算起） */
+    private final LatencyHistogram[] latency;
+    private final LatencyHistogram[] serviceTime;
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private final LatencyHistogram totalServiceTime = new LatencyHistogram();
+    private final AtomicLongArray requests;
+    private final AtomicLongArray errors;
+    /** 已发出但尚未完成的请求数的最大值 */
+    private final AtomicLong maxBacklog = new AtomicLong();
+    private final AtomicLong backlog = new AtomicLong();
+    /** 最后一个计入结果的请求完成的时间 */
+    private final AtomicLong lastCompletion = new AtomicLong();
+
+    LoadGenerator(int[] serviceIds, double[] serviceWeights, int[] sizes, double[] sizeWeights,
+                  String kind, double rate, boolean poisson, String target, long timeoutMillis, long seed) {
+        this.serviceIds = serviceIds;
+        this.serviceWeights = cumulative(serviceWeights);
+        this.sizeWeights = cumulative(sizeWeights);
+        this.rate = rate;
+        this.poisson = poisson;
+        this.http = target == null ? null : new HttpTarget(URI.create(target), timeoutMillis);
+        this.timeoutMillis = timeoutMillis;
+        inputs = new String[sizes.length];
+        inputBytes = new byte[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            inputs[i] = ServiceBenchmark.generateInput(kind, sizes[i], seed + i);
+            inputBytes[i] = inputs[i].getBytes(StandardCharsets.UTF_8);
+        }
+        int count = ServiceRegistry.size();
+        latency = new LatencyHistogram[count];
+        serviceTime = new LatencyHistogram[count];
+        for (int id = 0; id < count; id++) {
+            latency[id] = new LatencyHistogram();
+            serviceTime[id] = new LatencyHistogram();
+        }
+        requests = new AtomicLongArray(count);
+        errors = new AtomicLongArray(count);
+    }
+
+    /**
+     * 运行一次负载：先预热，再测量
+     * @param executor 执行请求的线程池，调用结束后被关闭
+     * @param warmupMillis 预热时长
+     * @param durationMillis 测量时长
+     * @param seed 请求序列的随机种子
+     * @return 测量窗口的实际长度（纳秒），从测量开始到最后一个请求完成
+     * @throws InterruptedException 等待期间被中断时抛出
+     */
+    long run(ExecutorService executor, long warmupMillis, long durationMillis, long seed) throws InterruptedException {
+        Random random = new Random(seed);
+        long start = System.nanoTime();
+        final long measureStart = start + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        long end = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        double intervalNanos = 1e9 / rate;
+        double next = start;
+        try {
+            while (next < end) {
+                final long intended = (long) next;
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                // 落后于时间表时立即补发，预定时间仍按时间表计算
+                final int serviceId = pick(serviceIds, serviceWeights, random);
+                final int sizeIndex = pick(null, sizeWeights, random);
+                long outstanding = backlog.incrementAndGet();
+                updateMax(maxBacklog, outstanding);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        execute(serviceId, sizeIndex, intended, intended >= measureStart);
+                    }
+                });
+                next += poisson ? -Math.log(1 - random.nextDouble()) * intervalNanos : intervalNanos;
+            }
+        } finally {
+            executor.shutdown();
+        }
+        if (!executor.awaitTermination(DRAIN_MILLIS, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+        return Math.max(lastCompletion.get(), end) - measureStart;
+    }
+
+    /**
+     * 执行一个请求并记录结果
+     */
+    private void execute(int serviceId, int sizeIndex, long intended, boolean measured) {
+        long started = System.nanoTime();
+        boolean failed = false;
+        try {
+            if (http == null && timeoutMillis > 0) {
+                AdmissionScheduler.shared().execute(serviceId, inputs[sizeIndex], timeoutMillis, TimeUnit.MILLISECONDS);
+            } else if (http == null) {
+                ServiceRegistry.get(serviceId).execute(inputs[sizeIndex]);
+            } else {
+                failed = http.post("/services/" + ServiceRegistry.getKey(serviceId), inputBytes[sizeIndex]) != 200;
+            }
+        } catch (RuntimeException | IOException | OutOfMemoryError e) {
+            failed = true;
+        }
+        long finished = System.nanoTime();
+        backlog.decrementAndGet();
+        if (!measured) {
+            return;
+        }
+        requests.incrementAndGet(serviceId);
+        if (failed) {
+            errors.incrementAndGet(serviceId);
+        }
+        latency[serviceId].record(finished - intended);
+        serviceTime[serviceId].record(finished - started);
+        totalLatency.record(finished - intended);
+        totalServiceTime.record(finished - started);
+        updateMax(lastCompletion, finished);
+    }
+
+    /**
+     * 生成JSON报告
+     * @param windowNanos 测量窗口长度
+     * @param settings 运行参数，原样写入报告
+     * @return 报告对象（LinkedHashMap）
+     */
+    Map<String, Object> report(long windowNanos, Map<String, Object> settings) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings);
+        long total = 0;
+        long failed = 0;
+        List<Object> services = new ArrayList<>();
+        for (int id : serviceIds) {
+            long count = requests.get(id);
+            total += count;
+            failed += errors.get(id);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("service", ServiceRegistry.getKey(id));
+            entry.put("requests", count);
+            entry.put("errors", errors.get(id));
+            entry.put("throughput", round(count / (windowNanos / 1e9)));
+            entry.put("latencyMicros", summary(latency[id].snapshot()));
+            entry.put("serviceTimeMicros", summary(serviceTime[id].snapshot()));
+            services.add(entry);
+        }
+        report.put("requests", total);
+        report.put("errors", failed);
+        report.put("windowSeconds", round(windowNanos / 1e9));
+        report.put("throughput", round(total / (windowNanos / 1e9)));
+        report.put("maxBacklog", maxBacklog.get());
+        report.put("latencyMicros", summary(totalLatency.snapshot()));
+        report.put("serviceTimeMicros", summary(totalServiceTime.snapshot()));
+        report.put("services", services);
+        return report;
+    }
+
+    private static Map<String, Object> summary(LatencyHistogram.Snapshot snapshot) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("mean", round(snapshot.mean() / 1000.0));
+        summary.put("p50", round(snapshot.percentile(50) / 1000.0));
+        summary.put("p99", round(snapshot.percentile(99) / 1000.0));
+        summary.put("p999", round(snapshot.percentile(99.9) / 1000.0));
+        summary.put("max", round(snapshot.max() / 1000.0));
+        return summary;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    /**
+     * 把权重转换为累计比例，最后一项为1
+     */
+    private static double[] cumulative(double[] weights) {
+        double sum = 0;
+        for (double weight : weights) {
+            sum += weight;
+        }
+        double[] result = new double[weights.length];
+        double running = 0;
+        for (int i = 0; i < weights.length; i++) {
+            running += weights[i];
+            result[i] = running / sum;
+        }
+        result[result.length - 1] = 1.0;
+        return result;
+    }
+
+    /**
+     * 按累计比例随机选取一项
+     * @param values 候选值，为null时返回下标
+     */
+    private static int pick(int[] values, double[] cumulative, Random random) {
+        double r = random.nextDouble();
+        int i = 0;
+        while (cumulative[i] <= r) {
+            i++;
+        }
+        return values == null ? i : values[i];
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<Integer> ids = new ArrayList<>();
+        List<Double> idWeights = new ArrayList<>();
+        List<Integer> sizeList = new ArrayList<>();
+        List<Double> sizeWeightList = new ArrayList<>();
+        String kind = "mixed";
+        double rate = 1000;
+        boolean poisson = false;
+        long durationMillis = 10_000;
+        long warmupMillis = 2_000;
+        String threads = String.valueOf(Runtime.getRuntime().availableProcessors());
+        String target = null;
+        long timeoutMillis = 0;
+        long seed = 42L;
+        Path reportPath = null;
+        Path baselinePath = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    usage("缺少参数值: " + option);
+                    return;
+                }
+                String value = args[++i];
+                switch (option) {
+                    case "--mix":
+                        for (String part : value.split(",")) {
+                            String[] pair = part.trim().split(":");
+                            int id = ServiceRegistry.indexOf(pair[0]);
+                            if (id < 0) {
+                                usage("未知服务: " + pair[0]);
+                                return;
+                            }
+                            ids.add(id);
+                            idWeights.add(pair.length > 1 ? Double.parseDouble(pair[1]) : 1.0);
+                        }
+                        break;
+                    case "--sizes":
+                        for (String part : value.split(",")) {
+                            String[] pair = part.trim().split(":");
+                            sizeList.add(ServiceBenchmark.parseSize(pair[0]));
+                            sizeWeightList.add(pair.length > 1 ? Double.parseDouble(pair[1]) : 1.0);
+                        }
+                        break;
+                    case "--inputs":
+                        kind = value;
+                        break;
+                    case "--rate":
+                        rate = Double.parseDouble(value);
+                        break;
+                    case "--arrival":
+                        poisson = "poisson".equalsIgnoreCase(value);
+                        break;
+                    case "--duration":
+                        durationMillis = Long.parseLong(value);
+                        break;
+                    case "--warmup":
+                        warmupMillis = Long.parseLong(value);
+                        break;
+                    case "--threads":
+                        if (!"virtual".equalsIgnoreCase(value)) {
+                            Integer.parseInt(value);
+                        }
+                        threads = value;
+                        break;
+                    case "--target":
+                        target = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                        break;
+                    case "--timeout":
+                        timeoutMillis = Long.parseLong(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--report":
+                        reportPath = Paths.get(value);
+                        break;
+                    case "--baseline":
+                        baselinePath = Paths.get(value);
+                        break;
+                    default:
+                        usage("未知选项: " + option);
+                        return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage("参数格式错误: " + e.getMessage());
+            return;
+        }
+        if (rate <= 0) {
+            usage("--rate必须大于0");
+            return;
+        }
+        if (ids.isEmpty()) {
+            // 默认混合所有确定性服务；打乱服务的输出每次不同，不适合做回归对比
+            for (int id = 0; id < ServiceRegistry.size(); id++) {
+                if (ServiceRegistry.get(id).isDeterministic()) {
+                    ids.add(id);
+                    idWeights.add(1.0);
+                }
+            }
+        }
+        if (sizeList.isEmpty()) {
+            sizeList.add(1 << 10);
+            sizeWeightList.add(1.0);
+        }
+
+        ExecutorService executor;
+        if ("virtual".equalsIgnoreCase(threads)) {
+            executor = ServiceExecutors.newPerTaskExecutor("load");
+        } else {
+            executor = Executors.newFixedThreadPool(Math.max(1, Integer.parseInt(threads)),
+                    ServiceExecutors.daemonThreads("load"));
+        }
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("target", target == null ? "in-process" : target);
+        Map<String, Object> mix = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            mix.put(ServiceRegistry.getKey(ids.get(i)), idWeights.get(i));
+        }
+        settings.put("mix", mix);
+        Map<String, Object> sizeMix = new LinkedHashMap<>();
+        for (int i = 0; i < sizeList.size(); i++) {
+            sizeMix.put(ServiceBenchmark.formatSize(sizeList.get(i)), sizeWeightList.get(i));
+        }
+        settings.put("sizes", sizeMix);
+        settings.put("inputs", kind);
+        settings.put("rate", rate);
+        settings.put("arrival", poisson ? "poisson" : "uniform");
+        settings.put("durationMillis", durationMillis);
+        settings.put("warmupMillis", warmupMillis);
+        settings.put("threads", threads);
+        if (timeoutMillis > 0) {
+            settings.put("timeoutMillis", timeoutMillis);
+        }
+        settings.put("seed", seed);
+
+        LoadGenerator generator = new LoadGenerator(toIntArray(ids), toDoubleArray(idWeights),
+                toIntArray(sizeList), toDoubleArray(sizeWeightList), kind, rate, poisson, target, timeoutMillis, seed);
+        PrintStream out = new PrintStream(System.out, true, "UTF-8");
+        out.printf(Locale.ROOT, "以每秒%.0f个请求运行%d毫秒（预热%d毫秒）…%n", rate, durationMillis, warmupMillis);
+        long window = generator.run(executor, warmupMillis, durationMillis, seed);
+        Map<String, Object> report = generator.report(window, settings);
+        print(out, report);
+
+        if (baselinePath != null) {
+            String text = new String(Files.readAllBytes(baselinePath), StandardCharsets.UTF_8);
+            compare(out, report, Json.parseObject(text));
+        }
+        if (reportPath != null) {
+            StringBuilder json = new StringBuilder();
+            Json.write(json, report);
+            json.append('\n');
+            Files.write(reportPath, json.toString().getBytes(StandardCharsets.UTF_8));
+            out.println("\n报告已保存到: " + reportPath);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(PrintStream out, Map<String, Object> report) {
+        out.printf("%-11s %10s %8s %12s %12s %12s %12s %12s%n",
+                "Service", "requests", "errors", "req/s", "p50 us", "p99 us", "p999 us", "max us");
+        for (Object element : (List<Object>) report.get("services")) {
+            Map<String, Object> entry = (Map<String, Object>) element;
+            printRow(out, (String) entry.get("service"), entry);
+        }
+        printRow(out, "(total)", report);
+        Map<String, Object> service = (Map<String, Object>) report.get("serviceTimeMicros");
+        out.printf(Locale.ROOT, "不含排队的服务时间: p50 %.1f us, p99 %.1f us；最大积压请求数 %d%n",
+                ((Number) service.get("p50")).doubleValue(), ((Number) service.get("p99")).doubleValue(),
+                ((Number) report.get("maxBacklog")).longValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printRow(PrintStream out, String name, Map<String, Object> entry) {
+        Map<String, Object> latency = (Map<String, Object>) entry.get("latencyMicros");
+        out.printf(Locale.ROOT, "%-11s %10d %8d %12.1f %12.1f %12.1f %12.1f %12.1f%n", name,
+                ((Number) entry.get("requests")).longValue(), ((Number) entry.get("errors")).longValue(),
+                ((Number) entry.get("throughput")).doubleValue(),
+                ((Number) latency.get("p50")).doubleValue(), ((Number) latency.get("p99")).doubleValue(),
+                ((Number) latency.get("p999")).doubleValue(), ((Number) latency.get("max")).doubleValue());
+    }
+
+    /**
+     * 按服务对比吞吐量和p99延迟
+     */
+    @SuppressWarnings("unchecked")
+    private static void compare(PrintStream out, Map<String, Object> report, Map<String, Object> baseline) {
+        Map<String, Map<String, Object>> previous = new LinkedHashMap<>();
+        Object services = baseline.get("services");
+        if (services instanceof List) {
+            for (Object element : (List<Object>) services) {
+                Map<String, Object> entry = (Map<String, Object>) element;
+                previous.put((String) entry.get("service"), entry);
+            }
+        }
+        out.println("\n===== 与基线对比 =====");
+        out.printf("%-11s %12s %12s %9s %12s %12s %9s%n",
+                "Service", "基线 req/s", "当前 req/s", "吞吐变化", "基线 p99", "当前 p99", "p99变化");
+        for (Object element : (List<Object>) report.get("services")) {
+            Map<String, Object> entry = (Map<String, Object>) element;
+            Map<String, Object> base = previous.get(entry.get("service"));
+            if (base == null) {
+                continue;
+            }
+            double baseThroughput = ((Number) base.get("throughput")).doubleValue();
+            double throughput = ((Number) entry.get("throughput")).doubleValue();
+            double baseP99 = ((Number) ((Map<String, Object>) base.get("latencyMicros")).get("p99")).doubleValue();
+            double p99 = ((Number) ((Map<String, Object>) entry.get("latencyMicros")).get("p99")).doubleValue();
+            out.printf(Locale.ROOT, "%-11s %12.1f %12.1f %+8.1f%% %12.1f %12.1f %+8.1f%%%n",
+                    entry.get("service"), baseThroughput, throughput, change(baseThroughput, throughput),
+                    baseP99, p99, change(baseP99, p99));
+        }
+    }
+
+    private static double change(double base, double current) {
+        return base == 0 ? 0 : (current - base) / base * 100.0;
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static double[] toDoubleArray(List<Double> list) {
+        double[] array = new double[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * 极简HTTP/1.1客户端：只支持带Content-Length请求体的POST，响应体按Content-Length或分块传输编码读完后丢弃
+     */
+    private static final class HttpTarget {
+        private final String host;
+        private final int port;
+        private final long timeoutMillis;
+        private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+        HttpTarget(URI uri, long timeoutMillis) {
+            if (!"http".equals(uri.getScheme()) || uri.getHost() == null) {
+                throw new IllegalArgumentException("只支持http://主机:端口形式的地址: " + uri);
+            }
+            this.host = uri.getHost();
+            this.port = uri.getPort() < 0 ? 80 : uri.getPort();
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * 发送请求并读完响应
+         * @return 响应状态码
+         */
+        int post(String path, byte[] body) throws IOException {
+            byte[] head = ("POST " + path + " HTTP/1.1\r\nHost: " + host + ":" + port
+                    + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: " + body.length
+                    + (timeoutMillis > 0 ? "\r\nX-Timeout-Ms: " + timeoutMillis : "")
+                    + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            Connection connection = idle.poll();
+            if (connection != null) {
+                try {
+                    return exchange(connection, head, body);
+                } catch (IOException e) {
+                    // 空闲的连接可能已被服务端关闭，换一个新连接重试一次
+                }
+            }
+            return exchange(new Connection(host, port), head, body);
+        }
+
+        private int exchange(Connection connection, byte[] head, byte[] body) throws IOException {
+            boolean reusable = false;
+            try {
+                int status = connection.exchange(head, body);
+                reusable = connection.keepAlive;
+                return status;
+            } finally {
+                if (reusable) {
+                    idle.offer(connection);
+                } else {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个keep-alive连接
+     */
+    private static final class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        boolean keepAlive;
+
+        Connection(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream(), StreamingService.BUFFER_SIZE);
+            out = new BufferedOutputStream(socket.getOutputStream(), StreamingService.BUFFER_SIZE);
+        }
+
+        int exchange(byte[] head, byte[] body) throws IOException {
+            out.write(head);
+            out.write(body);
+            out.flush();
+            String statusLine = readLine();
+            String[] parts = statusLine.split(" ");
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/1.")) {
+                throw new IOException("无法识别的响应: " + statusLine);
+            }
+            int status = Integer.parseInt(parts[1]);
+            long contentLength = -1;
+            boolean chunked = false;
+            keepAlive = parts[0].equals("HTTP/1.1");
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = line.substring(colon + 1).trim();
+                if (name.equals("content-length")) {
+                    contentLength = Long.parseLong(value);
+                } else if (name.equals("transfer-encoding")) {
+                    chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                } else if (name.equals("connection")) {
+                    keepAlive = !value.equalsIgnoreCase("close");
+                }
+            }
+            if (chunked) {
+                long size;
+                while ((size = Long.parseLong(readLine().split(";")[0].trim(), 16)) > 0) {
+                    skip(size);
+                    readLine();
+                }
+                // 跳过尾部字段，直到空行
+                while (!readLine().isEmpty()) {
+                    // 丢弃
+                }
+            } else if (contentLength >= 0) {
+                skip(contentLength);
+            } else {
+                // 既没有长度也不分块：响应体到连接关闭为止
+                while (in.read() != -1) {
+                    // 丢弃
+                }
+                keepAlive = false;
+            }
+            return status;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c == -1) {
+                    throw new EOFException("连接已关闭");
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        private void skip(long count) throws IOException {
+            while (count > 0) {
+                long skipped = in.skip(count);
+                if (skipped <= 0) {
+                    if (in.read() == -1) {
+                        throw new EOFException("连接已关闭");
+                    }
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 关闭失败不影响测量
+            }
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("用法: java m10d20.project2.LoadGenerator [--mix upper:5,count:1] [--sizes 1K:9,64K:1]"
+                + " [--inputs ascii|cjk|mixed] [--rate 请求数/秒] [--arrival uniform|poisson]"
+                + " [--duration ms] [--warmup ms] [--threads n|virtual] [--target http://host:port] [--timeout ms]"
+                + " [--seed n] [--report file] [--baseline file]");
+    }
+}
@@ -0,0 +1,273 @@
+package m10d20.project2;
+
+/**
+ * long到int的开放寻址哈希表 - 不装箱、不为每个条目创建对象
+ * <p>
+ * 键和值分别保存在long[]和int[]两个平行数组中，冲突时线性探测，每个槽位只占12字节；
+ * 装载因子不超过3/4，容量总是2的幂，每个不同的键平均占用约16到24字节。
+ * 相比之下HashMap&lt;String, Integer&gt;的每个条目要一个Node、一个String（及其字符数组）和一个Integer，
+ * 在统计大型语料的词频时，对象头和指针的开销远大于数据本身，垃圾回收器还要逐个扫描它们。
+ * </p>
+ * <p>
+ * 空槽位以键0表示，键0本身单独保存。下标由键乘以黄金分割常数后取高位得到（Fibonacci散列），
+ * 即使键的低位分布不均匀也能散开。删除时把后面同一探测链上的条目前移，不留墓碑。
+ * 本类不是线程安全的：并行统计时每个线程使用自己的表，最后用{@link #addAll(LongIntHashMap)}合并。
+ * </p>
+ */
+final class LongIntHashMap {
+
+    /** 乘法散列使用的黄金分割常数 */
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    /** 把乘积右移这么多位得到下标 */
+    private int shift;
+    /** 不含键0的条目数 */
+    private int size;
+    private int resizeAt;
+    private boolean hasZero;
+    private int zeroValue;
+
+    /**
+     * 条目访问器，用于{@link #forEach(Visitor)}
+     */
+    interface Visitor {
+        void visit(long key, int value);
+    }
+
+    LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 预计的条目数，达到之前不会扩容
+     */
+    LongIntHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 4 * 3 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = capacity / 4 * 3;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * GOLDEN) >>> shift);
+    }
+
+    /**
+     * @param key 键
+     * @return 键对应的值，不存在时返回0
+     */
+    int get(long key) {
+        if (key == 0) {
+            return hasZero ? zeroValue : 0;
+        }
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * @param key 键
+     * @return 表中是否有这个键
+     */
+    boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * 设置键对应的值
+     * @param key 键
+     * @param value 值
+     */
+    void put(long key, int value) {
+        if (key == 0) {
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        insert(i, key, value);
+    }
+
+    /**
+     * 把增量加到键对应的值上，键不存在时视为0
+     * @param key 键
+     * @param delta 增量
+     * @return 相加后的值
+     */
+    int addTo(long key, int delta) {
+        if (key == 0) {
+            if (!hasZero) {
+                hasZero = true;
+                zeroValue = 0;
+            }
+            return zeroValue += delta;
+        }
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                return values[i] += delta;
+            }
+            i = (i + 1) & mask;
+        }
+        insert(i, key, delta);
+        return delta;
+    }
+
+    private void insert(int i, long key, int value) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * 删除键
+     * @param key 键
+     * @return 被删除的值，不存在时返回0
+     */
+    int remove(long key) {
+        if (key == 0) {
+            int value = hasZero ? zeroValue : 0;
+            hasZero = false;
+            return value;
+        }
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                int value = values[i];
+                shiftBack(i);
+                size--;
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * 删除槽位gap上的条目后，把探测链上后面的条目前移，使查找不会提前遇到空槽位
+     */
+    private void shiftBack(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = keys[i];
+            if (k == 0) {
+                break;
+            }
+            int home = slot(k);
+            // 条目的理想位置不在(gap, i]之间（按环形计算）时，可以移到gap上
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != 0) {
+                int i = slot(key);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * 把另一个表中的值逐个加到本表上
+     * @param other 另一个表，不会被修改
+     */
+    void addAll(LongIntHashMap other) {
+        if (other.hasZero) {
+            addTo(0, other.zeroValue);
+        }
+        long[] otherKeys = other.keys;
+        int[] otherValues = other.values;
+        for (int j = 0; j < otherKeys.length; j++) {
+            if (otherKeys[j] != 0) {
+                addTo(otherKeys[j], otherValues[j]);
+            }
+        }
+    }
+
+    /**
+     * 按槽位顺序访问所有条目（顺序与插入顺序无关）
+     * @param visitor 访问器
+     */
+    void forEach(Visitor visitor) {
+        if (hasZero) {
+            visitor.visit(0, zeroValue);
+        }
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] != 0) {
+                visitor.visit(keys[j], values[j]);
+            }
+        }
+    }
+
+    /**
+     * @return 条目数
+     */
+    int size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    /**
+     * @return 两个数组占用的字节数（不含对象头）
+     */
+    long memoryBytes() {
+        return keys.length * 12L;
+    }
+}
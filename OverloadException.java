@@ -0,0 +1,53 @@
+package m10d20.project2;
+
+/**
+ * 过载异常 - 请求因排队已满、等待超时或执行超过截止时间而未能完成
+ * <p>
+ * 由{@link AdmissionScheduler}抛出，表示服务端暂时无法处理该请求，调用方可以稍后重试；
+ * 它与服务本身的失败（参数错误、运行时异常）不同，HTTP前端以503状态码返回。
+ * </p>
+ */
+public class OverloadException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 拒绝的原因
+     */
+    public enum Reason {
+        /** 该服务的等待队列已满，请求被立即拒绝 */
+        QUEUE_FULL,
+        /** 在截止时间之前未能获得执行许可 */
+        TIMEOUT,
+        /** 已开始执行，但超过截止时间被取消 */
+        DEADLINE_EXCEEDED
+    }
+
+    private final Reason reason;
+    private final String serviceKey;
+
+    /**
+     * @param reason 拒绝的原因
+     * @param serviceKey 服务的英文标识
+     * @param message 详细信息
+     */
+    public OverloadException(Reason reason, String serviceKey, String message) {
+        super(message);
+        this.reason = reason;
+        this.serviceKey = serviceKey;
+    }
+
+    /**
+     * @return 拒绝的原因
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return 服务的英文标识
+     */
+    public String getServiceKey() {
+        return serviceKey;
+    }
+}
@@ -0,0 +1,123 @@
+package m10d20.project2;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.io.IOException;
+
+/**
+ * 分页结果视图 - 只渲染可见窗口的大结果显示组件
+ * <p>
+ * 文本保存在{@link ResultBuffer}中，视图里的JTextArea只装着当前可见的几十个显示行，
+ * 右侧的滚动条按显示行总数定位，滚动时从缓冲区按需读取新的一页。
+ * 因此无论结果有多大，界面的排版开销和内存占用都只与窗口大小有关。
+ * </p>
+ * <p>
+ * 结果还在写入时（流式服务边执行边输出）可以随时调用{@link #refresh()}刷新，
+ * 滚动范围和状态栏随之增长，当前页保持不动。
+ * </p>
+ */
+class PagedResultView extends JPanel {
+
+    private final JTextArea area;
+    private final JScrollBar scrollBar;
+    private final JLabel statusLabel;
+    private ResultBuffer buffer;
+    private int visibleRows = 10;
+    private boolean adjusting;
+
+    PagedResultView() {
+        super(new BorderLayout(0, 2));
+        area = new JTextArea(10, 40);
+        area.setEditable(false);
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, area.getFont().getSize()));
+        JScrollPane horizontalPane = new JScrollPane(area, ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER,
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+        statusLabel = new JLabel(" ");
+
+        scrollBar.addAdjustmentListener(new AdjustmentListener() {
+            @Override
+            public void adjustmentValueChanged(AdjustmentEvent e) {
+                if (!adjusting) {
+                    loadPage();
+                }
+            }
+        });
+        area.addMouseWheelListener(new MouseWheelListener() {
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                scrollBar.setValue(scrollBar.getValue() + e.getWheelRotation() * 3);
+            }
+        });
+        // 窗口大小变化时重新计算可见行数
+        horizontalPane.getViewport().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                int rowHeight = area.getFontMetrics(area.getFont()).getHeight();
+                visibleRows = Math.max(1, e.getComponent().getHeight() / Math.max(1, rowHeight));
+                refresh();
+            }
+        });
+
+        add(horizontalPane, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+        add(statusLabel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * 显示新的结果缓冲区，之前的缓冲区会被关闭并删除临时文件
+     * @param newBuffer 结果缓冲区，为null时清空显示
+     */
+    void setBuffer(ResultBuffer newBuffer) {
+        if (buffer != null && buffer != newBuffer) {
+            try {
+                buffer.close();
+            } catch (IOException e) {
+                // 临时文件删除失败不影响显示
+            }
+        }
+        buffer = newBuffer;
+        adjusting = true;
+        scrollBar.setValue(0);
+        adjusting = false;
+        refresh();
+    }
+
+    /**
+     * 按缓冲区的最新内容刷新滚动范围、状态栏和当前页
+     */
+    void refresh() {
+        if (buffer == null) {
+            area.setText("");
+            statusLabel.setText(" ");
+            return;
+        }
+        long rows = buffer.rowCount();
+        int total = (int) Math.min(Integer.MAX_VALUE, rows);
+        adjusting = true;
+        int value = Math.min(scrollBar.getValue(), Math.max(0, total - visibleRows));
+        scrollBar.setValues(value, Math.min(visibleRows, total), 0, total);
+        scrollBar.setBlockIncrement(Math.max(1, visibleRows - 1));
+        adjusting = false;
+        statusLabel.setText(String.format("共 %,d 字符，%,d 行", buffer.length(), buffer.lineCount()));
+        loadPage();
+    }
+
+    private void loadPage() {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            area.setText(buffer.readRows(scrollBar.getValue(), visibleRows));
+            area.setCaretPosition(0);
+        } catch (IOException e) {
+            area.setText("读取结果失败: " + e.getMessage());
+        }
+    }
+}
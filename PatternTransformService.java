@@ -0,0 +1,504 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 正则表达式变换服务 - 查找替换、按行过滤和提取匹配三类服务
+ * <p>
+ * 自定义的文本变换不必再各写一个匿名内部类，只需给出正则表达式（和替换文本）：
+ * </p>
+ * <pre>
+ * PatternTransformService.replace("\\s+", "")      // 去除所有空白
+ * PatternTransformService.filter("ERROR|WARN")    // 只保留包含匹配的行
+ * PatternTransformService.extract("\\d+")         // 每个匹配输出一行
+ * </pre>
+ * <p>
+ * 编译后的Pattern保存在全局的有界并发缓存中，同一个正则表达式只编译一次；
+ * Pattern是线程安全的，Matcher不是，因此每个服务为每个线程保留一个Matcher反复reset使用。
+ * </p>
+ * <p>
+ * 两类简单的正则表达式不经过正则引擎，而是交给手写的扫描循环：
+ * 不含元字符的字面文本（用String.indexOf查找），以及单个字符类及其"+"重复
+ * （\s、\d或单个字面字符，例如\s+）。替换文本不含$分组引用时，
+ * 结果与Matcher.replaceAll完全一致。
+ * </p>
+ * <p>
+ * 按行过滤和字符类替换可以流式处理，其余情况会把输入完整读入内存。
+ * </p>
+ */
+public final class PatternTransformService implements StreamingService {
+
+    /**
+     * 变换方式
+     */
+    public enum Mode {
+        /** 把每个匹配替换为替换文本 */
+        REPLACE,
+        /** 只保留包含匹配的行，每行以\n结尾 */
+        FILTER,
+        /** 按顺序输出每个匹配，每个匹配一行 */
+        EXTRACT
+    }
+
+    /** 缓存的编译后Pattern的最大数量 */
+    private static final int MAX_CACHED_PATTERNS = 256;
+    private static final ConcurrentMap<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+    /** 按加入缓存的顺序排列的正则表达式，缓存满时先淘汰最早加入的 */
+    private static final Queue<String> PATTERN_ORDER = new ConcurrentLinkedQueue<>();
+
+    /** 字符类：不是简单的字符类 */
+    private static final int CLASS_NONE = 0;
+    /** 字符类：\s */
+    private static final int CLASS_SPACE = 1;
+    /** 字符类：\d（默认只匹配ASCII数字） */
+    private static final int CLASS_DIGIT = 2;
+    /** 字符类：单个字面字符 */
+    private static final int CLASS_CHAR = 3;
+
+    private final Mode mode;
+    private final String regex;
+    private final String replacement;
+    private final Pattern pattern;
+    private final ThreadLocal<Matcher> matchers;
+
+    /** 不含元字符时的字面文本，否则为null */
+    private final String literal;
+    private final int charClass;
+    private final char classChar;
+    /** 字符类后面带有"+"，连续的一串作为一个匹配 */
+    private final boolean classRepeats;
+    /** 不含分组引用时替换文本的字面内容，否则为null */
+    private final String literalReplacement;
+
+    private PatternTransformService(Mode mode, String regex, String replacement) {
+        this.mode = mode;
+        this.regex = regex;
+        this.replacement = replacement;
+        this.pattern = compile(regex);
+        this.matchers = new ThreadLocal<Matcher>() {
+            @Override
+            protected Matcher initialValue() {
+                return pattern.matcher("");
+            }
+        };
+        this.literalReplacement = replacement == null ? "" : unescapeReplacement(replacement);
+
+        String unescaped = unescapeLiteral(regex);
+        boolean repeats = false;
+        String body = regex;
+        if (unescaped == null && regex.endsWith("+") && regex.length() > 1 && !regex.endsWith("\\+")) {
+            repeats = true;
+            body = regex.substring(0, regex.length() - 1);
+        }
+        String bodyLiteral = repeats ? unescapeLiteral(body) : unescaped;
+        if ("\\s".equals(body)) {
+            charClass = CLASS_SPACE;
+            classChar = 0;
+        } else if ("\\d".equals(body)) {
+            charClass = CLASS_DIGIT;
+            classChar = 0;
+        } else if (bodyLiteral != null && bodyLiteral.length() == 1 && !Character.isSurrogate(bodyLiteral.charAt(0))) {
+            charClass = CLASS_CHAR;
+            classChar = bodyLiteral.charAt(0);
+        } else {
+            charClass = CLASS_NONE;
+            classChar = 0;
+        }
+        this.classRepeats = charClass != CLASS_NONE && repeats;
+        this.literal = charClass == CLASS_NONE && unescaped != null && !unescaped.isEmpty() ? unescaped : null;
+    }
+
+    /**
+     * 创建查找替换服务，等价于Matcher.replaceAll(replacement)
+     * @param regex 正则表达式
+     * @param replacement 替换文本，可以使用$1等分组引用
+     * @return 服务实例
+     * @throws java.util.regex.PatternSyntaxException 正则表达式语法错误时抛出
+     */
+    public static PatternTransformService replace(String regex, String replacement) {
+        if (replacement == null) {
+            throw new IllegalArgumentException("替换文本不能为null");
+        }
+        return new PatternTransformService(Mode.REPLACE, regex, replacement);
+    }
+
+    /**
+     * 创建按行过滤服务，只保留包含匹配的行（行以\n分隔，匹配时不含行尾的\r）
+     * @param regex 正则表达式
+     * @return 服务实例
+     * @throws java.util.regex.PatternSyntaxException 正则表达式语法错误时抛出
+     */
+    public static PatternTransformService filter(String regex) {
+        return new PatternTransformService(Mode.FILTER, regex, null);
+    }
+
+    /**
+     * 创建提取服务，按顺序输出每个匹配，每个匹配一行
+     * @param regex 正则表达式
+     * @return 服务实例
+     * @throws java.util.regex.PatternSyntaxException 正则表达式语法错误时抛出
+     */
+    public static PatternTransformService extract(String regex) {
+        return new PatternTransformService(Mode.EXTRACT, regex, null);
+    }
+
+    /**
+     * 从全局缓存中获取编译后的Pattern，不存在时编译并加入缓存
+     * @param regex 正则表达式
+     * @return 编译后的Pattern
+     * @throws java.util.regex.PatternSyntaxException 正则表达式语法错误时抛出
+     */
+    static Pattern compile(String regex) {
+        if (regex == null) {
+            throw new IllegalArgumentException("正则表达式不能为null");
+        }
+        Pattern cached = PATTERNS.get(regex);
+        if (cached != null) {
+            return cached;
+        }
+        Pattern compiled = Pattern.compile(regex);
+        if (PATTERNS.putIfAbsent(regex, compiled) == null) {
+            PATTERN_ORDER.add(regex);
+            while (PATTERNS.size() > MAX_CACHED_PATTERNS) {
+                String eldest = PATTERN_ORDER.poll();
+                if (eldest == null) {
+                    break;
+                }
+                PATTERNS.remove(eldest);
+            }
+        }
+        return compiled;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    /**
+     * 是否使用手写的扫描循环而不经过正则引擎
+     * @return 字面文本或简单字符类时返回true
+     */
+    boolean isScanned() {
+        return (literal != null || charClass != CLASS_NONE)
+                && (mode != Mode.REPLACE || literalReplacement != null);
+    }
+
+    @Override
+    public String execute(String in) {
+        try {
+            return transform(in);
+        } finally {
+            releaseMatcher();
+        }
+    }
+
+    /**
+     * 让本线程的Matcher不再引用输入文本，以免大文本在服务执行完后仍无法回收
+     */
+    private void releaseMatcher() {
+        if (!isScanned()) {
+            matchers.get().reset("");
+        }
+    }
+
+    private String transform(String in) {
+        switch (mode) {
+            case REPLACE:
+                if (!isScanned()) {
+                    return matchers.get().reset(in).replaceAll(replacement);
+                }
+                return scanReplace(in);
+            case FILTER:
+                StringBuilder lines = new StringBuilder();
+                int start = 0;
+                int length = in.length();
+                while (start < length) {
+                    Cancellation.checkpoint();
+                    int end = in.indexOf('\n', start);
+                    end = end < 0 ? length : end;
+                    appendIfMatches(lines, in, start, end);
+                    start = end + 1;
+                }
+                return lines.toString();
+            default:
+                return extractMatches(in);
+        }
+    }
+
+    private String scanReplace(String in) {
+        int start = find(in, 0);
+        if (start < 0) {
+            return in;
+        }
+        if (literal == null && literalReplacement.isEmpty()) {
+            // 删除字符类中的字符：复制到字符数组后原地压缩
+            char[] chars = new char[in.length()];
+            in.getChars(0, chars.length, chars, 0);
+            int kept = start;
+            for (int i = start; i < chars.length; i++) {
+                if ((i & Cancellation.CHECK_MASK) == 0) {
+                    Cancellation.checkpoint();
+                }
+                char c = chars[i];
+                if (!inClass(c)) {
+                    chars[kept++] = c;
+                }
+            }
+            return new String(chars, 0, kept);
+        }
+        StringBuilder result = new StringBuilder(in.length());
+        int last = 0;
+        int matches = 0;
+        while (start >= 0) {
+            if ((++matches & Cancellation.CHECK_MASK) == 0) {
+                Cancellation.checkpoint();
+            }
+            result.append(in, last, start).append(literalReplacement);
+            last = matchEnd(in, start);
+            start = find(in, last);
+        }
+        return result.append(in, last, in.length()).toString();
+    }
+
+    private String extractMatches(String in) {
+        StringBuilder result = new StringBuilder();
+        int matches = 0;
+        if (isScanned()) {
+            for (int start = find(in, 0); start >= 0; ) {
+                if ((++matches & Cancellation.CHECK_MASK) == 0) {
+                    Cancellation.checkpoint();
+                }
+                int end = matchEnd(in, start);
+                result.append(in, start, end).append('\n');
+                start = find(in, end);
+            }
+            return result.toString();
+        }
+        Matcher matcher = matchers.get().reset(in);
+        while (matcher.find()) {
+            if ((++matches & Cancellation.CHECK_MASK) == 0) {
+                Cancellation.checkpoint();
+            }
+            result.append(in, matcher.start(), matcher.end()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * 行[start, end)包含匹配时追加该行和\n
+     */
+    private void appendIfMatches(StringBuilder out, CharSequence text, int start, int end) {
+        int contentEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+        CharSequence line = text.subSequence(start, contentEnd);
+        boolean matches = isScanned() ? find(line, 0) >= 0 : matchers.get().reset(line).find();
+        if (matches) {
+            out.append(text, start, end).append('\n');
+        }
+    }
+
+    /**
+     * 从from开始查找下一个匹配的起始位置，只用于字面文本和简单字符类
+     * @return 起始位置，没有更多匹配时返回-1
+     */
+    private int find(CharSequence text, int from) {
+        if (literal != null) {
+            if (text instanceof String) {
+                return ((String) text).indexOf(literal, from);
+            }
+            return text.toString().indexOf(literal, from);
+        }
+        for (int i = from, n = text.length(); i < n; i++) {
+            if (inClass(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int matchEnd(CharSequence text, int start) {
+        if (literal != null) {
+            return start + literal.length();
+        }
+        int end = start + 1;
+        if (classRepeats) {
+            while (end < text.length() && inClass(text.charAt(end))) {
+                end++;
+            }
+        }
+        return end;
+    }
+
+    private boolean inClass(char c) {
+        switch (charClass) {
+            case CLASS_SPACE:
+                return WordCounter.isSpace(c);
+            case CLASS_DIGIT:
+                return c >= '0' && c <= '9';
+            default:
+                return c == classChar;
+        }
+    }
+
+    @Override
+    public void execute(Reader in, Writer out) throws IOException {
+        if (mode == Mode.FILTER) {
+            try {
+                filter(in, out);
+            } finally {
+                releaseMatcher();
+            }
+        } else if (mode == Mode.REPLACE && charClass != CLASS_NONE && isScanned()) {
+            replaceClass(in, out);
+        } else {
+            StreamingService.super.execute(in, out);
+            return;
+        }
+        out.flush();
+    }
+
+    /**
+     * 逐行过滤，只在内存中保留当前行
+     */
+    private void filter(Reader in, Writer out) throws IOException {
+        ChunkReader chunks = new ChunkReader(in);
+        char[] buffer = chunks.buffer();
+        StringBuilder line = new StringBuilder();
+        StringBuilder kept = new StringBuilder();
+        int n;
+        while ((n = chunks.next()) != -1) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    line.append(buffer, start, i - start);
+                    appendIfMatches(kept, line, 0, line.length());
+                    line.setLength(0);
+                    start = i + 1;
+                }
+            }
+            line.append(buffer, start, n - start);
+            out.append(kept);
+            kept.setLength(0);
+        }
+        if (line.length() > 0) {
+            appendIfMatches(kept, line, 0, line.length());
+            out.append(kept);
+        }
+    }
+
+    /**
+     * 字符类替换：一串连续的匹配字符可能跨越两块，用inRun记住上一块是否以匹配字符结尾
+     */
+    private void replaceClass(Reader in, Writer out) throws IOException {
+        ChunkReader chunks = new ChunkReader(in);
+        char[] buffer = chunks.buffer();
+        boolean inRun = false;
+        int n;
+        while ((n = chunks.next()) != -1) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (!inClass(buffer[i])) {
+                    inRun = false;
+                    continue;
+                }
+                out.write(buffer, start, i - start);
+                start = i + 1;
+                if (!inRun || !classRepeats) {
+                    out.write(literalReplacement);
+                }
+                inRun = true;
+            }
+            out.write(buffer, start, n - start);
+        }
+    }
+
+    @Override
+    public boolean requiresFullInput() {
+        return mode != Mode.FILTER && !(mode == Mode.REPLACE && charClass != CLASS_NONE && isScanned());
+    }
+
+    /**
+     * 替换为空文本的字符类（例如把\s+替换为空）逐字符删除，可以在空白处切分并行处理
+     */
+    @Override
+    public boolean isSplittable() {
+        return mode == Mode.REPLACE && charClass != CLASS_NONE && isScanned() && literalReplacement.isEmpty();
+    }
+
+    @Override
+    public String getName() {
+        switch (mode) {
+            case REPLACE:
+                return "Replace Service (" + regex + " → " + replacement + ")";
+            case FILTER:
+                return "Filter Service (" + regex + ")";
+            default:
+                return "Extract Service (" + regex + ")";
+        }
+    }
+
+    /**
+     * 把不含元字符的正则表达式还原为字面文本
+     * <p>
+     * 支持\Q...\E引用以及反斜杠转义的非字母数字字符；
+     * 出现其他元字符或\d、\w等预定义字符类时返回null。
+     * </p>
+     */
+    static String unescapeLiteral(String regex) {
+        if (regex.startsWith("\\Q") && regex.endsWith("\\E") && regex.length() >= 4
+                && regex.indexOf("\\E") == regex.length() - 2) {
+            return regex.substring(2, regex.length() - 2);
+        }
+        StringBuilder text = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == regex.length()) {
+                    return null;
+                }
+                char next = regex.charAt(++i);
+                if (Character.isLetterOrDigit(next)) {
+                    return null;
+                }
+                text.append(next);
+            } else if ("^$.|?*+()[]{}".indexOf(c) >= 0) {
+                return null;
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * 把替换文本还原为字面内容：\x表示字符x，含有$分组引用时返回null
+     */
+    private static String unescapeReplacement(String replacement) {
+        StringBuilder text = new StringBuilder(replacement.length());
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == '$') {
+                return null;
+            }
+            if (c == '\\') {
+                if (i + 1 == replacement.length()) {
+                    return null;
+                }
+                c = replacement.charAt(++i);
+            }
+            text.append(c);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,325 @@
+package m10d20.project2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 结果缓冲区 - 只追加的大文本存储，带稀疏的显示行索引
+ * <p>
+ * 服务的输出可能有几十上百MB，如果整体放进JTextArea的Document，界面会因为重新排版而卡死。
+ * 结果缓冲区把输出按UTF-16存放：不超过1M字符时保存在内存中，超过后溢出到临时文件，
+ * 内存占用与输出大小无关。
+ * </p>
+ * <p>
+ * 追加时把文本切分为显示行：遇到换行符或一行满{@link #ROW_CHARS}个字符就开始新的一行
+ * （代理对不会被拆开）。每隔若干显示行记录一次起始位置，读取任意一页时从最近的记录点向后扫描。
+ * 记录点的数量有上限，达到上限时丢弃一半记录点、把间隔加倍，因此索引本身的大小也是有界的。
+ * </p>
+ * <p>
+ * 所有方法都是同步的：服务可以在工作线程中通过{@link #writer()}持续写入，
+ * 界面同时在事件调度线程中读取已经写入的部分。
+ * </p>
+ */
+final class ResultBuffer implements Closeable {
+
+    /** 每个显示行的最大字符数 */
+    static final int ROW_CHARS = 100;
+    /** 保存在内存中的最大字符数，超过后溢出到临时文件 */
+    private static final int MEMORY_CHARS = 1 << 20;
+    /** 行索引记录点的最大数量 */
+    private static final int MAX_MARKS = 1 << 14;
+    /** 读写临时文件的缓冲区字符数 */
+    private static final int IO_CHARS = 8192;
+
+    private char[] memory = new char[1024];
+    private FileChannel file;
+    private final char[] pending = new char[IO_CHARS];
+    private int pendingLength;
+    /** 已经写入临时文件的字符数 */
+    private long filedChars;
+    private ByteBuffer io;
+
+    private long length;
+    private long newlines;
+    private boolean closed;
+
+    /** 已经结束的显示行数，当前行的编号 */
+    private long rows;
+    private int rowLength;
+    private char lastChar;
+    /** marks[k]是第k * rowsPerMark个显示行的起始位置 */
+    private long[] marks = new long[64];
+    private int markCount = 1;
+    private int rowsPerMark = 64;
+
+    /**
+     * 追加一段文本
+     * @param text 文本
+     * @throws IOException 缓冲区已关闭或写临时文件失败时抛出
+     */
+    synchronized void append(CharSequence text) throws IOException {
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    /**
+     * 追加字符数组的一部分
+     * @param buffer 字符数组
+     * @param offset 起始位置
+     * @param count 字符数
+     * @throws IOException 缓冲区已关闭或写临时文件失败时抛出
+     */
+    synchronized void append(char[] buffer, int offset, int count) throws IOException {
+        for (int i = offset; i < offset + count; i++) {
+            append(buffer[i]);
+        }
+    }
+
+    private void append(char c) throws IOException {
+        if (closed) {
+            throw new IOException("结果缓冲区已关闭");
+        }
+        if (breaksBefore(rowLength, lastChar, c)) {
+            startRow(length);
+        }
+        store(c);
+        length++;
+        rowLength++;
+        lastChar = c;
+        if (c == '\n') {
+            newlines++;
+            startRow(length);
+        }
+    }
+
+    /**
+     * 一行已满时，下一个字符是否要换到新的一行：换行符留在本行末尾，低代理项不与高代理项分开
+     */
+    private static boolean breaksBefore(int rowLength, char previous, char c) {
+        return rowLength >= ROW_CHARS && c != '\n'
+                && !(Character.isLowSurrogate(c) && Character.isHighSurrogate(previous));
+    }
+
+    private void startRow(long offset) {
+        rows++;
+        rowLength = 0;
+        if (rows % rowsPerMark != 0) {
+            return;
+        }
+        if (markCount == MAX_MARKS) {
+            // 记录点已满：只保留偶数位置的记录点，间隔加倍
+            for (int i = 0; i < markCount / 2; i++) {
+                marks[i] = marks[i * 2];
+            }
+            markCount /= 2;
+            rowsPerMark *= 2;
+            if (rows % rowsPerMark != 0) {
+                return;
+            }
+        }
+        if (markCount == marks.length) {
+            long[] grown = new long[Math.min(MAX_MARKS, marks.length * 2)];
+            System.arraycopy(marks, 0, grown, 0, markCount);
+            marks = grown;
+        }
+        marks[markCount++] = offset;
+    }
+
+    private void store(char c) throws IOException {
+        if (file == null) {
+            if (length < MEMORY_CHARS) {
+                if (length == memory.length) {
+                    char[] grown = new char[(int) Math.min(MEMORY_CHARS, length * 2)];
+                    System.arraycopy(memory, 0, grown, 0, (int) length);
+                    memory = grown;
+                }
+                memory[(int) length] = c;
+                return;
+            }
+            spill();
+        }
+        pending[pendingLength++] = c;
+        if (pendingLength == pending.length) {
+            flushPending();
+        }
+    }
+
+    /**
+     * 内存中的内容超过上限：创建临时文件（关闭时自动删除），写入已有内容，此后全部写入文件
+     */
+    private void spill() throws IOException {
+        Path path = Files.createTempFile("service-result", ".utf16");
+        file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        io = ByteBuffer.allocate(IO_CHARS * 2);
+        for (int offset = 0; offset < length; offset += IO_CHARS) {
+            int count = (int) Math.min(IO_CHARS, length - offset);
+            writeChars(offset, memory, offset, count);
+        }
+        filedChars = length;
+        memory = null;
+    }
+
+    private void flushPending() throws IOException {
+        if (pendingLength > 0) {
+            writeChars(filedChars, pending, 0, pendingLength);
+            filedChars += pendingLength;
+            pendingLength = 0;
+        }
+    }
+
+    private void writeChars(long offset, char[] source, int start, int count) throws IOException {
+        io.clear();
+        io.asCharBuffer().put(source, start, count);
+        io.limit(count * 2);
+        long position = offset * 2;
+        while (io.hasRemaining()) {
+            position += file.write(io, position);
+        }
+    }
+
+    private int readChars(long offset, char[] target, int count) throws IOException {
+        int n = (int) Math.min(count, length - offset);
+        if (n <= 0) {
+            return 0;
+        }
+        if (file == null) {
+            System.arraycopy(memory, (int) offset, target, 0, n);
+            return n;
+        }
+        flushPending();
+        io.clear();
+        io.limit(n * 2);
+        long position = offset * 2;
+        while (io.hasRemaining()) {
+            int read = file.read(io, position);
+            if (read < 0) {
+                throw new IOException("临时文件意外结束");
+            }
+            position += read;
+        }
+        io.flip();
+        CharBuffer chars = io.asCharBuffer();
+        chars.get(target, 0, n);
+        return n;
+    }
+
+    /**
+     * @return 已写入的字符数
+     */
+    synchronized long length() {
+        return length;
+    }
+
+    /**
+     * @return 文本的行数（按换行符计，末尾的换行符不产生新行，空文本为0行）
+     */
+    synchronized long lineCount() {
+        if (length == 0) {
+            return 0;
+        }
+        return lastChar == '\n' ? newlines : newlines + 1;
+    }
+
+    /**
+     * @return 显示行数（长行按{@link #ROW_CHARS}折行后的行数）
+     */
+    synchronized long rowCount() {
+        return rows + 1;
+    }
+
+    /**
+     * 读取若干显示行，每行之间用换行符分隔（不含原文中的\r和\n）
+     * @param firstRow 起始显示行
+     * @param count 最多读取的行数
+     * @return 文本，超出末尾的部分被忽略
+     * @throws IOException 读临时文件失败时抛出
+     */
+    synchronized String readRows(long firstRow, int count) throws IOException {
+        if (closed || firstRow > rows || count <= 0) {
+            return "";
+        }
+        int mark = (int) Math.min(firstRow / rowsPerMark, markCount - 1);
+        long row = (long) mark * rowsPerMark;
+        long offset = marks[mark];
+        StringBuilder text = new StringBuilder(Math.min(count * (ROW_CHARS + 1), 1 << 16));
+        char[] chunk = new char[IO_CHARS];
+        int currentLength = 0;
+        char previous = 0;
+        long lastRow = firstRow + count;
+        while (offset < length && row < lastRow) {
+            int n = readChars(offset, chunk, chunk.length);
+            for (int i = 0; i < n && row < lastRow; i++) {
+                char c = chunk[i];
+                if (breaksBefore(currentLength, previous, c)) {
+                    row++;
+                    currentLength = 0;
+                    if (row > firstRow && row < lastRow) {
+                        text.append('\n');
+                    }
+                }
+                if (row >= firstRow && row < lastRow && c != '\n' && c != '\r') {
+                    text.append(c);
+                }
+                currentLength++;
+                previous = c;
+                if (c == '\n') {
+                    row++;
+                    currentLength = 0;
+                    if (row > firstRow && row < lastRow) {
+                        text.append('\n');
+                    }
+                }
+            }
+            offset += n;
+        }
+        return text.toString();
+    }
+
+    /**
+     * 获取写入本缓冲区的Writer，流式服务可以直接把结果写进来
+     * @return Writer，关闭它不会关闭缓冲区
+     */
+    Writer writer() {
+        return new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int count) throws IOException {
+                ResultBuffer.this.append(buffer, offset, count);
+            }
+
+            @Override
+            public void write(String s, int offset, int count) throws IOException {
+                ResultBuffer.this.append(s.subSequence(offset, offset + count));
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * 释放内存并删除临时文件，之后的写入会抛出IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        memory = null;
+        if (file != null) {
+            file.close();
+        }
+    }
+}
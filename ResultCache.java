@@ -0,0 +1,297 @@
+package m10d20.project2;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 服务结果缓存 - 以(服务编号, 输入)为键的有界LRU缓存
+ * <p>
+ * 用户经常把相同的输入反复提交给相同的服务，缓存可以直接返回上次的结果。
+ * 缓存按键的哈希值分成16个段，每段是一个按访问顺序排列的LinkedHashMap，
+ * 由各自的锁保护，不同段上的并发访问互不阻塞。每段同时限制条目数和总权重，
+ * 权重按输入与输出字符串占用的字节数估算，超出任一上限时淘汰最久未使用的条目。
+ * </p>
+ * <p>
+ * 只有{@link Service#isDeterministic()}为true的服务会被缓存，随机打乱服务永远不会命中缓存。
+ * 缓存可以随时关闭，以便对比开启前后的性能；命中、未命中和淘汰次数通过计数器公开。
+ * </p>
+ */
+public final class ResultCache {
+
+    private static final int SEGMENT_COUNT = 16;
+    /** 每个条目除字符串内容外的固定开销估算（字节） */
+    private static final long ENTRY_OVERHEAD = 64;
+
+    private static final ResultCache SHARED = new ResultCache(4096, 64L << 20);
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile boolean enabled = true;
+
+    /**
+     * @param maxEntries 最多缓存的条目数
+     * @param maxWeightBytes 缓存内容的最大估算字节数
+     */
+    public ResultCache(int maxEntries, long maxWeightBytes) {
+        int entriesPerSegment = Math.max(1, maxEntries / SEGMENT_COUNT);
+        long weightPerSegment = Math.max(1, maxWeightBytes / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(entriesPerSegment, weightPerSegment);
+        }
+    }
+
+    /**
+     * 获取所有前端共享的缓存实例（4096个条目，64MB）
+     * @return 共享缓存
+     */
+    public static ResultCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * 通过缓存执行服务
+     * <p>
+     * 缓存关闭或服务不确定时直接执行服务。计算结果时不持有任何锁，
+     * 两个线程同时未命中同一个键时会各自计算一次，结果相同，后写入的覆盖先写入的。
+     * </p>
+     * @param serviceId 服务编号，作为键的一部分区分不同服务
+     * @param service 服务
+     * @param input 输入文本
+     * @return 处理结果
+     */
+    public String execute(int serviceId, Service service, String input) {
+        if (!enabled || !service.isDeterministic()) {
+            return service.execute(input);
+        }
+        Key key = new Key(serviceId, input);
+        Segment segment = segmentFor(key);
+        String cached = segment.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        String result = service.execute(input);
+        segment.put(key, result, weightOf(input, result));
+        return result;
+    }
+
+    /**
+     * 返回一个先查缓存再执行的服务包装
+     * @param serviceId 服务编号
+     * @param service 被包装的服务
+     * @return 带缓存的服务
+     */
+    public Service cached(final int serviceId, final Service service) {
+        return new Service() {
+            @Override
+            public String execute(String input) {
+                return ResultCache.this.execute(serviceId, service, input);
+            }
+
+            @Override
+            public String getName() {
+                return service.getName();
+            }
+
+            @Override
+            public boolean isDeterministic() {
+                return service.isDeterministic();
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 开启或关闭缓存，关闭时会清空已缓存的内容
+     * @param enabled 是否开启
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * 清空缓存内容（不重置计数器）
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * 命中率
+     * @return [0, 1]之间的命中率，还没有任何请求时返回0
+     */
+    public double hitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * 当前缓存的条目数
+     * @return 条目数
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 重置命中、未命中和淘汰计数器
+     */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * 生成便于显示的统计摘要
+     * @return 统计摘要
+     */
+    public String stats() {
+        return String.format("缓存%s: 条目 %d，命中 %d，未命中 %d，淘汰 %d，命中率 %.1f%%",
+                enabled ? "已开启" : "已关闭", size(), hitCount(), missCount(), evictionCount(), hitRate() * 100);
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hash;
+        h ^= h >>> 16;
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    private static long weightOf(String input, String result) {
+        return ENTRY_OVERHEAD + 2L * (input.length() + result.length());
+    }
+
+    /**
+     * 缓存键：服务编号+输入文本
+     */
+    private static final class Key {
+        final int serviceId;
+        final String input;
+        final int hash;
+
+        Key(int serviceId, String input) {
+            this.serviceId = serviceId;
+            this.input = input;
+            this.hash = 31 * serviceId + input.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return serviceId == other.serviceId && hash == other.hash && input.equals(other.input);
+        }
+    }
+
+    /**
+     * 缓存段：带锁的访问顺序LinkedHashMap
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Key, String> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long maxWeight;
+        private long weight;
+
+        Segment(int maxEntries, long maxWeight) {
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+        }
+
+        String get(Key key) {
+            lock.lock();
+            try {
+                return map.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(Key key, String value, long entryWeight) {
+            if (entryWeight > maxWeight) {
+                // 单个结果就超过整段的容量，缓存它只会把其他条目全部挤出去
+                return;
+            }
+            lock.lock();
+            try {
+                String previous = map.put(key, value);
+                if (previous != null) {
+                    weight -= weightOf(key.input, previous);
+                }
+                weight += entryWeight;
+                Iterator<Map.Entry<Key, String>> eldest = map.entrySet().iterator();
+                while ((map.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+                    Map.Entry<Key, String> entry = eldest.next();
+                    if (entry.getKey() == key) {
+                        continue;
+                    }
+                    weight -= weightOf(entry.getKey().input, entry.getValue());
+                    eldest.remove();
+                    evictions.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                weight = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return map.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
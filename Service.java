@@ -28,4 +28,49 @@ public interface Service {
      * @return 服务的名称
      */
     String getName();
+    
+    /**
+     * 服务是否是确定性的
+     * <p>
+     * 确定性服务对相同的输入总是返回相同的结果，其结果可以被缓存复用。
+     * 随机打乱这类每次结果都不同的服务必须覆盖此方法并返回false。
+     * </p>
+     * @return 相同输入总是得到相同结果时返回true
+     */
+    default boolean isDeterministic() {
+        return true;
+    }
+    
+    /**
+     * 执行服务，结果可以是惰性计算的文本视图
+     * <p>
+     * 重复、反转这类结果完全由输入决定的服务可以覆盖此方法，返回不生成完整字符串的视图，
+     * 调用方通过charAt按需读取，或者逐段写入输出，从而支持远大于内存的结果。
+     * 返回值的内容必须与{@link #execute(String)}相同；默认实现直接调用execute。
+     * </p>
+     * @param input 用户输入的文本数据
+     * @return 服务处理后的文本结果，可能是String，也可能是只读视图
+     */
+    default CharSequence executeLazy(String input) {
+        return execute(input);
+    }
+    
+    /**
+     * 批量执行服务
+     * <p>
+     * 一次调用处理一组输入，结果与逐个调用{@link #execute(String)}完全一致。
+     * 默认实现就是逐个调用；实现类可以覆盖此方法，在整批输入之间分摊初始化开销、
+     * 复用缓冲区。输入数组不会被修改。
+     * </p>
+     * @param inputs 一组输入文本
+     * @return 与inputs一一对应的处理结果
+     */
+    default String[] executeBatch(String[] inputs) {
+        String[] outputs = new String[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            Cancellation.checkpoint();
+            outputs[i] = execute(inputs[i]);
+        }
+        return outputs;
+    }
 }
\ No newline at end of file
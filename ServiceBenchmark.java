@@ -0,0 +1,456 @@
+package m10d20.project2;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 服务性能基准测试程序
+ * <p>
+ * 对注册表中每个服务的execute方法，在ASCII、中文(CJK)和中英混合三类输入、
+ * 从16字节到64MB的不同输入规模上测量吞吐量和内存分配量。
+ * 测量方式参照JMH：先预热让JIT完成编译，再分多轮定时测量，
+ * 报告每秒操作数及其误差、每次操作耗时，以及相当于GC profiler的
+ * 分配速率(MB/s)、每次操作分配字节数和期间发生的GC次数。
+ * 字数统计、凯撒加密、打乱等服务处理大输入时在fork-join线程池中并行执行，
+ * 分配量因此按JVM中所有线程统计，而不只是调用线程。
+ * </p>
+ * <p>
+ * 测量结果可以用--save保存为基线文件，之后用--baseline与基线对比，
+ * 用于判断某项优化是否真正带来了提升。
+ * </p>
+ * <pre>
+ * java -Xmx4g m10d20.project2.ServiceBenchmark [选项]
+ *   --services upper,lower   只测试指定服务（英文标识，默认全部）
+ *   --inputs ascii,cjk       只使用指定类型的输入（默认ascii,cjk,mixed）
+ *   --sizes 16,1K,64K        输入的UTF-8字节数（默认16,1K,64K,1M,16M,64M）
+ *   --warmup 1000            预热时长（毫秒）
+ *   --measure 2000           测量总时长（毫秒），平均分配到各轮
+ *   --iterations 5           测量轮数
+ *   --cache on               经由共享结果缓存调用服务（默认off，直接调用）
+ *   --case-fast-path off     关闭大小写转换的Latin-1快速路径（默认on），用于对比
+ *   --shuffle-threads 1,2,4  改为测量并行打乱在不同线程数下的扩展性（不再测试各服务）
+ *   --save base.tsv          保存本次结果作为基线
+ *   --baseline base.tsv      与已保存的基线对比
+ * </pre>
+ */
+public class ServiceBenchmark {
+
+    /** 支持的输入类型 */
+    static final String[] INPUT_KINDS = {"ascii", "cjk", "mixed"};
+
+    private static final int[] DEFAULT_SIZES = {
+        16, 1 << 10, 64 << 10, 1 << 20, 16 << 20, 64 << 20
+    };
+
+    /** 防止JIT把服务调用当作无用代码消除 */
+    private static volatile int sink;
+
+    /**
+     * 一组(服务, 输入类型, 输入规模)的测量结果
+     */
+    static final class Result {
+        final String service;
+        final String kind;
+        final int bytes;
+        final double opsPerSecond;
+        final double error;
+        final double nanosPerOp;
+        final double allocMbPerSecond;
+        final double allocBytesPerOp;
+        final long gcCount;
+
+        Result(String service, String kind, int bytes, double opsPerSecond, double error,
+               double nanosPerOp, double allocMbPerSecond, double allocBytesPerOp, long gcCount) {
+            this.service = service;
+            this.kind = kind;
+            this.bytes = bytes;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.nanosPerOp = nanosPerOp;
+            this.allocMbPerSecond = allocMbPerSecond;
+            this.allocBytesPerOp = allocBytesPerOp;
+            this.gcCount = gcCount;
+        }
+
+        String key() {
+            return service + "\t" + kind + "\t" + bytes;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Integer> serviceIds = new ArrayList<>();
+        String[] kinds = INPUT_KINDS;
+        int[] sizes = DEFAULT_SIZES;
+        long warmupMillis = 1000;
+        long measureMillis = 2000;
+        int iterations = 5;
+        Path savePath = null;
+        Path baselinePath = null;
+        boolean cached = false;
+        int[] shuffleThreads = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                usage("缺少参数值: " + option);
+                return;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--services":
+                    for (String name : value.split(",")) {
+                        int id = ServiceRegistry.indexOf(name.trim());
+                        if (id < 0) {
+                            usage("未知服务: " + name);
+                            return;
+                        }
+                        serviceIds.add(id);
+                    }
+                    break;
+                case "--inputs":
+                    kinds = value.split(",");
+                    break;
+                case "--sizes":
+                    String[] parts = value.split(",");
+                    sizes = new int[parts.length];
+                    for (int j = 0; j < parts.length; j++) {
+                        sizes[j] = parseSize(parts[j].trim());
+                    }
+                    break;
+                case "--warmup":
+                    warmupMillis = Long.parseLong(value);
+                    break;
+                case "--measure":
+                    measureMillis = Long.parseLong(value);
+                    break;
+                case "--iterations":
+                    iterations = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--save":
+                    savePath = Paths.get(value);
+                    break;
+                case "--baseline":
+                    baselinePath = Paths.get(value);
+                    break;
+                case "--cache":
+                    cached = "on".equalsIgnoreCase(value);
+                    break;
+                case "--shuffle-threads":
+                    String[] counts = value.split(",");
+                    shuffleThreads = new int[counts.length];
+                    for (int j = 0; j < counts.length; j++) {
+                        shuffleThreads[j] = Integer.parseInt(counts[j].trim());
+                    }
+                    break;
+                case "--case-fast-path":
+                    CaseConverter.setFastPathEnabled(!"off".equalsIgnoreCase(value));
+                    break;
+                default:
+                    usage("未知选项: " + option);
+                    return;
+            }
+        }
+        if (serviceIds.isEmpty()) {
+            for (int id = 0; id < ServiceRegistry.size(); id++) {
+                serviceIds.add(id);
+            }
+        }
+
+        PrintStream out = new PrintStream(System.out, true, "UTF-8");
+        if (!AllocationMeter.isSupported()) {
+            out.println("注意: 当前JVM不支持线程内存分配统计，分配相关指标显示为-1");
+        }
+        out.printf("%-11s %-6s %6s %16s %12s %14s %12s %12s %6s%n",
+                "Service", "Input", "Size", "ops/s", "± error", "ns/op",
+                "alloc MB/s", "B/op", "gc");
+
+        List<Result> results = new ArrayList<>();
+        for (String kind : kinds) {
+            for (int size : sizes) {
+                String input = generateInput(kind, size, 42L);
+                if (shuffleThreads != null) {
+                    for (int threads : shuffleThreads) {
+                        Result result = measureShuffle(threads, kind, size, input,
+                                warmupMillis, measureMillis, iterations);
+                        results.add(result);
+                        print(out, result);
+                    }
+                    continue;
+                }
+                for (int id : serviceIds) {
+                    Service service = ServiceRegistry.get(id);
+                    if (cached) {
+                        service = ResultCache.shared().cached(id, service);
+                    }
+                    Result result = measure(ServiceRegistry.getKey(id), service, kind, size,
+                            input, warmupMillis, measureMillis, iterations);
+                    results.add(result);
+                    print(out, result);
+                }
+            }
+        }
+
+        if (baselinePath != null) {
+            compare(out, results, loadBaseline(baselinePath));
+        }
+        if (savePath != null) {
+            saveBaseline(savePath, results);
+            out.println("\n基线已保存到: " + savePath);
+        }
+    }
+
+    private static void print(PrintStream out, Result result) {
+        out.printf(Locale.ROOT, "%-11s %-6s %6s %16.3f %12.3f %14.1f %12.1f %12.1f %6d%n",
+                result.service, result.kind, formatSize(result.bytes), result.opsPerSecond,
+                result.error, result.nanosPerOp, result.allocMbPerSecond,
+                result.allocBytesPerOp, result.gcCount);
+    }
+
+    /**
+     * 测量按码点并行打乱在指定线程数的fork-join线程池中的性能，线程数为1时即顺序打乱
+     * <p>
+     * 并行任务在池中的线程上分配内存，分配指标包含调用线程和池中所有工作线程的分配。
+     * </p>
+     */
+    static Result measureShuffle(int threads, String kind, int bytes, String input,
+                                 long warmupMillis, long measureMillis, int iterations) {
+        final ShuffleEngine engine = new ShuffleEngine(true);
+        final ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            Service service = new Service() {
+                @Override
+                public String execute(String in) {
+                    return pool != null ? engine.shuffleParallel(in, pool) : engine.shuffle(in);
+                }
+
+                @Override
+                public String getName() {
+                    return "Shuffle Service";
+                }
+            };
+            return measure("shuffle/" + threads + "t", service, kind, bytes, input,
+                    warmupMillis, measureMillis, iterations);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * 测量单个服务在指定输入上的性能
+     */
+    static Result measure(String name, Service service, String kind, int bytes, String input,
+                          long warmupMillis, long measureMillis, int iterations) {
+        // 预热：让JIT充分编译服务的热点代码
+        long warmupEnd = System.nanoTime() + warmupMillis * 1_000_000L;
+        do {
+            consume(service.execute(input));
+        } while (System.nanoTime() < warmupEnd);
+
+        long iterationNanos = Math.max(1, measureMillis * 1_000_000L / iterations);
+        double[] opsPerSecond = new double[iterations];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long gcBefore = AllocationMeter.gcCount();
+        Map<Long, Long> allocBefore = AllocationMeter.allThreadsAllocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            long ops = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            // 每轮至少执行一次，超大输入时单次调用就可能超过一轮的时长
+            do {
+                consume(service.execute(input));
+                ops++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+            opsPerSecond[i] = ops * 1e9 / elapsed;
+            totalOps += ops;
+            totalNanos += elapsed;
+        }
+        long allocated = AllocationMeter.allocatedSince(allocBefore);
+        long gcCount = AllocationMeter.gcCount() - gcBefore;
+
+        double mean = 0;
+        for (double value : opsPerSecond) {
+            mean += value;
+        }
+        mean /= iterations;
+        double variance = 0;
+        for (double value : opsPerSecond) {
+            variance += (value - mean) * (value - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+        double allocBytesPerOp = -1;
+        double allocMbPerSecond = -1;
+        if (allocated >= 0) {
+            allocBytesPerOp = (double) allocated / totalOps;
+            allocMbPerSecond = allocated / (1024.0 * 1024.0) / (totalNanos / 1e9);
+        }
+        return new Result(name, kind, bytes, mean, error, (double) totalNanos / totalOps,
+                allocMbPerSecond, allocBytesPerOp, gcCount);
+    }
+
+    private static void consume(String result) {
+        int length = result.length();
+        sink += length == 0 ? 0 : length + result.charAt(length >> 1);
+    }
+
+    /**
+     * 生成指定类型、UTF-8编码后约为指定字节数的测试文本
+     * <p>
+     * 文本由随机长度的"单词"组成，单词之间以空格分隔，并夹杂少量换行，
+     * 以便字数统计、首字母大写等按单词处理的服务也有实际工作量。
+     * 相同的参数总是生成相同的文本，保证不同次运行之间结果可比。
+     * </p>
+     * @param kind 输入类型：ascii、cjk或mixed
+     * @param utf8Bytes 目标UTF-8字节数
+     * @param seed 随机种子
+     * @return 测试文本
+     */
+    static String generateInput(String kind, int utf8Bytes, long seed) {
+        boolean ascii = "ascii".equals(kind);
+        boolean cjk = "cjk".equals(kind);
+        if (!ascii && !cjk && !"mixed".equals(kind)) {
+            throw new IllegalArgumentException("未知输入类型: " + kind);
+        }
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(ascii ? utf8Bytes : utf8Bytes / 2 + 16);
+        int bytes = 0;
+        while (bytes < utf8Bytes) {
+            if (bytes > 0) {
+                // 单词分隔符：大多是空格，偶尔换行
+                char separator = random.nextInt(12) == 0 ? '\n' : ' ';
+                text.append(separator);
+                bytes++;
+                if (bytes >= utf8Bytes) {
+                    break;
+                }
+            }
+            boolean cjkWord = cjk || (!ascii && random.nextBoolean());
+            int wordLength = 1 + random.nextInt(cjkWord ? 4 : 9);
+            for (int i = 0; i < wordLength && bytes < utf8Bytes; i++) {
+                if (cjkWord) {
+                    if (utf8Bytes - bytes < 3) {
+                        text.append('.');
+                        bytes++;
+                    } else if (!ascii && !cjk && random.nextInt(64) == 0 && utf8Bytes - bytes >= 4) {
+                        // 混合文本中偶尔出现补充平面字符（表情符号），覆盖代理对处理
+                        text.appendCodePoint(0x1F600 + random.nextInt(64));
+                        bytes += 4;
+                    } else {
+                        text.append((char) (0x4E00 + random.nextInt(0x51A5)));
+                        bytes += 3;
+                    }
+                } else {
+                    int letter = random.nextInt(52);
+                    text.append((char) (letter < 26 ? 'a' + letter : 'A' + letter - 26));
+                    bytes++;
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * 解析带K/M后缀的字节数
+     */
+    static int parseSize(String text) {
+        String upper = text.toUpperCase(Locale.ROOT);
+        int multiplier = 1;
+        if (upper.endsWith("K")) {
+            multiplier = 1 << 10;
+            upper = upper.substring(0, upper.length() - 1);
+        } else if (upper.endsWith("M")) {
+            multiplier = 1 << 20;
+            upper = upper.substring(0, upper.length() - 1);
+        }
+        return Integer.parseInt(upper) * multiplier;
+    }
+
+    /**
+     * 把字节数格式化为16、1K、64M这样的简短形式
+     */
+    static String formatSize(int bytes) {
+        if (bytes >= 1 << 20 && bytes % (1 << 20) == 0) {
+            return (bytes >> 20) + "M";
+        }
+        if (bytes >= 1 << 10 && bytes % (1 << 10) == 0) {
+            return (bytes >> 10) + "K";
+        }
+        return String.valueOf(bytes);
+    }
+
+    private static void saveBaseline(Path path, List<Result> results) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(path), StandardCharsets.UTF_8))) {
+            writer.write("# service\tinput\tbytes\tops/s\tB/op\n");
+            for (Result result : results) {
+                writer.write(result.key() + "\t" + result.opsPerSecond + "\t" + result.allocBytesPerOp + "\n");
+            }
+        }
+    }
+
+    private static Map<String, double[]> loadBaseline(Path path) throws IOException {
+        Map<String, double[]> baseline = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    continue;
+                }
+                String key = fields[0] + "\t" + fields[1] + "\t" + fields[2];
+                baseline.put(key, new double[] {
+                    Double.parseDouble(fields[3]), Double.parseDouble(fields[4])
+                });
+            }
+        }
+        return baseline;
+    }
+
+    private static void compare(PrintStream out, List<Result> results, Map<String, double[]> baseline) {
+        out.println("\n===== 与基线对比 =====");
+        out.printf("%-11s %-6s %6s %16s %16s %9s %12s %12s%n",
+                "Service", "Input", "Size", "基线 ops/s", "当前 ops/s", "吞吐变化", "基线 B/op", "当前 B/op");
+        for (Result result : results) {
+            double[] base = baseline.get(result.key());
+            if (base == null) {
+                continue;
+            }
+            double change = (result.opsPerSecond - base[0]) / base[0] * 100.0;
+            out.printf(Locale.ROOT, "%-11s %-6s %6s %16.3f %16.3f %+8.1f%% %12.1f %12.1f%n",
+                    result.service, result.kind, formatSize(result.bytes), base[0], result.opsPerSecond,
+                    change, base[1], result.allocBytesPerOp);
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("用法: java m10d20.project2.ServiceBenchmark [--services a,b] [--inputs ascii,cjk,mixed]"
+                + " [--sizes 16,1K,64M] [--warmup ms] [--measure ms] [--iterations n]"
+                + " [--cache on|off] [--case-fast-path on|off] [--shuffle-threads 1,2,4]"
+                + " [--save file] [--baseline file]");
+    }
+}
@@ -0,0 +1,97 @@
+package m10d20.project2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 回归检查 - 比较流式、分块执行与整体执行的结果，覆盖曾经出错的边界情况
+ * <p>
+ * 项目没有引入测试框架，每个检查是一个返回是否通过的静态方法，
+ * main依次运行全部检查，有检查失败时以状态码1退出。修复这类边界问题时在这里补上对应的检查。
+ * </p>
+ * <pre>
+ * java m10d20.project2.ServiceChecks
+ * </pre>
+ */
+public final class ServiceChecks {
+
+    private ServiceChecks() {
+    }
+
+    /**
+     * 服务链流式执行时分块边界落在单词中间：词尾Σ的小写形式取决于它后面是否还有字母，
+     * 逐块处理时必须把单词留到与下一块一起处理
+     */
+    static boolean pipelineChunkBoundaryInsideWord() throws IOException {
+        ServicePipeline chain = ServicePipeline.builder()
+                .then(ServiceRegistry.UPPERCASE)
+                .then(ServiceRegistry.LOWERCASE)
+                .build();
+        String input = repeat('a', StreamingService.BUFFER_SIZE - 1) + "Σb ΟΔΟΣ";
+        StringWriter streamed = new StringWriter();
+        chain.execute(new StringReader(input), streamed);
+        return streamed.toString().equals(chain.execute(input));
+    }
+
+    /**
+     * 字节流式处理超过1MB都没有空白的输入：首字母大写依赖上下文，不能在单词中间切开，
+     * 否则后一段的开头又被大写
+     */
+    static boolean byteStreamLongWordCapitalize() throws IOException {
+        String input = "x " + repeat('a', (1 << 20) + (1 << 19)) + " end";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ServiceRegistry.getBytes(ServiceRegistry.CAPITALIZE).execute(
+                Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(output));
+        String expected = ServiceRegistry.get(ServiceRegistry.CAPITALIZE).execute(input);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8).equals(expected);
+    }
+
+    /**
+     * 逐字符映射服务的字节实现不经过服务的统计包装器，字节服务本身要计入运行统计：
+     * 整个流记录一次调用，输入输出按UTF-16字符数计算
+     */
+    static boolean byteStreamRecordsMetrics() throws IOException {
+        ServiceMetrics metrics = ServiceRegistry.getMetrics(ServiceRegistry.UPPERCASE);
+        long calls = metrics.getCalls();
+        long inputChars = metrics.getInputChars();
+        long outputChars = metrics.getOutputChars();
+        String input = "héllo 世界 \uD83D\uDE00";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ServiceRegistry.getBytes(ServiceRegistry.UPPERCASE).execute(
+                Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(output));
+        return metrics.getCalls() == calls + 1
+                && metrics.getInputChars() == inputChars + input.length()
+                && metrics.getOutputChars() == outputChars + input.toUpperCase().length();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder text = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            text.append(c);
+        }
+        return text.toString();
+    }
+
+    private static int check(String name, boolean passed) {
+        System.out.println((passed ? "通过  " : "失败  ") + name);
+        return passed ? 0 : 1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int failures = 0;
+        failures += check("服务链流式执行：分块边界在单词中间", pipelineChunkBoundaryInsideWord());
+        failures += check("字节流式处理：超过1MB没有空白的首字母大写", byteStreamLongWordCapitalize());
+        failures += check("字节流式处理：计入服务运行统计", byteStreamRecordsMetrics());
+        if (failures > 0) {
+            System.out.println(failures + " 项检查失败");
+            System.exit(1);
+        }
+    }
+}
@@ -1,97 +1,202 @@
 package m10d20.project2;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * 服务演示类 - 接口+匿名内部类设计模式的核心示例
  * <p>
  * 本类演示了如何通过接口定义抽象行为，并使用匿名内部类实现具体功能。
- * 这种设计模式允许在不创建独立类文件的情况下，动态创建接口实现。
+ * 服务的匿名内部类实现集中定义在{@link ServiceRegistry}中，并以单例形式共享，
+ * 本类与图形界面使用的是同一批服务实例。
+ * </p>
+ * <p>
+ * 不带参数运行时执行演示；也可以作为命令行工具处理大文件：
  * </p>
+ * <pre>
+ * java m10d20.project2.ServiceDemo stream &lt;服务&gt; &lt; 输入文件 &gt; 输出文件
+ * java m10d20.project2.ServiceDemo batch &lt;服务&gt; &lt;输入文件&gt; &lt;输出文件&gt;
+ * java m10d20.project2.ServiceDemo jsonl &lt;输入文件&gt; &lt;输出文件&gt;
+ * java m10d20.project2.ServiceDemo repeat &lt;次数&gt; &lt; 输入文件 &gt; 输出文件
+ * java m10d20.project2.ServiceDemo replace &lt;正则&gt; &lt;替换文本&gt; &lt; 输入文件 &gt; 输出文件
+ * java m10d20.project2.ServiceDemo filter &lt;正则&gt; &lt; 输入文件 &gt; 输出文件
+ * java m10d20.project2.ServiceDemo extract &lt;正则&gt; &lt; 输入文件 &gt; 输出文件
+ * java m10d20.project2.ServiceDemo topk &lt;名次数&gt; [词组长度] &lt; 输入文件
+ * </pre>
  */
 public class ServiceDemo {
     
     /**
-     * 获取一个打招呼服务（使用匿名内部类实现Service接口）
+     * 获取打招呼服务
      * <p>
      * 【接口+匿名内部类应用示例1】
-     * 这里创建了Service接口的第一个匿名实现。编译后，Java编译器会生成名为ServiceDemo$1.class的文件。
-     * 匿名内部类的优势在于：无需创建单独的类文件，直接在需要的地方定义实现逻辑。
+     * 返回注册表中的匿名内部类单例。调用方只依赖Service接口，
+     * 并不关心具体实现类是什么，这正是接口带来的多态性。
      * </p>
      * @return 打招呼服务实例（Service接口引用指向匿名内部类实现）
      */
     public static Service getGreetingService() {
-        // 返回Service接口的匿名内部类实现
-        return new Service() {
-            @Override
-            public String execute(String input) {
-                return "Hello, " + input + "! Welcome to our service!";
-            }
-            
-            @Override
-            public String getName() {
-                return "Greeting Service";
-            }
-        };
+        return ServiceRegistry.get(ServiceRegistry.GREETING);
     }
     
     /**
-     * 获取一个反向服务（使用匿名内部类实现Service接口）
+     * 获取反向服务
      * <p>
      * 【接口+匿名内部类应用示例2】
-     * 这是Service接口的第二个匿名实现。编译后，会生成ServiceDemo$2.class文件。
      * 每个匿名内部类都是独立的实现，拥有自己的逻辑，但都遵循相同的接口约定。
+     * 服务本身没有状态，因此多次调用返回的是同一个实例。
      * </p>
      * @return 反向服务实例
      */
     public static Service getReverseService() {
-        return new Service() {
-            @Override
-            public String execute(String input) {
-                // 字符串反转逻辑
-                StringBuilder reversed = new StringBuilder(input);
-                return reversed.reverse().toString();
-            }
-            
-            @Override
-            public String getName() {
-                return "Reverse Service";
-            }
-        };
+        return ServiceRegistry.get(ServiceRegistry.REVERSE);
     }
     
     /**
-     * 获取一个重复服务（使用匿名内部类实现Service接口）
+     * 获取一个重复服务
      * <p>
      * 【接口+匿名内部类应用示例3 - 带参数捕获】
      * 这个例子展示了匿名内部类的重要特性：访问外部的effectively final变量。
-     * times参数被匿名内部类捕获并使用，这体现了闭包的概念。
-     * 编译后，会生成ServiceDemo$3.class文件。
+     * times参数被{@link ServiceRegistry#repeat(int)}中的匿名内部类捕获并使用，这体现了闭包的概念。
+     * 常用的2、3、5次直接返回注册表中的单例。
      * </p>
-     * @param times 重复次数（effectively final，被匿名内部类捕获）
+     * @param times 重复次数
      * @return 重复服务实例
      */
     public static Service getRepeatService(final int times) {
-        // 匿名内部类捕获了外部的times参数
-        return new Service() {
-            @Override
-            public String execute(String input) {
-                StringBuilder result = new StringBuilder();
-                for (int i = 0; i < times; i++) {
-                    result.append(input);
-                    if (i < times - 1) {
-                        result.append(" ");
-                    }
-                }
-                return result.toString();
-            }
-            
-            @Override
-            public String getName() {
-                return "Repeat Service (" + times + " times)";
-            }
-        };
+        switch (times) {
+            case 2:
+                return ServiceRegistry.get(ServiceRegistry.REPEAT_2);
+            case 3:
+                return ServiceRegistry.get(ServiceRegistry.REPEAT_3);
+            case 5:
+                return ServiceRegistry.get(ServiceRegistry.REPEAT_5);
+            default:
+                return ServiceRegistry.repeat(times);
+        }
+    }
+    
+    /**
+     * 以流式方式处理标准输入，结果写到标准输出（均为UTF-8编码）
+     * <p>
+     * 逐字符、逐单词处理的服务只使用固定大小的缓冲区，可以处理任意大的输入；
+     * 需要完整输入的服务会给出提示，然后把输入缓冲在内存中处理。
+     * </p>
+     * @param serviceName 服务的英文标识或名称
+     * @throws IOException 读写失败时抛出
+     */
+    static void runStream(String serviceName) throws IOException {
+        int id = ServiceRegistry.indexOf(serviceName);
+        if (id < 0) {
+            System.err.println("未知服务: " + serviceName);
+            System.exit(2);
+        }
+        runStream(ServiceRegistry.getStreaming(id));
+    }
+    
+    /**
+     * 以流式方式用指定服务处理标准输入，结果写到标准输出
+     * @param service 服务
+     * @throws IOException 读写失败时抛出
+     */
+    static void runStream(StreamingService service) throws IOException {
+        if (service.requiresFullInput()) {
+            System.err.println("提示: " + service.getName() + " 需要完整输入，将把全部输入读入内存");
+        }
+        Reader in = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                StreamingService.BUFFER_SIZE);
+        service.execute(in, out);
+        out.flush();
+    }
+    
+    /**
+     * 批量处理文件：输入文件以内存映射方式读取，可切分的服务在所有CPU核心上并行执行
+     * @param serviceName 服务的英文标识或名称
+     * @param inputFile 输入文件路径（UTF-8编码）
+     * @param outputFile 输出文件路径
+     * @throws IOException 读写失败时抛出
+     */
+    static void runBatch(String serviceName, String inputFile, String outputFile) throws IOException {
+        int id = ServiceRegistry.indexOf(serviceName);
+        if (id < 0) {
+            System.err.println("未知服务: " + serviceName);
+            System.exit(2);
+        }
+        StreamingService service = ServiceRegistry.getStreaming(id);
+        Path input = Paths.get(inputFile);
+        Path output = Paths.get(outputFile);
+        FileBatchRunner runner = new FileBatchRunner(service, Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        long bytes = runner.run(input, output);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%s: 处理 %d 字节，耗时 %.3f 秒，%.1f MB/s%s%n", service.getName(), bytes, seconds,
+                bytes / (1024.0 * 1024.0) / Math.max(seconds, 1e-9), service.isSplittable() ? "（并行）" : "");
     }
     
-    public static void main(String[] args) {
+    /**
+     * 批量处理JSONL记录文件：每行一个{"service": ..., "input": ...}对象，结果按输入顺序写出
+     * @param inputFile 输入文件路径（UTF-8编码）
+     * @param outputFile 输出文件路径
+     * @throws IOException 读写失败时抛出
+     */
+    static void runJsonl(String inputFile, String outputFile) throws IOException {
+        JsonlBatchRunner runner = new JsonlBatchRunner(Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        long records = runner.run(Paths.get(inputFile), Paths.get(outputFile));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("处理 %d 条记录（失败 %d 条），耗时 %.3f 秒，%.0f 条/秒%n", records,
+                runner.failureCount(), seconds, records / Math.max(seconds, 1e-9));
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && "stream".equals(args[0])) {
+            runStream(args[1]);
+            return;
+        }
+        if (args.length == 4 && "batch".equals(args[0])) {
+            runBatch(args[1], args[2], args[3]);
+            return;
+        }
+        if (args.length == 3 && "jsonl".equals(args[0])) {
+            runJsonl(args[1], args[2]);
+            return;
+        }
+        if (args.length == 2 && "repeat".equals(args[0])) {
+            runStream(StreamingService.of(getRepeatService(Integer.parseInt(args[1]))));
+            return;
+        }
+        if (args.length == 3 && "replace".equals(args[0])) {
+            runStream(PatternTransformService.replace(args[1], args[2]));
+            return;
+        }
+        if (args.length == 2 && "filter".equals(args[0])) {
+            runStream(PatternTransformService.filter(args[1]));
+            return;
+        }
+        if (args.length == 2 && "extract".equals(args[0])) {
+            runStream(PatternTransformService.extract(args[1]));
+            return;
+        }
+        if ((args.length == 2 || args.length == 3) && "topk".equals(args[0])) {
+            runStream(ServiceRegistry.topWords(Integer.parseInt(args[1]),
+                    args.length == 3 ? Integer.parseInt(args[2]) : 1));
+            return;
+        }
+        if (args.length > 0) {
+            System.err.println("用法: java m10d20.project2.ServiceDemo [stream <服务> | batch <服务> <输入文件> <输出文件>"
+                    + " | jsonl <输入文件> <输出文件> | repeat <次数> | replace <正则> <替换文本> | filter <正则>"
+                    + " | extract <正则> | topk <名次数> [词组长度]]");
+            System.exit(2);
+        }
+        
         System.out.println("===== 服务演示程序 =====");
         
         // 创建并测试打招呼服务
@@ -109,22 +214,11 @@ public class ServiceDemo {
         System.out.println("\n服务名称: " + repeatService.getName());
         System.out.println("执行结果: " + repeatService.execute("Java"));
         
-        // 【接口+匿名内部类应用示例4 - 内联使用】
-        // 直接在表达式中使用匿名内部类，这是最简洁的用法
-        // 编译后，会生成ServiceDemo$4.class文件
-        System.out.println("\n===== 直接使用匿名内部类 =====");
-        String result = new Service() {
-            @Override
-            public String execute(String input) {
-                return input.toUpperCase();
-            }
-            
-            @Override
-            public String getName() {
-                return "Uppercase Service";
-            }
-        }.execute("anonymous inner class example");
+        // 【接口+匿名内部类应用示例4 - 按编号调用】
+        // 通过注册表的服务编号直接调用，这是图形界面使用的调用方式
+        System.out.println("\n===== 通过服务注册表调用 =====");
+        String result = ServiceRegistry.execute(ServiceRegistry.UPPERCASE, "anonymous inner class example");
         
         System.out.println("大写转换结果: " + result);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package m10d20.project2;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务执行线程池
+ * <p>
+ * 图形界面不能在事件调度线程(EDT)中执行耗时的服务，否则窗口会失去响应。
+ * 这里提供一个所有前端共享的有界工作线程池：线程数等于CPU核心数，
+ * 等待队列有上限，队列满时提交会被拒绝，而不是无限堆积任务。
+ * 工作线程都是守护线程，不会阻止程序退出。
+ * </p>
+ */
+final class ServiceExecutors {
+
+    /** 共享工作线程池的等待队列长度 */
+    private static final int QUEUE_CAPACITY = 256;
+
+    private ServiceExecutors() {
+    }
+
+    private static final class WorkersHolder {
+        static final ExecutorService WORKERS = newBoundedPool("service-worker",
+                Runtime.getRuntime().availableProcessors(), QUEUE_CAPACITY);
+    }
+
+    /**
+     * 获取共享的有界工作线程池
+     * @return 线程池
+     */
+    static ExecutorService workers() {
+        return WorkersHolder.WORKERS;
+    }
+
+    private static final class CoordinatorsHolder {
+        static final ExecutorService COORDINATORS = newPerTaskExecutor("service-coordinator");
+    }
+
+    /**
+     * 获取执行协调任务的执行器
+     * <p>
+     * 协调任务把工作拆分后提交到{@link #workers()}，再阻塞等待它们完成（例如{@link ServiceFanOut}）。
+     * 如果协调任务本身也占用一个工作线程，工作线程可能全被等待中的协调任务占满而互相等待，
+     * 因此协调任务在这里每个任务一个线程地执行。
+     * </p>
+     * @return 执行器
+     */
+    static ExecutorService coordinators() {
+        return CoordinatorsHolder.COORDINATORS;
+    }
+
+    private static final class VirtualThreadsHolder {
+        static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+        private static Method findVirtualThreadExecutor() {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                // 预览版JDK在未启用预览特性时会抛出UnsupportedOperationException
+                ((ExecutorService) method.invoke(null)).shutdown();
+                return method;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程
+     * @return 运行在Java 21及以上版本时返回true
+     */
+    static boolean isVirtualThreadsSupported() {
+        return VirtualThreadsHolder.NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * 创建为每个任务启动一个新线程的执行器
+     * <p>
+     * 支持虚拟线程时每个任务运行在一个虚拟线程中，阻塞在网络读写上的请求几乎不占用资源；
+     * 虚拟线程通过反射创建，源码仍然可以在Java 8下编译。
+     * 不支持时退回到按需创建、空闲后回收的守护线程。
+     * </p>
+     * @param namePrefix 平台线程的线程名前缀
+     * @return 执行器
+     */
+    static ExecutorService newPerTaskExecutor(String namePrefix) {
+        Method method = VirtualThreadsHolder.NEW_VIRTUAL_THREAD_EXECUTOR;
+        if (method != null) {
+            try {
+                return (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // 已在初始化时验证过，不会发生；保险起见退回到平台线程
+            }
+        }
+        return Executors.newCachedThreadPool(daemonThreads(namePrefix));
+    }
+
+    /**
+     * 创建一个有界线程池
+     * @param namePrefix 线程名前缀
+     * @param threads 线程数
+     * @param queueCapacity 等待队列长度
+     * @return 线程池，队列满时提交会抛出RejectedExecutionException
+     */
+    static ExecutorService newBoundedPool(String namePrefix, int threads, int queueCapacity) {
+        int size = Math.max(1, threads);
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), daemonThreads(namePrefix),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 创建守护线程工厂，线程名形如"前缀-1"
+     * @param namePrefix 线程名前缀
+     * @return 线程工厂
+     */
+    static ThreadFactory daemonThreads(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, namePrefix + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package m10d20.project2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 服务扇出 - 把同一段输入同时交给所有服务处理
+ * <p>
+ * 每个服务作为一个独立任务提交到线程池，多个核心同时处理；
+ * 通过{@link ExecutorCompletionService}按完成的先后取回结果，先完成的服务先交给监听器显示，
+ * 不必等待最慢的服务。
+ * </p>
+ * <p>
+ * 每个任务在自己的线程中测量墙钟时间和{@link AllocationMeter}统计的分配字节数，
+ * 因此可以直接比较各服务的开销。任务直接调用服务，不经过结果缓存，测得的是真实的处理开销。
+ * 字数统计等服务处理超大输入时会在公共fork-join线程池中并行，这部分分配不计入该服务。
+ * </p>
+ * <p>
+ * {@link #run(String, ExecutorService, Listener)}会阻塞等待所有任务完成，
+ * 不能在执行这些任务的同一个有界线程池中调用，否则可能占满线程池而互相等待。
+ * </p>
+ */
+final class ServiceFanOut {
+
+    private ServiceFanOut() {
+    }
+
+    /**
+     * 结果监听器，在调用run的线程中按完成顺序回调
+     */
+    interface Listener {
+        void onResult(Result result);
+    }
+
+    /**
+     * 一个服务的执行结果
+     */
+    static final class Result {
+        final int serviceId;
+        /** 服务的输出，执行失败时为null */
+        final String output;
+        final long wallNanos;
+        /** 执行期间分配的字节数，JVM不支持统计时为-1 */
+        final long allocatedBytes;
+        /** 执行失败的原因，成功时为null */
+        final Throwable failure;
+
+        Result(int serviceId, String output, long wallNanos, long allocatedBytes, Throwable failure) {
+            this.serviceId = serviceId;
+            this.output = output;
+            this.wallNanos = wallNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * 用所有已注册的服务处理同一段输入
+     * @param input 输入文本
+     * @param executor 执行各服务的线程池
+     * @param listener 每个服务完成时回调，可以为null
+     * @return 按完成顺序排列的结果
+     * @throws CancellationException 调用线程被中断时取消所有未完成的任务并抛出
+     */
+    static List<Result> run(final String input, ExecutorService executor, Listener listener) {
+        CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Result>> futures = new ArrayList<>();
+        List<Result> results = new ArrayList<>();
+        try {
+            for (int id = 0; id < ServiceRegistry.size(); id++) {
+                final int serviceId = id;
+                futures.add(completion.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return execute(serviceId, input);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Result result = completion.take().get();
+                results.add(result);
+                if (listener != null) {
+                    listener.onResult(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("服务扇出已取消");
+        } catch (ExecutionException e) {
+            // execute捕获了所有异常，不会发生
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // 正常完成时这里什么也不做；被取消或提交被拒绝时中断仍在执行的服务
+            for (Future<Result> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 在当前线程中执行一个服务并测量开销
+     */
+    private static Result execute(int serviceId, String input) {
+        long allocatedBefore = AllocationMeter.currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        String output = null;
+        Throwable failure = null;
+        try {
+            output = ServiceRegistry.get(serviceId).execute(input);
+        } catch (Throwable t) {
+            // 包括取消、运行时异常以及超大输入导致的OutOfMemoryError
+            failure = t;
+        }
+        long wallNanos = System.nanoTime() - start;
+        long allocatedAfter = AllocationMeter.currentThreadAllocatedBytes();
+        long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new Result(serviceId, output, wallNanos, allocated, failure);
+    }
+}
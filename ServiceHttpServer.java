@@ -0,0 +1,333 @@
+package m10d20.project2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文本服务HTTP前端 - 基于JDK内置的com.sun.net.httpserver，无任何外部依赖
+ * <p>
+ * 注册表中的每个服务都可以按英文标识（或名称）通过HTTP调用，便于把服务放在负载均衡器之后，
+ * 而不必驱动图形界面。每个请求在单独的线程中处理：运行在Java 21及以上版本时使用虚拟线程，
+ * 否则使用按需创建的平台线程（见{@link ServiceExecutors#newPerTaskExecutor(String)}）。
+ * 连接默认保持(keep-alive)，请求体可以使用分块传输编码。
+ * </p>
+ * <pre>
+ * GET  /services          服务列表(JSON)
+ * POST /services/&lt;服务&gt;   请求体为UTF-8输入文本，响应体为处理结果
+ * POST /batch             请求体为JSONL记录（格式见{@link JsonlBatchRunner}），响应体为JSONL结果
+ * </pre>
+ * <p>
+ * 不需要完整输入的服务（见{@link StreamingService#requiresFullInput()}）边读请求体边写响应体，
+ * 响应使用分块传输编码，内存占用与请求大小无关；其他服务读完请求体后一次性返回，响应带Content-Length，
+ * 结果是惰性视图（见{@link Service#executeLazy(String)}）时同样以分块传输编码逐段写出。
+ * 逐字符映射服务（大小写转换、加密、空格去除）通过{@link ByteService}直接处理请求体的UTF-8字节，
+ * 不解码为字符。
+ * </p>
+ * <p>
+ * 单个服务的请求经过{@link AdmissionScheduler#shared()}准入：超出并发上限的请求排队，小输入优先，
+ * 队列已满、等待超时或执行超过截止时间时返回503并带Retry-After头。
+ * 截止时间默认为{@link #DEFAULT_TIMEOUT_MILLIS}毫秒，可以用请求头X-Timeout-Ms指定；
+ * 需要完整输入的服务先读完请求体再排队，上传期间不占用执行名额。
+ * </p>
+ * <pre>
+ * java m10d20.project2.ServiceHttpServer [端口，默认8080]
+ * curl --data-binary @input.log http://localhost:8080/services/upper
+ * </pre>
+ */
+public final class ServiceHttpServer {
+
+    private static final String TEXT_TYPE = "text/plain; charset=utf-8";
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final String JSONL_TYPE = "application/x-ndjson; charset=utf-8";
+    private static final String SERVICES_PATH = "/services";
+    private static final String TIMEOUT_HEADER = "X-Timeout-Ms";
+    /** 单个服务请求默认的截止时间（毫秒），从开始排队算起 */
+    static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ForkJoinPool batchPool;
+    private final AdmissionScheduler scheduler;
+
+    /**
+     * 创建服务器，调用{@link #start()}后开始接受请求
+     * @param address 监听地址
+     * @throws IOException 端口无法绑定时抛出
+     */
+    public ServiceHttpServer(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        requestExecutor = ServiceExecutors.newPerTaskExecutor("http-request");
+        batchPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        scheduler = AdmissionScheduler.shared();
+        server.setExecutor(requestExecutor);
+        server.createContext(SERVICES_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleServices(exchange);
+            }
+        });
+        server.createContext("/batch", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleBatch(exchange);
+            }
+        });
+    }
+
+    /**
+     * 开始接受请求
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * 停止服务器
+     * @param delaySeconds 等待正在处理的请求完成的最长秒数
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        requestExecutor.shutdown();
+        batchPool.shutdown();
+        try {
+            requestExecutor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 获取实际监听的端口（创建时端口为0则由系统分配）
+     * @return 端口
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleServices(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String name = path.length() > SERVICES_PATH.length() + 1
+                    ? path.substring(SERVICES_PATH.length() + 1) : "";
+            if (name.isEmpty()) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    sendMethodNotAllowed(exchange, "GET");
+                    return;
+                }
+                sendServiceList(exchange);
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendMethodNotAllowed(exchange, "POST");
+                return;
+            }
+            int id = ServiceRegistry.indexOf(name);
+            if (id < 0) {
+                send(exchange, 404, TEXT_TYPE, "未知服务: " + name);
+                return;
+            }
+            executeService(exchange, id);
+        } catch (RuntimeException e) {
+            sendError(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void executeService(HttpExchange exchange, int id) throws IOException {
+        long timeout = requestTimeout(exchange);
+        StreamingService service = ServiceRegistry.getStreaming(id);
+        String input = null;
+        long inputLength = contentLength(exchange);
+        if (service.requiresFullInput()) {
+            input = readFully(exchange);
+            inputLength = input.length();
+        }
+        AdmissionScheduler.Ticket ticket = scheduler.acquire(id, inputLength, timeout, TimeUnit.MILLISECONDS);
+        try {
+            executeService(exchange, id, service, input);
+        } catch (CancellationException e) {
+            throw ticket.expiredOr(e);
+        } finally {
+            ticket.close();
+        }
+    }
+
+    /**
+     * @param input 需要完整输入的服务已读出的请求体，其他服务为null
+     */
+    private static void executeService(HttpExchange exchange, int id, StreamingService service, String input)
+            throws IOException {
+        if (service instanceof CharMappingService) {
+            exchange.getResponseHeaders().set("Content-Type", TEXT_TYPE);
+            exchange.sendResponseHeaders(200, 0);
+            ServiceRegistry.getBytes(id).execute(Channels.newChannel(exchange.getRequestBody()),
+                    Channels.newChannel(exchange.getResponseBody()));
+            return;
+        }
+        if (input != null) {
+            CharSequence result = service.executeLazy(input);
+            if (result instanceof String) {
+                send(exchange, 200, TEXT_TYPE, (String) result);
+                return;
+            }
+            // 惰性视图（重复、反转）逐段编码写出，不生成完整的结果字符串
+            Writer out = startChunked(exchange);
+            TextViews.write(result, out);
+            out.flush();
+            return;
+        }
+        Reader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8);
+        Writer out = startChunked(exchange);
+        service.execute(in, out);
+        out.flush();
+    }
+
+    private static String readFully(HttpExchange exchange) throws IOException {
+        Reader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8);
+        StringBuilder input = new StringBuilder();
+        char[] buffer = new char[StreamingService.BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            input.append(buffer, 0, n);
+        }
+        return input.toString();
+    }
+
+    /**
+     * 请求体的字节数，用作输入字符数的估计（UTF-8字节数不小于字符数）；使用分块传输编码时为-1
+     */
+    private static long contentLength(HttpExchange exchange) {
+        String value = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long requestTimeout(HttpExchange exchange) {
+        String value = exchange.getRequestHeaders().getFirst(TIMEOUT_HEADER);
+        if (value == null) {
+            return DEFAULT_TIMEOUT_MILLIS;
+        }
+        try {
+            long timeout = Long.parseLong(value.trim());
+            if (timeout > 0) {
+                return timeout;
+            }
+        } catch (NumberFormatException e) {
+            // 下面统一报告
+        }
+        throw new IllegalArgumentException(TIMEOUT_HEADER + "必须是正整数毫秒: " + value);
+    }
+
+    private static Writer startChunked(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", TEXT_TYPE);
+        // 长度0表示使用分块传输编码
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                StreamingService.BUFFER_SIZE);
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendMethodNotAllowed(exchange, "POST");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", JSONL_TYPE);
+            exchange.sendResponseHeaders(200, 0);
+            Reader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8);
+            Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+            new JsonlBatchRunner(batchPool).run(in, out);
+        } catch (RuntimeException e) {
+            sendError(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendServiceList(HttpExchange exchange) throws IOException {
+        List<Object> services = new ArrayList<>();
+        for (int id = 0; id < ServiceRegistry.size(); id++) {
+            StreamingService service = ServiceRegistry.getStreaming(id);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", id);
+            entry.put("key", ServiceRegistry.getKey(id));
+            entry.put("name", service.getName());
+            entry.put("label", ServiceRegistry.getLabel(id));
+            entry.put("streaming", !service.requiresFullInput());
+            entry.put("deterministic", service.isDeterministic());
+            services.add(entry);
+        }
+        StringBuilder json = new StringBuilder();
+        Json.write(json, services);
+        send(exchange, 200, JSON_TYPE, json.toString());
+    }
+
+    private static void sendMethodNotAllowed(HttpExchange exchange, String allowed) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        send(exchange, 405, TEXT_TYPE, "不支持的请求方法: " + exchange.getRequestMethod());
+    }
+
+    /**
+     * 响应头尚未发出时返回错误状态码；已经开始流式输出时只能中断连接
+     */
+    private static void sendError(HttpExchange exchange, RuntimeException e) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            throw e;
+        }
+        int status = e instanceof IllegalArgumentException ? 400 : 500;
+        if (e instanceof OverloadException) {
+            // 过载是暂时的，提示客户端稍后重试
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            status = 503;
+        }
+        send(exchange, status, TEXT_TYPE, String.valueOf(e.getMessage()));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        // 只监听本机回环地址
+        ServiceHttpServer server = new ServiceHttpServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.start();
+        ServiceRegistry.registerMBeans();
+        AdmissionScheduler.shared().registerMBeans();
+        System.out.println("文本服务HTTP前端已启动: http://localhost:" + server.getPort() + SERVICES_PATH
+                + (ServiceExecutors.isVirtualThreadsSupported() ? "（虚拟线程）" : "（平台线程）"));
+    }
+}
@@ -0,0 +1,503 @@
+package m10d20.project2;
+
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 服务运行统计 - 调用次数、失败次数、输入输出字符数和延迟直方图
+ * <p>
+ * 注册表中的每个服务都被{@link #instrument(StreamingService)}返回的包装器包裹，
+ * 每次调用都会记录到对应的统计对象中。计数器使用LongAdder，延迟记录在无锁的
+ * {@link LatencyHistogram}中，热路径上只有两次System.nanoTime()和几次原子加，
+ * 不加锁也不分配对象，因此可以一直开启。
+ * </p>
+ * <p>
+ * 统计数据可以通过JMX查看（见{@link ServiceMetricsMXBean}），
+ * 也显示在Swing界面的"服务统计"窗口中。
+ * </p>
+ */
+public final class ServiceMetrics implements ServiceMetricsMXBean {
+
+    private static final String DOMAIN = "m10d20.project2";
+
+    private final String key;
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inputChars = new LongAdder();
+    private final LongAdder outputChars = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param key 服务的英文标识，用作MBean名称
+     * @param name 服务名称
+     */
+    ServiceMetrics(String key, String name) {
+        this.key = key;
+        this.name = name;
+    }
+
+    /**
+     * 用包装器包裹服务，每次调用都记录到本统计对象
+     * <p>
+     * 逐字符映射服务包装后仍然是{@link CharMappingService}，服务链照样可以融合它们；
+     * 融合阶段直接调用mapChar，不经过包装器，因此不计入统计。
+     * </p>
+     * @param service 被包装的服务
+     * @return 包装后的服务
+     */
+    StreamingService instrument(StreamingService service) {
+        if (service instanceof CharMappingService) {
+            return new InstrumentedMapping((CharMappingService) service, this);
+        }
+        return new Instrumented(service, this);
+    }
+
+    /**
+     * 为包装后的服务创建计入本统计对象的字节服务
+     * <p>
+     * 逐字符映射服务的字节实现直接调用mapChar，不经过包装器，因此在字节服务外面再包一层统计，
+     * 并用未包装的服务创建字节实现，退回适配器路径时也不会重复统计；
+     * 其他服务的解码、编码适配器调用的就是包装器，不需要另外统计。
+     * 字节服务按UTF-8字节对应的UTF-16字符数记录输入输出长度，与字符服务的统计单位一致。
+     * </p>
+     * @param service {@link #instrument(StreamingService)}返回的服务
+     * @return 字节服务
+     */
+    ByteService bytes(StreamingService service) {
+        if (service instanceof InstrumentedMapping) {
+            return new InstrumentedBytes(ByteServices.of(((InstrumentedMapping) service).mapping), this);
+        }
+        return ByteServices.of(service);
+    }
+
+    /**
+     * 记录一次调用
+     * @param nanos 耗时（纳秒）
+     * @param inputLength 输入字符数
+     * @param outputLength 输出字符数，失败时为-1
+     */
+    void record(long nanos, long inputLength, long outputLength) {
+        calls.increment();
+        inputChars.add(inputLength);
+        if (outputLength < 0) {
+            errors.increment();
+        } else {
+            outputChars.add(outputLength);
+        }
+        latency.record(nanos);
+    }
+
+    /**
+     * 记录一次批量调用，每个输入按平均耗时计入直方图
+     * @param nanos 整批的耗时（纳秒）
+     * @param count 输入个数
+     * @param inputLength 输入字符总数
+     * @param outputLength 输出字符总数，失败时为-1
+     */
+    void recordBatch(long nanos, int count, long inputLength, long outputLength) {
+        if (count == 0) {
+            return;
+        }
+        calls.add(count);
+        inputChars.add(inputLength);
+        if (outputLength < 0) {
+            errors.add(count);
+        } else {
+            outputChars.add(outputLength);
+        }
+        latency.record(nanos / count, count);
+    }
+
+    /**
+     * 复制当前的延迟直方图快照，供界面一次性读取多个百分位数
+     * @return 快照（单位纳秒）
+     */
+    LatencyHistogram.Snapshot latencySnapshot() {
+        return latency.snapshot();
+    }
+
+    /**
+     * 以"m10d20.project2:type=ServiceMetrics,name=英文标识"注册到平台MBean服务器，重复注册会被忽略
+     * @return 注册成功或已注册时返回true
+     */
+    boolean registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName(DOMAIN + ":type=ServiceMetrics,name=" + ObjectName.quote(key)));
+            return true;
+        } catch (InstanceAlreadyExistsException e) {
+            return true;
+        } catch (JMException | SecurityException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getInputChars() {
+        return inputChars.sum();
+    }
+
+    @Override
+    public long getOutputChars() {
+        return outputChars.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.snapshot().mean() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.snapshot().percentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.snapshot().percentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.snapshot().percentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.snapshot().max() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        inputChars.reset();
+        outputChars.reset();
+        latency.reset();
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    /**
+     * @return UTF-8字节[from, to)解码后的UTF-16字符数：每个非后续字节计1个字符，4字节序列的首字节再多计1个
+     */
+    private static long utf16Length(ByteBuffer buffer, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            int b = buffer.get(i);
+            if ((b & 0xC0) != 0x80) {
+                count++;
+            }
+            if ((b & 0xF8) == 0xF0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 统计包装器：计时并记录每次调用，其他行为完全委托给被包装的服务
+     */
+    private static class Instrumented implements StreamingService {
+        final StreamingService delegate;
+        final ServiceMetrics metrics;
+
+        Instrumented(StreamingService delegate, ServiceMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public String execute(String input) {
+            long start = System.nanoTime();
+            String result = null;
+            boolean completed = false;
+            try {
+                result = delegate.execute(input);
+                completed = true;
+                return result;
+            } finally {
+                metrics.record(System.nanoTime() - start, length(input), completed ? length(result) : -1);
+            }
+        }
+
+        @Override
+        public CharSequence executeLazy(String input) {
+            long start = System.nanoTime();
+            CharSequence result = null;
+            boolean completed = false;
+            try {
+                result = delegate.executeLazy(input);
+                completed = true;
+                return result;
+            } finally {
+                metrics.record(System.nanoTime() - start, length(input),
+                        completed ? (result == null ? 0 : result.length()) : -1);
+            }
+        }
+
+        @Override
+        public String[] executeBatch(String[] inputs) {
+            long start = System.nanoTime();
+            String[] results = null;
+            try {
+                results = delegate.executeBatch(inputs);
+                return results;
+            } finally {
+                long inputLength = 0;
+                for (String input : inputs) {
+                    inputLength += length(input);
+                }
+                long outputLength = -1;
+                if (results != null) {
+                    outputLength = 0;
+                    for (String result : results) {
+                        outputLength += length(result);
+                    }
+                }
+                metrics.recordBatch(System.nanoTime() - start, inputs.length, inputLength, outputLength);
+            }
+        }
+
+        @Override
+        public void execute(Reader in, Writer out) throws IOException {
+            long start = System.nanoTime();
+            CountingReader countingIn = new CountingReader(in);
+            CountingWriter countingOut = new CountingWriter(out);
+            boolean completed = false;
+            try {
+                delegate.execute(countingIn, countingOut);
+                completed = true;
+            } finally {
+                metrics.record(System.nanoTime() - start, countingIn.count,
+                        completed ? countingOut.count : -1);
+            }
+        }
+
+        @Override
+        public boolean requiresFullInput() {
+            return delegate.requiresFullInput();
+        }
+
+        @Override
+        public boolean isSplittable() {
+            return delegate.isSplittable();
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return delegate.isDeterministic();
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+    }
+
+    /**
+     * 逐字符映射服务的统计包装器，保留mapChar以便服务链融合
+     */
+    private static final class InstrumentedMapping extends Instrumented implements CharMappingService {
+        private final CharMappingService mapping;
+
+        InstrumentedMapping(CharMappingService delegate, ServiceMetrics metrics) {
+            super(delegate, metrics);
+            this.mapping = delegate;
+        }
+
+        @Override
+        public int mapChar(char c) {
+            return mapping.mapChar(c);
+        }
+    }
+
+    /**
+     * 字节服务的统计包装器：单次调用和整个流各记录一次
+     */
+    private static final class InstrumentedBytes implements ByteService {
+        private final ByteService delegate;
+        private final ServiceMetrics metrics;
+
+        InstrumentedBytes(ByteService delegate, ServiceMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public ByteBuffer execute(ByteBuffer source, ByteBuffer target) {
+            long start = System.nanoTime();
+            long inputLength = utf16Length(source, source.position(), source.limit());
+            int targetStart = target.position();
+            ByteBuffer result = null;
+            try {
+                result = delegate.execute(source, target);
+                return result;
+            } finally {
+                metrics.record(System.nanoTime() - start, inputLength,
+                        result != null ? utf16Length(result, targetStart, result.position()) : -1);
+            }
+        }
+
+        @Override
+        public void execute(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+            long start = System.nanoTime();
+            CountingChannel counting = new CountingChannel(in, out);
+            boolean completed = false;
+            try {
+                // 按块处理时直接调用被包装的字节服务，整个流只记录一次
+                ByteServices.execute(delegate, counting, counting);
+                completed = true;
+            } finally {
+                metrics.record(System.nanoTime() - start, counting.read, completed ? counting.written : -1);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public boolean isSplittable() {
+            return delegate.isSplittable();
+        }
+
+        @Override
+        public boolean isContextFree() {
+            return delegate.isContextFree();
+        }
+    }
+
+    /**
+     * 统计读取和写出字符数的字节通道，字符数按{@link #utf16Length(ByteBuffer, int, int)}计算
+     */
+    private static final class CountingChannel implements ReadableByteChannel, WritableByteChannel {
+        private final ReadableByteChannel in;
+        private final WritableByteChannel out;
+        long read;
+        long written;
+
+        CountingChannel(ReadableByteChannel in, WritableByteChannel out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public int read(ByteBuffer target) throws IOException {
+            int start = target.position();
+            int n = in.read(target);
+            if (n > 0) {
+                read += utf16Length(target, start, start + n);
+            }
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int start = source.position();
+            int n = out.write(source);
+            written += utf16Length(source, start, start + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return in.isOpen() && out.isOpen();
+        }
+
+        /**
+         * 通道由调用方管理，这里不关闭
+         */
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 统计读取字符数的Reader
+     */
+    private static final class CountingReader extends FilterReader {
+        long count;
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                count++;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 统计写出字符数的Writer
+     */
+    private static final class CountingWriter extends FilterWriter {
+        long count;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            super.write(buffer, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void write(String s, int offset, int length) throws IOException {
+            super.write(s, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package m10d20.project2;
+
+/**
+ * 单个服务的运行统计的JMX管理接口
+ * <p>
+ * 每个注册的服务以"m10d20.project2:type=ServiceMetrics,name=英文标识"的名称
+ * 注册到平台MBean服务器，可以用JConsole、VisualVM等工具查看。延迟单位均为微秒。
+ * </p>
+ */
+public interface ServiceMetricsMXBean {
+
+    /** @return 服务名称 */
+    String getName();
+
+    /** @return 调用次数（含失败） */
+    long getCalls();
+
+    /** @return 执行失败（抛出异常）的次数 */
+    long getErrors();
+
+    /** @return 累计输入字符数 */
+    long getInputChars();
+
+    /** @return 累计输出字符数 */
+    long getOutputChars();
+
+    /** @return 平均延迟（微秒） */
+    double getMeanMicros();
+
+    /** @return 延迟中位数（微秒） */
+    double getP50Micros();
+
+    /** @return 99百分位延迟（微秒） */
+    double getP99Micros();
+
+    /** @return 99.9百分位延迟（微秒） */
+    double getP999Micros();
+
+    /** @return 最大延迟（微秒） */
+    double getMaxMicros();
+
+    /**
+     * 清空统计
+     */
+    void reset();
+}
@@ -0,0 +1,417 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 服务链 - 把多个服务串联为一个服务
+ * <p>
+ * 服务链本身也实现了Service接口，前一个服务的输出就是后一个服务的输入。
+ * 逐个调用execute会为每个中间结果生成一个完整的String，
+ * 因此构建时会把相邻的逐字符映射服务（{@link CharMappingService}）融合为一个阶段：
+ * 只遍历一次输入，每个字符依次经过各服务的映射，结果写入同一个输出缓冲区。
+ * 反转、打乱等需要完整输入的服务作为屏障，把服务链分隔成多个阶段。
+ * </p>
+ * <pre>
+ * Service chain = ServicePipeline.builder()
+ *         .then(ServiceRegistry.LOWERCASE)
+ *         .then(ServiceRegistry.REMOVE_SPACES)
+ *         .then(ServiceRegistry.ENCRYPT)
+ *         .build();
+ * </pre>
+ */
+public final class ServicePipeline implements StreamingService {
+
+    /** 流式执行时找不到空白也必须切开的最大滞留字符数，与{@link CaseConverter}相同 */
+    private static final int MAX_TAIL = 1 << 16;
+    /** 所有空白字符（{@link Character#isWhitespace(char)}） */
+    private static final char[] WHITESPACE = whitespace();
+
+    /** 按顺序排列的阶段，元素为FusedStage或普通的Service */
+    private final Service[] stages;
+    private final String name;
+    private final boolean splittable;
+
+    private ServicePipeline(Service[] stages, String name, boolean splittable) {
+        this.stages = stages;
+        this.name = name;
+        this.splittable = splittable;
+    }
+
+    /**
+     * 创建服务链构建器
+     * @return 构建器
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 服务链构建器
+     */
+    public static final class Builder {
+        private final List<Service> services = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * 在链尾追加一个服务
+         * @param service 服务
+         * @return 构建器本身
+         */
+        public Builder then(Service service) {
+            if (service == null) {
+                throw new IllegalArgumentException("服务不能为null");
+            }
+            services.add(service);
+            return this;
+        }
+
+        /**
+         * 在链尾追加注册表中的服务
+         * @param id 服务编号
+         * @return 构建器本身
+         */
+        public Builder then(int id) {
+            return then(ServiceRegistry.get(id));
+        }
+
+        /**
+         * 构建服务链，相邻的逐字符映射服务会被融合为一个阶段
+         * @return 服务链
+         * @throws IllegalStateException 未添加任何服务时抛出
+         */
+        public ServicePipeline build() {
+            if (services.isEmpty()) {
+                throw new IllegalStateException("服务链中至少需要一个服务");
+            }
+            List<Service> stages = new ArrayList<>();
+            List<CharMappingService> run = new ArrayList<>();
+            StringBuilder name = new StringBuilder();
+            for (Service service : services) {
+                if (name.length() > 0) {
+                    name.append(" → ");
+                }
+                name.append(service.getName());
+                if (service instanceof CharMappingService) {
+                    run.add((CharMappingService) service);
+                    continue;
+                }
+                flush(run, stages);
+                stages.add(service);
+            }
+            flush(run, stages);
+            return new ServicePipeline(stages.toArray(new Service[0]), name.toString(),
+                    isSplittable(services.toArray(new Service[0])));
+        }
+
+        private static void flush(List<CharMappingService> run, List<Service> stages) {
+            if (run.size() == 1) {
+                stages.add(run.get(0));
+            } else if (run.size() > 1) {
+                stages.add(new FusedStage(run.toArray(new CharMappingService[0])));
+            }
+            run.clear();
+        }
+    }
+
+    @Override
+    public String execute(String input) {
+        String text = input;
+        for (Service stage : stages) {
+            Cancellation.checkpoint();
+            text = stage.execute(text);
+        }
+        return text;
+    }
+
+    /**
+     * 批量执行：整批输入依次通过各阶段，每个阶段都以批量方式执行
+     */
+    @Override
+    public String[] executeBatch(String[] inputs) {
+        String[] texts = inputs;
+        for (Service stage : stages) {
+            Cancellation.checkpoint();
+            texts = stage.executeBatch(texts);
+        }
+        return texts;
+    }
+
+    /**
+     * 流式执行
+     * <p>
+     * 只有一个阶段时直接使用该阶段的流式实现（融合阶段逐块映射），
+     * 多个阶段时退回到缓冲全部输入的默认实现。
+     * </p>
+     */
+    @Override
+    public void execute(Reader in, Writer out) throws IOException {
+        if (stages.length == 1) {
+            StreamingService.of(stages[0]).execute(in, out);
+        } else {
+            StreamingService.super.execute(in, out);
+        }
+    }
+
+    @Override
+    public boolean requiresFullInput() {
+        if (stages.length > 1) {
+            return true;
+        }
+        return StreamingService.of(stages[0]).requiresFullInput();
+    }
+
+    /**
+     * 每个服务都可切分还不够：删除或替换了空白的服务会把相邻的单词连在一起，
+     * 之后依赖上下文的服务（大小写转换中的词尾Σ、首字母大写等）看到的单词边界与原文不同，
+     * 例如空格去除 → 小写转换就不能在原文的空白处切开
+     */
+    @Override
+    public boolean isSplittable() {
+        return splittable;
+    }
+
+    /**
+     * 按顺序检查一串服务能否在原文的空白处切分
+     * @param services 按执行顺序排列的服务
+     * @return 每个服务都可切分，并且改变了空白的服务之后没有依赖上下文的服务时返回true
+     */
+    static boolean isSplittable(Service[] services) {
+        boolean joined = false;
+        for (Service service : services) {
+            if (!StreamingService.of(service).isSplittable()) {
+                return false;
+            }
+            if (!(service instanceof CharMappingService)) {
+                // 无法逐字符检查的服务既可能依赖上下文，也可能改变空白
+                if (joined) {
+                    return false;
+                }
+                joined = true;
+                continue;
+            }
+            CharMappingService mapping = (CharMappingService) service;
+            if (joined && !isContextFree(mapping)) {
+                return false;
+            }
+            joined |= !keepsWhitespace(mapping);
+        }
+        return true;
+    }
+
+    /**
+     * @return 每个字符都能单独映射（mapChar从不返回UNMAPPED）时返回true，此时结果与上下文无关
+     */
+    static boolean isContextFree(CharMappingService service) {
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            if (service.mapChar((char) c) == CharMappingService.UNMAPPED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 每个空白字符都被映射为空白字符（不删除、不替换）时返回true
+     */
+    static boolean keepsWhitespace(CharMappingService service) {
+        for (char c : WHITESPACE) {
+            int mapped = service.mapChar(c);
+            if (mapped != CharMappingService.UNMAPPED && (mapped < 0 || !Character.isWhitespace((char) mapped))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char[] whitespace() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            if (Character.isWhitespace((char) c)) {
+                chars.append((char) c);
+            }
+        }
+        return chars.toString().toCharArray();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 融合后的阶数（逐字符服务融合后算作一个阶段），主要用于测试和展示
+     * @return 阶段数
+     */
+    public int stageCount() {
+        return stages.length;
+    }
+
+    /**
+     * 融合阶段 - 多个相邻的逐字符映射服务合并成的一次遍历
+     * <p>
+     * 构建时预先计算ASCII字符经过所有服务后的映射结果，
+     * 热循环中ASCII字符只需查一次表；其他字符依次调用各服务的mapChar。
+     * 一旦遇到无法逐字符映射的字符，整段文本改为逐个服务依次执行。
+     * </p>
+     */
+    static final class FusedStage implements CharMappingService {
+        private final CharMappingService[] services;
+        private final int[] asciiTable = new int[128];
+        /** 所有服务都与上下文无关，流式执行时可以在任意位置切块 */
+        private final boolean contextFree;
+        private final boolean splittable;
+
+        FusedStage(CharMappingService[] services) {
+            this.services = services;
+            for (char c = 0; c < 128; c++) {
+                asciiTable[c] = mapThrough(c);
+            }
+            boolean free = true;
+            for (CharMappingService service : services) {
+                free &= isContextFree(service);
+            }
+            this.contextFree = free;
+            this.splittable = ServicePipeline.isSplittable(services);
+        }
+
+        private int mapThrough(char c) {
+            int mapped = c;
+            for (CharMappingService service : services) {
+                mapped = service.mapChar((char) mapped);
+                if (mapped < 0) {
+                    return mapped;
+                }
+            }
+            return mapped;
+        }
+
+        @Override
+        public int mapChar(char c) {
+            return c < 128 ? asciiTable[c] : mapThrough(c);
+        }
+
+        @Override
+        public String execute(String input) {
+            int length = input.length();
+            // 逐字符映射不会增加字符数，输出缓冲区按输入长度一次分配
+            char[] output = new char[length];
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if ((i & Cancellation.CHECK_MASK) == 0) {
+                    Cancellation.checkpoint();
+                }
+                char c = input.charAt(i);
+                int mapped = c < 128 ? asciiTable[c] : mapThrough(c);
+                if (mapped >= 0) {
+                    output[count++] = (char) mapped;
+                } else if (mapped == UNMAPPED) {
+                    return executeSequentially(input);
+                }
+            }
+            return new String(output, 0, count);
+        }
+
+        private String executeSequentially(String input) {
+            String text = input;
+            for (CharMappingService service : services) {
+                text = service.execute(text);
+            }
+            return text;
+        }
+
+        /**
+         * 流式执行，结果与对完整文本调用{@link #execute(String)}相同
+         * <p>
+         * 与{@link CaseConverter#convert(Reader, Writer)}一样，含有依赖上下文的服务时每块只处理到最后一个空白为止，
+         * 其余部分留到与下一块一起处理，连续{@link #MAX_TAIL}个字符都没有空白时直接切开。
+         * 空白被前面的服务删除后，原文的空白不再是单词边界，这时缓冲全部输入再处理。
+         * </p>
+         */
+        @Override
+        public void execute(Reader in, Writer out) throws IOException {
+            if (!splittable) {
+                CharMappingService.super.execute(in, out);
+                return;
+            }
+            ChunkReader chunks = new ChunkReader(in);
+            char[] buffer = chunks.buffer();
+            char[] output = new char[buffer.length];
+            StringBuilder tail = new StringBuilder();
+            int n;
+            while ((n = chunks.next()) != -1) {
+                int cut = n;
+                if (!contextFree) {
+                    while (cut > 0 && !Character.isWhitespace(buffer[cut - 1])) {
+                        cut--;
+                    }
+                    if (cut == 0) {
+                        if (tail.length() + n < MAX_TAIL) {
+                            tail.append(buffer, 0, n);
+                            continue;
+                        }
+                        cut = n;
+                    }
+                }
+                int count = tail.length() == 0 ? map(buffer, cut, output) : -1;
+                if (count >= 0) {
+                    out.write(output, 0, count);
+                } else {
+                    tail.append(buffer, 0, cut);
+                    out.write(execute(tail.toString()));
+                }
+                tail.setLength(0);
+                tail.append(buffer, cut, n - cut);
+            }
+            if (tail.length() > 0) {
+                out.write(execute(tail.toString()));
+            }
+            out.flush();
+        }
+
+        /**
+         * 逐字符映射字符数组的前length个字符
+         * @return 输出的字符数；遇到无法逐字符映射的字符时返回-1
+         */
+        private int map(char[] source, int length, char[] target) {
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                char c = source[i];
+                int mapped = c < 128 ? asciiTable[c] : mapThrough(c);
+                if (mapped >= 0) {
+                    target[count++] = (char) mapped;
+                } else if (mapped == UNMAPPED) {
+                    return -1;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public boolean requiresFullInput() {
+            return !splittable;
+        }
+
+        @Override
+        public boolean isSplittable() {
+            return splittable;
+        }
+
+        @Override
+        public String getName() {
+            StringBuilder name = new StringBuilder();
+            for (CharMappingService service : services) {
+                if (name.length() > 0) {
+                    name.append(" → ");
+                }
+                name.append(service.getName());
+            }
+            return name.toString();
+        }
+    }
+}
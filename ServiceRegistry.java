@@ -0,0 +1,705 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 服务注册表 - 所有前端共享的统一服务入口
+ * <p>
+ * 注册表持有每种文本处理服务的唯一实例（单例）。这些服务都是无状态的，
+ * 因此可以被Swing界面、JavaFX界面和命令行演示程序安全地共享，
+ * 不必在每次点击时重新创建匿名内部类对象。
+ * </p>
+ * <p>
+ * 每个服务都有一个从0开始的连续整数编号，调用方通过编号直接在数组中定位服务，
+ * 避免了对中文服务名称做字符串switch（需要计算哈希并逐个比较）。
+ * 下拉菜单中的选项顺序与编号一致，因此界面可以直接使用选中项的索引。
+ * </p>
+ * <p>
+ * 所有服务同时实现了{@link StreamingService}：逐字符或逐单词处理的服务提供原生的流式实现，
+ * 反转、重复和打乱服务需要完整输入，流式执行时会先缓冲全部输入。
+ * </p>
+ * <p>
+ * 注册的每个服务都包裹了统计包装器，调用次数、输入输出大小和延迟分布记录在
+ * {@link #getMetrics(int)}返回的{@link ServiceMetrics}中。
+ * </p>
+ */
+public final class ServiceRegistry {
+
+    /** 打招呼服务 */
+    public static final int GREETING = 0;
+    /** 反转服务 */
+    public static final int REVERSE = 1;
+    /** 重复服务（2次） */
+    public static final int REPEAT_2 = 2;
+    /** 重复服务（3次） */
+    public static final int REPEAT_3 = 3;
+    /** 重复服务（5次） */
+    public static final int REPEAT_5 = 4;
+    /** 大写转换服务 */
+    public static final int UPPERCASE = 5;
+    /** 小写转换服务 */
+    public static final int LOWERCASE = 6;
+    /** 字数统计服务 */
+    public static final int COUNT = 7;
+    /** 空格去除服务 */
+    public static final int REMOVE_SPACES = 8;
+    /** 首字母大写服务 */
+    public static final int CAPITALIZE = 9;
+    /** 加密服务（简单替换） */
+    public static final int ENCRYPT = 10;
+    /** 随机打乱服务 */
+    public static final int SHUFFLE = 11;
+    /** 解密服务（简单替换） */
+    public static final int DECRYPT = 12;
+    /** 词频统计服务（前10个单词） */
+    public static final int TOP_WORDS = 13;
+
+    /**
+     * 界面上显示的服务名称，下标即服务编号
+     */
+    private static final String[] LABELS = {
+        "打招呼服务",
+        "反转服务",
+        "重复服务（2次）",
+        "重复服务（3次）",
+        "重复服务（5次）",
+        "大写转换服务",
+        "小写转换服务",
+        "字数统计服务",
+        "空格去除服务",
+        "首字母大写服务",
+        "加密服务（简单替换）",
+        "随机打乱服务",
+        "解密服务（简单替换）",
+        "词频统计服务"
+    };
+
+    /**
+     * 命令行等非图形前端使用的简短英文标识，下标即服务编号
+     */
+    private static final String[] KEYS = {
+        "greeting",
+        "reverse",
+        "repeat2",
+        "repeat3",
+        "repeat5",
+        "upper",
+        "lower",
+        "count",
+        "nospace",
+        "capitalize",
+        "encrypt",
+        "shuffle",
+        "decrypt",
+        "topwords"
+    };
+
+    /**
+     * 打招呼服务（匿名内部类单例）
+     */
+    private static final StreamingService GREETING_SERVICE = new StreamingService() {
+        @Override
+        public String execute(String input) {
+            return "Hello, " + input + "! Welcome to our service!";
+        }
+
+        @Override
+        public void execute(Reader in, Writer out) throws IOException {
+            out.write("Hello, ");
+            ChunkReader chunks = new ChunkReader(in);
+            int n;
+            while ((n = chunks.next()) != -1) {
+                out.write(chunks.buffer(), 0, n);
+            }
+            out.write("! Welcome to our service!");
+            out.flush();
+        }
+
+        @Override
+        public boolean requiresFullInput() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return "Greeting Service";
+        }
+    };
+
+    /**
+     * 反转服务（匿名内部类单例）
+     */
+    private static final StreamingService REVERSE_SERVICE = new StreamingService() {
+        @Override
+        public String execute(String input) {
+            StringBuilder reversed = new StringBuilder(input);
+            return reversed.reverse().toString();
+        }
+
+        @Override
+        public CharSequence executeLazy(String input) {
+            // 反转视图按下标反向映射，不复制输入
+            return TextViews.reverse(input);
+        }
+
+        @Override
+        public String getName() {
+            return "Reverse Service";
+        }
+    };
+
+    /**
+     * 大写转换服务（匿名内部类单例），使用Locale.ROOT
+     */
+    private static final CharMappingService UPPERCASE_SERVICE = caseConversion(CaseConverter.upper(Locale.ROOT));
+
+    /**
+     * 小写转换服务（匿名内部类单例），使用Locale.ROOT
+     */
+    private static final CharMappingService LOWERCASE_SERVICE = caseConversion(CaseConverter.lower(Locale.ROOT));
+
+    /**
+     * 字数统计服务（匿名内部类单例），统计字符数、单词数、行数、UTF-8字节数和码点数
+     */
+    private static final StreamingService COUNT_SERVICE = new StreamingService() {
+        @Override
+        public String execute(String in) {
+            // 单遍扫描统计，不编译正则表达式，也不为单词和行创建数组；大文本在多个核心上并行统计
+            WordCounter counter = in.length() >= WordCounter.PARALLEL_THRESHOLD
+                    ? WordCounter.countParallel(in, ForkJoinPool.commonPool())
+                    : WordCounter.count(in);
+            return counter.format();
+        }
+
+        @Override
+        public void execute(Reader in, Writer out) throws IOException {
+            WordCounter counter = new WordCounter();
+            ChunkReader chunks = new ChunkReader(in);
+            int n;
+            while ((n = chunks.next()) != -1) {
+                counter.accept(chunks.buffer(), 0, n);
+            }
+            out.write(counter.format());
+            out.flush();
+        }
+
+        @Override
+        public boolean requiresFullInput() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return "Count Service";
+        }
+    };
+
+    /**
+     * 去除所有空白的正则表达式变换，空格去除服务的非流式执行委托给它
+     */
+    private static final PatternTransformService WHITESPACE_REMOVAL = PatternTransformService.replace("\\s+", "");
+
+    /**
+     * 空格去除服务（匿名内部类单例）
+     */
+    private static final CharMappingService REMOVE_SPACES_SERVICE = new CharMappingService() {
+        @Override
+        public String execute(String in) {
+            // \s+替换为空属于简单字符类，由手写的扫描循环处理，不经过正则引擎
+            return WHITESPACE_REMOVAL.execute(in);
+        }
+
+        @Override
+        public void execute(Reader in, Writer out) throws IOException {
+            ChunkReader chunks = new ChunkReader(in);
+            char[] buffer = chunks.buffer();
+            int n;
+            while ((n = chunks.next()) != -1) {
+                // 在缓冲区内原地压缩，跳过\s匹配的字符
+                int kept = 0;
+                for (int i = 0; i < n; i++) {
+                    char c = buffer[i];
+                    if (!WordCounter.isSpace(c)) {
+                        buffer[kept++] = c;
+                    }
+                }
+                out.write(buffer, 0, kept);
+            }
+            out.flush();
+        }
+
+        @Override
+        public int mapChar(char c) {
+            return WordCounter.isSpace(c) ? DELETE : c;
+        }
+
+        @Override
+        public String getName() {
+            return "Remove Spaces Service";
+        }
+    };
+
+    /**
+     * 首字母大写服务（匿名内部类单例），使用Locale.ROOT
+     */
+    private static final StreamingService CAPITALIZE_SERVICE = capitalization(new Capitalizer(Locale.ROOT));
+
+    /**
+     * 加密服务（匿名内部类单例），字母向后移动3位的凯撒加密
+     */
+    private static final CharMappingService ENCRYPT_SERVICE = caesar(3, false);
+
+    /**
+     * 解密服务（匿名内部类单例），把加密服务的结果还原
+     */
+    private static final CharMappingService DECRYPT_SERVICE = caesar(3, true);
+
+    /**
+     * 随机打乱服务（匿名内部类单例），按码点打乱，每次结果都不同
+     */
+    private static final StreamingService SHUFFLE_SERVICE = shuffle(new ShuffleEngine(true));
+
+    /**
+     * 词频统计服务（匿名内部类单例），列出出现次数最多的10个单词
+     */
+    private static final StreamingService TOP_WORDS_SERVICE = topWords(10, 1);
+
+    /**
+     * 按编号排列的服务运行统计
+     */
+    private static final ServiceMetrics[] METRICS = new ServiceMetrics[KEYS.length];
+
+    /**
+     * 按编号排列的服务实例表，每个服务都已包裹统计包装器
+     */
+    private static final StreamingService[] SERVICES = instrument(new StreamingService[] {
+        GREETING_SERVICE,
+        REVERSE_SERVICE,
+        repeat(2),
+        repeat(3),
+        repeat(5),
+        UPPERCASE_SERVICE,
+        LOWERCASE_SERVICE,
+        COUNT_SERVICE,
+        REMOVE_SPACES_SERVICE,
+        CAPITALIZE_SERVICE,
+        ENCRYPT_SERVICE,
+        SHUFFLE_SERVICE,
+        DECRYPT_SERVICE,
+        TOP_WORDS_SERVICE
+    });
+
+    /**
+     * 按编号排列的字节服务，逐字符映射服务直接处理UTF-8字节，其余服务经过解码、编码适配器，
+     * 两者的调用都计入对应服务的运行统计
+     */
+    private static final ByteService[] BYTE_SERVICES = byteServices(SERVICES);
+
+    private ServiceRegistry() {
+    }
+
+    private static ByteService[] byteServices(StreamingService[] services) {
+        ByteService[] result = new ByteService[services.length];
+        for (int i = 0; i < services.length; i++) {
+            result[i] = METRICS[i].bytes(services[i]);
+        }
+        return result;
+    }
+
+    private static StreamingService[] instrument(StreamingService[] services) {
+        for (int i = 0; i < services.length; i++) {
+            METRICS[i] = new ServiceMetrics(KEYS[i], services[i].getName());
+            services[i] = METRICS[i].instrument(services[i]);
+        }
+        return services;
+    }
+
+    /**
+     * 创建一个重复服务
+     * <p>
+     * 匿名内部类捕获了外部的times参数。常用的2、3、5次已经作为单例注册，
+     * 其他次数的重复服务由调用方按需创建并自行复用。
+     * {@link Service#executeLazy(String)}返回O(1)的重复视图，流式执行时逐块写出，
+     * 因此重复次数可以达到数百万次而不必生成完整的结果字符串。
+     * </p>
+     * @param times 重复次数
+     * @return 重复服务实例
+     */
+    public static StreamingService repeat(final int times) {
+        return new StreamingService() {
+            @Override
+            public String execute(String input) {
+                // 视图按最终长度一次分配结果数组
+                return TextViews.repeat(input, times, " ").toString();
+            }
+
+            @Override
+            public CharSequence executeLazy(String input) {
+                return TextViews.repeat(input, times, " ");
+            }
+
+            @Override
+            public void execute(Reader in, Writer out) throws IOException {
+                // 输入需要完整读入，输出直接逐块写出，长度不受CharSequence的限制
+                StringBuilder text = new StringBuilder();
+                char[] buffer = new char[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    text.append(buffer, 0, n);
+                }
+                TextViews.writeRepeated(text.toString(), times, " ", out);
+                out.flush();
+            }
+
+            @Override
+            public String getName() {
+                return "Repeat Service (" + times + " times)";
+            }
+        };
+    }
+
+    /**
+     * 创建一个大小写转换服务
+     * <p>
+     * 匿名内部类捕获了{@link CaseConverter}实例：ASCII和Latin-1文本查表转换，
+     * 没有字符需要改变时直接返回输入的String，其他文本按完整的Unicode语义转换。
+     * 使用Locale.ROOT的大写、小写转换服务已经作为单例注册。
+     * </p>
+     * @param converter 大小写转换器
+     * @return 大小写转换服务
+     */
+    public static CharMappingService caseConversion(final CaseConverter converter) {
+        final String name = (converter.isUpper() ? "Uppercase Service" : "Lowercase Service")
+                + (Locale.ROOT.equals(converter.getLocale()) ? "" : " (" + converter.getLocale().toLanguageTag() + ")");
+        return new CharMappingService() {
+            @Override
+            public String execute(String in) {
+                return converter.convert(in);
+            }
+
+            @Override
+            public void execute(Reader in, Writer out) throws IOException {
+                converter.convert(in, out);
+            }
+
+            @Override
+            public int mapChar(char c) {
+                return converter.mapChar(c);
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * 创建一个首字母大写服务
+     * <p>
+     * 匿名内部类捕获了{@link Capitalizer}实例：单遍扫描，保留原有的空格、制表符和换行，
+     * 可以流式处理，也可以在空白处切分后并行处理。使用Locale.ROOT的服务已经作为单例注册。
+     * </p>
+     * @param capitalizer 首字母大写引擎
+     * @return 首字母大写服务
+     */
+    public static StreamingService capitalization(final Capitalizer capitalizer) {
+        final String name = "Capitalize Service"
+                + (Locale.ROOT.equals(capitalizer.getLocale()) ? "" : " (" + capitalizer.getLocale().toLanguageTag() + ")");
+        return new StreamingService() {
+            @Override
+            public String execute(String in) {
+                return capitalizer.capitalize(in);
+            }
+
+            @Override
+            public void execute(Reader in, Writer out) throws IOException {
+                capitalizer.capitalize(in, out);
+            }
+
+            @Override
+            public boolean requiresFullInput() {
+                return false;
+            }
+
+            @Override
+            public boolean isSplittable() {
+                return true;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * 创建一个凯撒加密或解密服务
+     * <p>
+     * 匿名内部类捕获了{@link CaesarCipher}实例，字符映射通过查表完成，
+     * 超过{@link CaesarCipher#PARALLEL_THRESHOLD}个字符的输入在公共fork-join线程池中并行处理。
+     * 位移为3的加密、解密服务已经作为单例注册。
+     * </p>
+     * @param shift 位移量
+     * @param decrypt true表示解密服务，false表示加密服务
+     * @return 凯撒加密或解密服务
+     */
+    public static CharMappingService caesar(int shift, final boolean decrypt) {
+        final CaesarCipher cipher = new CaesarCipher(shift);
+        final String name = (decrypt ? "Decryption Service" : "Encryption Service")
+                + (cipher.getShift() == 3 ? "" : " (shift " + cipher.getShift() + ")");
+        return new CharMappingService() {
+            @Override
+            public String execute(String in) {
+                if (in.length() >= CaesarCipher.PARALLEL_THRESHOLD) {
+                    return decrypt ? cipher.decryptParallel(in, ForkJoinPool.commonPool())
+                            : cipher.encryptParallel(in, ForkJoinPool.commonPool());
+                }
+                return decrypt ? cipher.decrypt(in) : cipher.encrypt(in);
+            }
+
+            @Override
+            public void execute(Reader in, Writer out) throws IOException {
+                ChunkReader chunks = new ChunkReader(in);
+                char[] buffer = chunks.buffer();
+                int n;
+                while ((n = chunks.next()) != -1) {
+                    if (decrypt) {
+                        cipher.decryptInPlace(buffer, 0, n);
+                    } else {
+                        cipher.encryptInPlace(buffer, 0, n);
+                    }
+                    out.write(buffer, 0, n);
+                }
+                out.flush();
+            }
+
+            @Override
+            public int mapChar(char c) {
+                return decrypt ? cipher.decrypt(c) : cipher.encrypt(c);
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * 创建一个随机打乱服务
+     * <p>
+     * 匿名内部类捕获了{@link ShuffleEngine}实例，
+     * 超过{@link ShuffleEngine#PARALLEL_THRESHOLD}个字符的输入在公共fork-join线程池中并行打乱。
+     * 指定了种子的打乱服务结果可复现，因此视为确定性服务，可以被结果缓存。
+     * 不指定种子、按码点打乱的服务已经作为单例注册。
+     * </p>
+     * @param engine 打乱引擎
+     * @return 随机打乱服务
+     */
+    public static StreamingService shuffle(final ShuffleEngine engine) {
+        final String name = "Shuffle Service"
+                + (engine.isCodePoints() ? "" : " (UTF-16 units)")
+                + (engine.isSeeded() ? " (seeded)" : "");
+        return new StreamingService() {
+            @Override
+            public String execute(String in) {
+                if (in.length() >= ShuffleEngine.PARALLEL_THRESHOLD) {
+                    return engine.shuffleParallel(in, ForkJoinPool.commonPool());
+                }
+                return engine.shuffle(in);
+            }
+
+            @Override
+            public boolean isDeterministic() {
+                return engine.isSeeded();
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * 创建一个词频统计服务
+     * <p>
+     * 匿名内部类捕获了名次数和词组长度。次数记录在以单词哈希值为键的{@link LongIntHashMap}中，
+     * 只为前K名保存文本（见{@link TopKCounter}）；大文本在多个核心上并行统计后合并，
+     * 流式执行时逐块更新次数和前K名，内存占用只与不同单词的数量有关，与输入大小无关。
+     * 统计前10个单词的服务已经作为单例注册。
+     * </p>
+     * @param k 列出的名次数
+     * @param n 每个词组的单词数，1表示统计单词
+     * @return 词频统计服务
+     */
+    public static StreamingService topWords(final int k, final int n) {
+        if (k < 1 || n < 1) {
+            throw new IllegalArgumentException("名次数和词组长度都必须大于0: k=" + k + ", n=" + n);
+        }
+        final String name = "Top Words Service (top " + k + (n == 1 ? "" : ", " + n + "-grams") + ")";
+        return new StreamingService() {
+            @Override
+            public String execute(String in) {
+                TopKCounter counter = in.length() >= TopKCounter.PARALLEL_THRESHOLD
+                        ? TopKCounter.countParallel(in, k, n, ForkJoinPool.commonPool())
+                        : TopKCounter.count(in, k, n);
+                return counter.format();
+            }
+
+            @Override
+            public void execute(Reader in, Writer out) throws IOException {
+                TopKCounter counter = new TopKCounter(k, n);
+                ChunkReader chunks = new ChunkReader(in);
+                int length;
+                while ((length = chunks.next()) != -1) {
+                    counter.accept(chunks.buffer(), 0, length);
+                }
+                counter.finish();
+                out.write(counter.format());
+                out.flush();
+            }
+
+            @Override
+            public boolean requiresFullInput() {
+                return false;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * 获取已注册服务的数量
+     * @return 服务数量，合法编号为[0, size())
+     */
+    public static int size() {
+        return SERVICES.length;
+    }
+
+    /**
+     * 根据编号获取服务单例
+     * @param id 服务编号
+     * @return 服务实例
+     * @throws IllegalArgumentException 编号不存在时抛出
+     */
+    public static Service get(int id) {
+        checkId(id);
+        return SERVICES[id];
+    }
+
+    /**
+     * 使用指定编号的服务处理文本
+     * @param id 服务编号
+     * @param input 输入文本
+     * @return 处理后的文本结果
+     */
+    public static String execute(int id, String input) {
+        return get(id).execute(input);
+    }
+
+    /**
+     * 根据编号获取服务的流式版本
+     * @param id 服务编号
+     * @return 流式服务实例
+     */
+    public static StreamingService getStreaming(int id) {
+        checkId(id);
+        return SERVICES[id];
+    }
+
+    /**
+     * 根据编号获取直接处理UTF-8字节的服务，供文件和网络等以字节为单位的路径使用
+     * @param id 服务编号
+     * @return 字节服务实例
+     */
+    public static ByteService getBytes(int id) {
+        checkId(id);
+        return BYTE_SERVICES[id];
+    }
+
+    /**
+     * 获取服务的运行统计
+     * @param id 服务编号
+     * @return 运行统计
+     */
+    public static ServiceMetrics getMetrics(int id) {
+        checkId(id);
+        return METRICS[id];
+    }
+
+    /**
+     * 把所有服务的运行统计注册为JMX MBean，重复调用是安全的
+     */
+    public static void registerMBeans() {
+        for (ServiceMetrics metrics : METRICS) {
+            metrics.registerMBean();
+        }
+    }
+
+    /**
+     * 获取服务在界面上显示的中文名称
+     * @param id 服务编号
+     * @return 中文名称
+     */
+    public static String getLabel(int id) {
+        checkId(id);
+        return LABELS[id];
+    }
+
+    /**
+     * 获取服务的简短英文标识
+     * @param id 服务编号
+     * @return 英文标识，例如"upper"
+     */
+    public static String getKey(int id) {
+        checkId(id);
+        return KEYS[id];
+    }
+
+    /**
+     * 获取所有服务的中文名称，顺序与编号一致，可直接用于下拉菜单
+     * @return 名称数组的副本
+     */
+    public static String[] getLabels() {
+        return LABELS.clone();
+    }
+
+    /**
+     * 根据名称查找服务编号
+     * <p>
+     * 依次匹配英文标识、中文名称和服务的getName()（忽略大小写），
+     * 仅用于启动时解析命令行参数等非热点路径。
+     * </p>
+     * @param name 英文标识、中文名称或服务名称
+     * @return 服务编号，找不到时返回-1
+     */
+    public static int indexOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        for (int i = 0; i < SERVICES.length; i++) {
+            if (KEYS[i].equalsIgnoreCase(name)
+                    || LABELS[i].equals(name)
+                    || SERVICES[i].getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void checkId(int id) {
+        if (id < 0 || id >= SERVICES.length) {
+            throw new IllegalArgumentException("未知服务编号: " + id);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package m10d20.project2;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+
+/**
+ * 服务统计面板 - 实时显示每个服务的调用次数、失败次数、输入输出大小和延迟分布
+ * <p>
+ * 数据来自{@link ServiceRegistry#getMetrics(int)}，面板可见时每秒刷新一次，
+ * 不可见时停止刷新。延迟单位为微秒，百分位数的相对误差小于2%。
+ * </p>
+ */
+class ServiceStatsPanel extends JPanel {
+
+    private static final String[] COLUMNS = {
+        "服务", "调用次数", "失败", "输入字符", "输出字符", "平均(µs)", "p50(µs)", "p99(µs)", "p999(µs)", "最大(µs)"
+    };
+
+    private final Object[][] rows = new Object[ServiceRegistry.size()][COLUMNS.length];
+    private final AbstractTableModel model;
+    private final Timer refreshTimer;
+
+    ServiceStatsPanel() {
+        super(new BorderLayout(5, 5));
+        model = new AbstractTableModel() {
+            @Override
+            public int getRowCount() {
+                return rows.length;
+            }
+
+            @Override
+            public int getColumnCount() {
+                return COLUMNS.length;
+            }
+
+            @Override
+            public String getColumnName(int column) {
+                return COLUMNS[column];
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 0 ? String.class : Number.class;
+            }
+
+            @Override
+            public Object getValueAt(int row, int column) {
+                return rows[row][column];
+            }
+        };
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(160);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JButton resetButton = new JButton("清空统计");
+        resetButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                for (int id = 0; id < ServiceRegistry.size(); id++) {
+                    ServiceRegistry.getMetrics(id).reset();
+                }
+                refresh();
+            }
+        });
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        bottom.add(resetButton);
+        add(bottom, BorderLayout.SOUTH);
+
+        refreshTimer = new Timer(1000, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        // 面板显示时开始刷新，隐藏时停止，避免窗口关闭后仍在后台计算百分位数
+        addHierarchyListener(new HierarchyListener() {
+            @Override
+            public void hierarchyChanged(HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) == 0) {
+                    return;
+                }
+                if (isShowing()) {
+                    refresh();
+                    refreshTimer.start();
+                } else {
+                    refreshTimer.stop();
+                }
+            }
+        });
+        refresh();
+    }
+
+    /**
+     * 重新读取所有服务的统计数据
+     */
+    void refresh() {
+        for (int id = 0; id < rows.length; id++) {
+            ServiceMetrics metrics = ServiceRegistry.getMetrics(id);
+            LatencyHistogram.Snapshot latency = metrics.latencySnapshot();
+            Object[] row = rows[id];
+            row[0] = ServiceRegistry.getLabel(id);
+            row[1] = metrics.getCalls();
+            row[2] = metrics.getErrors();
+            row[3] = metrics.getInputChars();
+            row[4] = metrics.getOutputChars();
+            row[5] = micros(latency.mean());
+            row[6] = micros(latency.percentile(50));
+            row[7] = micros(latency.percentile(99));
+            row[8] = micros(latency.percentile(99.9));
+            row[9] = micros(latency.max());
+        }
+        model.fireTableRowsUpdated(0, rows.length - 1);
+    }
+
+    private static double micros(double nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+}
@@ -7,6 +7,9 @@ import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 /**
  * 服务可视化平台，使用JavaFX创建图形用户界面
  */
@@ -34,14 +37,8 @@ public class ServiceVisualizer extends Application {
         
         Label serviceLabel = new Label("选择服务:");
         ComboBox<String> serviceComboBox = new ComboBox<>();
-        serviceComboBox.getItems().addAll(
-            "打招呼服务",
-            "反转服务",
-            "重复服务（2次）",
-            "重复服务（3次）",
-            "重复服务（5次）",
-            "大写转换服务"
-        );
+        // 选项顺序与注册表中的服务编号一致
+        serviceComboBox.getItems().addAll(ServiceRegistry.getLabels());
         serviceComboBox.getSelectionModel().selectFirst();
         
         Button executeButton = new Button("执行服务");
@@ -73,8 +70,8 @@ public class ServiceVisualizer extends Application {
                 return;
             }
             
-            String selectedService = serviceComboBox.getSelectionModel().getSelectedItem();
-            String result = processWithService(input, selectedService);
+            int serviceId = serviceComboBox.getSelectionModel().getSelectedIndex();
+            String result = processWithService(input, serviceId);
             resultArea.setText(result);
         });
         
@@ -87,35 +84,19 @@ public class ServiceVisualizer extends Application {
     
     /**
      * 根据选择的服务处理输入文本
+     * <p>
+     * 与Swing版本共享{@link ServiceRegistry}中的服务单例和{@link ResultCache}结果缓存，按编号直接分派。
+     * 开启了{@link ExecutionLog}时同样记录每次执行。
+     * </p>
      */
-    private String processWithService(String input, String serviceType) {
-        switch (serviceType) {
-            case "打招呼服务":
-                return ServiceDemo.getGreetingService().execute(input);
-            case "反转服务":
-                return ServiceDemo.getReverseService().execute(input);
-            case "重复服务（2次）":
-                return ServiceDemo.getRepeatService(2).execute(input);
-            case "重复服务（3次）":
-                return ServiceDemo.getRepeatService(3).execute(input);
-            case "重复服务（5次）":
-                return ServiceDemo.getRepeatService(5).execute(input);
-            case "大写转换服务":
-                // 使用匿名内部类直接实现
-                return new Service() {
-                    @Override
-                    public String execute(String in) {
-                        return in.toUpperCase();
-                    }
-                    
-                    @Override
-                    public String getName() {
-                        return "大写转换服务";
-                    }
-                }.execute(input);
-            default:
-                return "未知服务类型";
+    private String processWithService(String input, int serviceId) {
+        long start = System.nanoTime();
+        String result = ResultCache.shared().execute(serviceId, ServiceRegistry.get(serviceId), input);
+        ExecutionLog log = ExecutionLog.active();
+        if (log != null) {
+            log.record(serviceId, input, result, System.nanoTime() - start);
         }
+        return result;
     }
     
     /**
@@ -129,7 +110,14 @@ public class ServiceVisualizer extends Application {
         alert.showAndWait();
     }
     
-    public static void main(String[] args) {
+    /**
+     * @param args 可选的执行日志目录，指定时记录每次执行（见{@link ExecutionLog}）
+     * @throws IOException 无法打开执行日志时抛出
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            ServiceVisualizerSwing.installExecutionLog(Paths.get(args[0]));
+        }
         launch(args);
     }
 }
\ No newline at end of file
@@ -1,45 +1,99 @@
 package m10d20.project2;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 基于Swing的服务可视化平台 - 接口+匿名内部类设计模式的综合应用
  * <p>
- * 本类是"接口+匿名内部类"设计模式的完整实现示例。通过定义统一的Service接口，
- * 并使用匿名内部类实现多种不同的文本处理服务，展示了Java面向对象编程的灵活性。
+ * 本类是"接口+匿名内部类"设计模式的完整实现示例。所有服务都实现统一的Service接口，
+ * 并以匿名内部类单例的形式注册在{@link ServiceRegistry}中，界面只负责选择和调用，
+ * 展示了Java面向对象编程的灵活性。
+ * </p>
+ * <p>
+ * 服务在后台工作线程中执行，事件调度线程只负责界面交互，
+ * 因此即使处理很大的输入，窗口也不会失去响应；执行过程中可以随时取消。
+ * </p>
+ * <p>
+ * 结果写入{@link ResultBuffer}，由{@link PagedResultView}只渲染可见的一页，
+ * 数十MB的结果也不会让界面卡顿；流式服务的输出在执行过程中就会陆续显示出来。
+ * </p>
+ * <p>
+ * 勾选"实时预览"后，输入停顿{@link #LIVE_DELAY_MS}毫秒即自动执行选中的服务。
+ * 逐字符或逐单词的服务由{@link LivePreview}只重新计算被编辑的区域，并把结果替换到原来的位置，
+ * 编辑很大的文档时每次按键的更新也只需要不到1毫秒；其余服务仍在后台完整执行。
+ * 增量预览按文档原样处理，首尾空白也在结果中，而"执行服务"会先去掉首尾空白，两者只在首尾空白上不同。
+ * </p>
+ * <p>
+ * "全部执行"由{@link ServiceFanOut}把输入同时交给所有服务，结果按完成顺序逐行加入对比表格，
+ * 表格列出每个服务的耗时和分配的内存，选中一行即可在下方查看该服务的完整结果。
  * </p>
  */
 public class ServiceVisualizerSwing extends JFrame {
-    private JTextField inputField;
-    private JTextArea resultArea;
-    private JComboBox<String> serviceComboBox;
+    /** 实时预览的防抖延迟：输入停顿这么久之后才更新结果 */
+    private static final int LIVE_DELAY_MS = 150;
+    private static final String PAGED_CARD = "paged";
+    private static final String LIVE_CARD = "live";
+    private static final String FAN_OUT_CARD = "fanOut";
+    /** 对比表格中结果预览的最大字符数 */
+    private static final int PREVIEW_CHARS = 80;
     
-    /**
-     * 服务接口 - 所有文本处理服务的统一抽象
-     * <p>
-     * 这个接口定义了文本处理服务必须实现的两个核心方法：
-     * 1. execute() - 执行具体的文本处理逻辑
-     * 2. getName() - 返回服务的名称标识
-     * 通过这个接口，我们可以统一调用不同的服务实现，体现了多态特性。
-     * </p>
-     */
-    interface Service {
-          /**
-           * 执行文本处理服务
-           * @param input 输入的文本数据
-           * @return 处理后的文本结果
-           */
-          String execute(String input);
-          
-          /**
-           * 获取服务的名称标识
-           * @return 服务的名称
-           */
-          String getName();
-      }
+    private JTextArea inputField;
+    private PagedResultView resultView;
+    /** 实时预览的结果，增量修改直接替换文档中的对应区间 */
+    private JTextArea liveArea;
+    private JPanel resultCards;
+    private JCheckBox liveCheckBox;
+    private Timer liveTimer;
+    /** 当前服务的增量预览状态，服务不支持增量预览或未开启实时预览时为null */
+    private LivePreview livePreview;
+    /** 正在后台对整个输入执行的第一次预览计算，完成后为null */
+    private Future<?> liveReset;
+    /** 全部执行的对比表格，每行一个服务 */
+    private DefaultTableModel fanOutModel;
+    private JTable fanOutTable;
+    private PagedResultView fanOutDetail;
+    private JLabel fanOutLabel;
+    /** 当前这次全部执行的各服务输出，与表格模型的行一一对应 */
+    private List<ServiceFanOut.Result> fanOutResults = new ArrayList<>();
+    private JComboBox<String> serviceComboBox;
+    private JLabel chainLabel;
+    private JLabel cacheLabel;
+    private JDialog statsDialog;
+    /** 服务链中依次执行的服务编号 */
+    private final List<Integer> chainIds = new ArrayList<>();
+    private JButton executeButton;
+    private JButton executeChainButton;
+    private JButton runAllButton;
+    private JButton cancelButton;
+    private JProgressBar progressBar;
+    private Timer elapsedTimer;
+    /** 正在后台执行的任务 */
+    private Future<?> runningTask;
+    private long runStartNanos;
+    /** 每次开始或取消执行时递增，用于丢弃已过期任务的结果 */
+    private int runGeneration;
     
     public ServiceVisualizerSwing() {
         super("服务可视化平台");
@@ -61,30 +115,68 @@ public class ServiceVisualizerSwing extends JFrame {
         
         // 创建输入面板
         JPanel inputPanel = new JPanel();
-        inputPanel.setLayout(new GridLayout(4, 1, 5, 5));
+        inputPanel.setLayout(new BorderLayout(5, 5));
         
         JLabel inputLabel = new JLabel("输入文本:");
-        inputField = new JTextField(20);
+        inputField = new JTextArea(4, 20);
+        inputField.setLineWrap(true);
         inputField.setToolTipText("请输入要处理的文本...");
+        inputField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                if (livePreview != null) {
+                    livePreview.insert(e.getOffset(), e.getLength());
+                }
+                scheduleLiveUpdate();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                if (livePreview != null) {
+                    livePreview.remove(e.getOffset(), e.getLength());
+                }
+                scheduleLiveUpdate();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // 纯文本文档没有属性变化
+            }
+        });
         
         JLabel serviceLabel = new JLabel("选择服务:");
-        String[] services = {
-            "打招呼服务",
-            "反转服务",
-            "重复服务（2次）",
-            "重复服务（3次）",
-            "重复服务（5次）",
-            "大写转换服务",
-            "小写转换服务",
-            "字数统计服务",
-            "空格去除服务",
-            "首字母大写服务",
-            "加密服务（简单替换）",
-            "随机打乱服务"
-        };
-        serviceComboBox = new JComboBox<>(services);
+        // 下拉菜单的选项顺序与注册表中的服务编号一致
+        serviceComboBox = new JComboBox<>(ServiceRegistry.getLabels());
+        serviceComboBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (liveCheckBox.isSelected()) {
+                    startLivePreview();
+                }
+            }
+        });
         
-        JButton executeButton = new JButton("执行服务");
+        liveCheckBox = new JCheckBox("实时预览");
+        liveCheckBox.setToolTipText("增量预览处理整个输入，保留首尾空白；执行服务时会先去掉首尾空白");
+        liveCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (liveCheckBox.isSelected()) {
+                    startLivePreview();
+                } else {
+                    stopLivePreview();
+                }
+            }
+        });
+        liveTimer = new Timer(LIVE_DELAY_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateLivePreview();
+            }
+        });
+        liveTimer.setRepeats(false);
+        
+        executeButton = new JButton("执行服务");
         executeButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -92,29 +184,130 @@ public class ServiceVisualizerSwing extends JFrame {
             }
         });
         
-        inputPanel.add(inputLabel);
-        inputPanel.add(inputField);
-        inputPanel.add(serviceLabel);
-        inputPanel.add(serviceComboBox);
+        JButton addToChainButton = new JButton("加入服务链");
+        addToChainButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                chainIds.add(serviceComboBox.getSelectedIndex());
+                updateChainLabel();
+            }
+        });
+        
+        executeChainButton = new JButton("执行服务链");
+        executeChainButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                executeChain();
+            }
+        });
+        
+        runAllButton = new JButton("全部执行");
+        runAllButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                executeAll();
+            }
+        });
+        
+        JButton clearChainButton = new JButton("清空服务链");
+        clearChainButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                chainIds.clear();
+                updateChainLabel();
+            }
+        });
+        
+        cancelButton = new JButton("取消");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                cancelExecution();
+            }
+        });
+        
+        progressBar = new JProgressBar();
+        progressBar.setStringPainted(true);
+        progressBar.setString("就绪");
+        elapsedTimer = new Timer(100, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                double seconds = (System.nanoTime() - runStartNanos) / 1e9;
+                progressBar.setString(String.format("正在执行… 已用时 %.1f 秒", seconds));
+                resultView.refresh();
+            }
+        });
+        
+        final JCheckBox cacheCheckBox = new JCheckBox("启用结果缓存", ResultCache.shared().isEnabled());
+        cacheCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ResultCache.shared().setEnabled(cacheCheckBox.isSelected());
+                updateCacheLabel();
+            }
+        });
+        cacheLabel = new JLabel();
+        updateCacheLabel();
+        
+        JButton statsButton = new JButton("服务统计");
+        statsButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showStatsDialog();
+            }
+        });
+        
+        JPanel serviceRow = new JPanel(new BorderLayout(5, 5));
+        serviceRow.add(serviceLabel, BorderLayout.WEST);
+        serviceRow.add(serviceComboBox, BorderLayout.CENTER);
+        serviceRow.add(liveCheckBox, BorderLayout.EAST);
+        inputPanel.add(inputLabel, BorderLayout.NORTH);
+        inputPanel.add(new JScrollPane(inputField), BorderLayout.CENTER);
+        inputPanel.add(serviceRow, BorderLayout.SOUTH);
         
         // 创建按钮面板
         JPanel buttonPanel = new JPanel();
-        buttonPanel.setLayout(new FlowLayout(FlowLayout.CENTER));
-        buttonPanel.add(executeButton);
+        buttonPanel.setLayout(new GridLayout(4, 1, 5, 5));
+        JPanel buttonRow = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        buttonRow.add(executeButton);
+        buttonRow.add(addToChainButton);
+        buttonRow.add(executeChainButton);
+        buttonRow.add(clearChainButton);
+        buttonRow.add(runAllButton);
+        chainLabel = new JLabel();
+        chainLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        updateChainLabel();
+        JPanel progressRow = new JPanel(new BorderLayout(5, 5));
+        progressRow.add(progressBar, BorderLayout.CENTER);
+        progressRow.add(cancelButton, BorderLayout.EAST);
+        JPanel cacheRow = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        cacheRow.add(cacheCheckBox);
+        cacheRow.add(statsButton);
+        cacheRow.add(cacheLabel);
+        buttonPanel.add(buttonRow);
+        buttonPanel.add(chainLabel);
+        buttonPanel.add(cacheRow);
+        buttonPanel.add(progressRow);
         
         // 创建结果面板
         JPanel resultPanel = new JPanel();
         resultPanel.setLayout(new BorderLayout(5, 5));
         
         JLabel resultLabel = new JLabel("服务执行结果:");
-        resultArea = new JTextArea(10, 40);
-        resultArea.setEditable(false);
-        resultArea.setLineWrap(true);
-        resultArea.setWrapStyleWord(true);
-        JScrollPane scrollPane = new JScrollPane(resultArea);
+        resultView = new PagedResultView();
+        liveArea = new JTextArea();
+        liveArea.setEditable(false);
+        // 不自动换行：换行排版要遍历整个文档，大结果每次修改都会让界面卡顿；不换行时只绘制可见的行
+        liveArea.setLineWrap(false);
+        // 两种结果视图叠放在一起，实时预览增量更新时显示liveArea
+        resultCards = new JPanel(new CardLayout());
+        resultCards.add(resultView, PAGED_CARD);
+        resultCards.add(new JScrollPane(liveArea), LIVE_CARD);
+        resultCards.add(createFanOutPanel(), FAN_OUT_CARD);
         
         resultPanel.add(resultLabel, BorderLayout.NORTH);
-        resultPanel.add(scrollPane, BorderLayout.CENTER);
+        resultPanel.add(resultCards, BorderLayout.CENTER);
         
         // 创建中央面板
         JPanel centerPanel = new JPanel();
@@ -127,273 +320,562 @@ public class ServiceVisualizerSwing extends JFrame {
         
         // 设置窗口属性
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(600, 500); // 设置默认大小
+        setSize(640, 640); // 设置默认大小
         setLocationRelativeTo(null); // 居中显示
         
         // 添加窗口标题栏图标（可选）
         setTitle("文本服务可视化平台 - 支持多种文本处理功能");
     }
     
+    /**
+     * 创建全部执行的对比视图：上方是按完成顺序填入的表格，下方显示选中服务的完整结果
+     */
+    private JComponent createFanOutPanel() {
+        fanOutModel = new DefaultTableModel(new Object[] {"服务", "耗时(毫秒)", "分配(KB)", "输出字符数", "结果预览"}, 0) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int column) {
+                // 数值列按数值排序
+                switch (column) {
+                    case 1:
+                        return Double.class;
+                    case 2:
+                    case 3:
+                        return Long.class;
+                    default:
+                        return String.class;
+                }
+            }
+        };
+        fanOutTable = new JTable(fanOutModel);
+        fanOutTable.setAutoCreateRowSorter(true);
+        fanOutTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        fanOutTable.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+                if (!e.getValueIsAdjusting()) {
+                    showFanOutDetail();
+                }
+            }
+        });
+        fanOutDetail = new PagedResultView();
+        fanOutLabel = new JLabel(" ");
+        
+        JPanel tablePanel = new JPanel(new BorderLayout(5, 5));
+        tablePanel.add(fanOutLabel, BorderLayout.NORTH);
+        tablePanel.add(new JScrollPane(fanOutTable), BorderLayout.CENTER);
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, tablePanel, fanOutDetail);
+        split.setResizeWeight(0.5);
+        return split;
+    }
+    
     /**
      * 执行选中的服务
      */
     private void executeService() {
-        String input = inputField.getText().trim();
+        final String input = inputField.getText().trim();
         if (input.isEmpty()) {
             JOptionPane.showMessageDialog(this, "请输入要处理的文本！", "提示", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
         
-        String selectedService = (String) serviceComboBox.getSelectedItem();
-        String result = processWithService(input, selectedService);
-        resultArea.setText(result);
+        final int serviceId = serviceComboBox.getSelectedIndex();
+        final ResultBuffer buffer = new ResultBuffer();
+        runInBackground(buffer, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                processWithService(input, serviceId, buffer);
+                return null;
+            }
+        });
     }
     
     /**
-     * 获取打招呼服务（使用匿名内部类实现Service接口）
+     * 依次执行服务链中的所有服务
+     * <p>
+     * 相邻的逐字符服务（大小写转换、空格去除、加密）会被{@link ServicePipeline}融合为一次遍历。
+     * </p>
      */
-    private Service getGreetingService() {
-        return new Service() {
-            @Override
-            public String execute(String input) {
-                return "Hello, " + input + "! Welcome to our service!";
-            }
-            
+    private void executeChain() {
+        final String input = inputField.getText().trim();
+        if (input.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请输入要处理的文本！", "提示", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        if (chainIds.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请先把服务加入服务链！", "提示", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        ServicePipeline.Builder builder = ServicePipeline.builder();
+        for (int id : chainIds) {
+            builder.then(id);
+        }
+        final ServicePipeline pipeline = builder.build();
+        final ResultBuffer buffer = new ResultBuffer();
+        runInBackground(buffer, new Callable<Void>() {
             @Override
-            public String getName() {
-                return "Greeting Service";
+            public Void call() throws Exception {
+                pipeline.execute(new StringReader(input), buffer.writer());
+                return null;
             }
-        };
+        });
     }
     
     /**
-     * 获取反转服务（使用匿名内部类实现Service接口）
+     * 用所有服务同时处理输入，结果按完成顺序加入对比表格
      */
-    private Service getReverseService() {
-        return new Service() {
-            @Override
-            public String execute(String input) {
-                StringBuilder reversed = new StringBuilder(input);
-                return reversed.reverse().toString();
-            }
-            
+    private void executeAll() {
+        final String input = inputField.getText().trim();
+        if (input.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请输入要处理的文本！", "提示", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        // 每次执行使用新的结果列表，已取消的执行回调时发现列表已被替换，直接丢弃
+        final List<ServiceFanOut.Result> results = new ArrayList<>();
+        fanOutResults = results;
+        fanOutModel.setRowCount(0);
+        fanOutDetail.setBuffer(null);
+        fanOutLabel.setText(" ");
+        showResultCard(FAN_OUT_CARD);
+        final long start = System.nanoTime();
+        // 扇出需要阻塞等待各服务完成，不能占用执行服务的工作线程
+        runInBackground(ServiceExecutors.coordinators(), new Callable<Void>() {
             @Override
-            public String getName() {
-                return "Reverse Service";
+            public Void call() throws Exception {
+                ServiceFanOut.run(input, ServiceExecutors.workers(), new ServiceFanOut.Listener() {
+                    @Override
+                    public void onResult(final ServiceFanOut.Result result) {
+                        final long elapsed = System.nanoTime() - start;
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                addFanOutResult(results, result, elapsed);
+                            }
+                        });
+                    }
+                });
+                return null;
             }
-        };
+        });
     }
     
     /**
-     * 获取重复服务（使用匿名内部类实现Service接口）
+     * 在对比表格中加入一个已完成的服务，并更新汇总：
+     * 各服务耗时之和与实际经过的时间之比，就是同时执行带来的加速
      */
-    private Service getRepeatService(final int times) {
-        return new Service() {
-            @Override
-            public String execute(String input) {
-                StringBuilder result = new StringBuilder();
-                for (int i = 0; i < times; i++) {
-                    result.append(input);
-                    if (i < times - 1) {
-                        result.append(" ");
-                    }
-                }
-                return result.toString();
-            }
-            
-            @Override
-            public String getName() {
-                return "Repeat Service (" + times + " times)";
-            }
-        };
+    private void addFanOutResult(List<ServiceFanOut.Result> results, ServiceFanOut.Result result, long elapsedNanos) {
+        if (results != fanOutResults) {
+            return;
+        }
+        results.add(result);
+        String preview;
+        if (result.failure != null) {
+            preview = "执行失败: " + result.failure;
+        } else {
+            String head = result.output.length() > PREVIEW_CHARS
+                    ? result.output.substring(0, PREVIEW_CHARS) + "…" : result.output;
+            preview = head.replace('\n', ' ').replace('\r', ' ');
+        }
+        fanOutModel.addRow(new Object[] {
+            ServiceRegistry.getLabel(result.serviceId),
+            result.wallNanos / 1e6,
+            result.allocatedBytes < 0 ? null : result.allocatedBytes / 1024,
+            result.output == null ? null : (long) result.output.length(),
+            preview
+        });
+        long totalNanos = 0;
+        for (ServiceFanOut.Result r : results) {
+            totalNanos += r.wallNanos;
+        }
+        fanOutLabel.setText(String.format("已完成 %d/%d 个服务，各服务耗时之和 %.1f 毫秒，实际经过 %.1f 毫秒",
+                results.size(), ServiceRegistry.size(), totalNanos / 1e6, elapsedNanos / 1e6));
+    }
+    
+    /**
+     * 在对比表格下方显示选中服务的完整结果
+     */
+    private void showFanOutDetail() {
+        int row = fanOutTable.getSelectedRow();
+        if (row < 0) {
+            return;
+        }
+        ServiceFanOut.Result result = fanOutResults.get(fanOutTable.convertRowIndexToModel(row));
+        ResultBuffer buffer = new ResultBuffer();
+        try {
+            buffer.append(result.output != null ? result.output : String.valueOf(result.failure));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "无法显示结果: " + e, "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        fanOutDetail.setBuffer(buffer);
     }
     
     /**
-     * 根据选择的服务处理输入文本
+     * 在共享工作线程池中执行任务，完成后通过SwingUtilities.invokeLater通知事件调度线程
+     * @param buffer 任务写入结果的缓冲区，立即显示在结果视图中
+     * @param job 要执行的任务
      */
+    private void runInBackground(ResultBuffer buffer, Callable<Void> job) {
+        resultView.setBuffer(buffer);
+        showResultCard(PAGED_CARD);
+        runInBackground(ServiceExecutors.workers(), job);
+    }
+    
     /**
-      * 使用选择的服务处理文本
-      * <p>
-      * 【接口+匿名内部类综合应用示例】
-      * 这个方法是本项目中匿名内部类应用的核心展示。针对每种服务类型，
-      * 我们都使用匿名内部类实现了Service接口，而不是创建单独的实现类。
-      * </p>
-      * <p>
-      * <b>匿名内部类的底层实现原理：</b><br>
-      * - 编译时，Java编译器会为每个匿名内部类生成独立的class文件（如ServiceVisualizerSwing$1.class）<br>
-      * - 这些类都实现了Service接口，但逻辑各不相同<br>
-      * - 每个匿名内部类都是一个独立的类，但在语法上直接定义在使用的地方<br>
-      * </p>
-      * @param input 输入文本
-      * @param serviceType 服务类型
-      * @return 处理后的文本结果
-      */
-    private String processWithService(String input, String serviceType) {
-        switch (serviceType) {
-            case "打招呼服务":
-                return getGreetingService().execute(input);
-            case "反转服务":
-                return getReverseService().execute(input);
-            case "重复服务（2次）":
-                return getRepeatService(2).execute(input);
-            case "重复服务（3次）":
-                return getRepeatService(3).execute(input);
-            case "重复服务（5次）":
-                return getRepeatService(5).execute(input);
-            case "大写转换服务":
-                // 【匿名内部类实现示例1】
-                // 此处创建了Service接口的匿名实现，直接在使用的地方定义了具体逻辑
-                // 编译后，Java编译器会生成类似ServiceVisualizerSwing$1.class的文件
-                return new Service() {
-                    @Override
-                    public String execute(String in) {
-                        return in.toUpperCase(); // 将输入文本转换为大写
-                    }
-                    
-                    @Override
-                    public String getName() {
-                        return "Uppercase Service";
-                    }
-                }.execute(input);
-                case "小写转换服务":
-                // 【匿名内部类实现示例2】
-                // 类似地，这里实现了另一个Service接口的匿名内部类
-                // 每个匿名内部类都有自己独特的execute()实现逻辑
-                return new Service() {
-                    @Override
-                    public String execute(String in) {
-                        return in.toLowerCase(); // 将输入文本转换为小写
-                    }
-                    
-                    @Override
-                    public String getName() {
-                        return "Lowercase Service";
-                    }
-                }.execute(input);
-                case "字数统计服务":
-                // 【匿名内部类实现示例3】
-                // 展示了更复杂的服务实现，包含统计逻辑
-                // 这体现了匿名内部类可以封装复杂逻辑的能力
-                return new Service() {
-                    @Override
-                    public String execute(String in) {
-                        int charCount = in.length();
-                        int wordCount = in.trim().isEmpty() ? 0 : in.trim().split("\\s+").length;
-                        int lineCount = in.split("\\r?\\n").length;
-                        return "字符数: " + charCount + "\n单词数: " + wordCount + "\n行数: " + lineCount;
-                    }
-                    
-                    @Override
-                    public String getName() {
-                        return "Count Service";
-                    }
-                }.execute(input);
-                case "空格去除服务":
-                // 【匿名内部类实现示例4】
-                // 展示了使用正则表达式进行文本处理的服务
-                // 匿名内部类让我们可以在需要的地方直接实现功能
-                return new Service() {
-                    @Override
-                    public String execute(String in) {
-                        return in.replaceAll("\\s+", ""); // 使用正则表达式去除所有空格
-                    }
-                    
-                    @Override
-                    public String getName() {
-                        return "Remove Spaces Service";
-                    }
-                }.execute(input);
-                case "首字母大写服务":
-                // 【匿名内部类实现示例5】
-                // 展示了复杂的文本处理逻辑，包含条件判断和字符串操作
-                // 这是匿名内部类强大功能的体现 - 可以封装完整的业务逻辑
-                return new Service() {
-                    @Override
-                    public String execute(String in) {
-                        if (in == null || in.isEmpty()) {
-                            return in;
-                        }
-                        String[] words = in.split("\\s+");
-                        StringBuilder result = new StringBuilder();
-                        for (String word : words) {
-                            if (!word.isEmpty()) {
-                                // 将每个单词的首字母大写，其余字母小写
-                                result.append(Character.toUpperCase(word.charAt(0)))
-                                      .append(word.substring(1).toLowerCase())
-                                      .append(" ");
-                            }
-                        }
-                        return result.toString().trim();
-                    }
-                    
-                    @Override
-                    public String getName() {
-                        return "Capitalize Service";
+     * 在指定的执行器中执行任务，完成后通过SwingUtilities.invokeLater通知事件调度线程
+     * @param executor 执行器
+     * @param job 要执行的任务
+     */
+    private void runInBackground(ExecutorService executor, final Callable<Void> job) {
+        final int generation = ++runGeneration;
+        setRunning(true);
+        try {
+            runningTask = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable failure = null;
+                    try {
+                        job.call();
+                    } catch (Throwable t) {
+                        // 包括取消、运行时异常以及超大输入导致的OutOfMemoryError
+                        failure = t;
                     }
-                }.execute(input);
-                case "加密服务（简单替换）":
-                // 【匿名内部类实现示例6】
-                // 展示了字符加密功能，使用简单替换加密算法
-                // 体现了接口+匿名内部类的扩展性 - 可以轻松添加新的服务实现
-                return new Service() {
-                    @Override
-                    public String execute(String in) {
-                        StringBuilder encrypted = new StringBuilder();
-                        // 实现简单的字母替换加密（向后移动3位）
-                        // 这是一种经典的凯撒加密算法的变体
-                        for (char c : in.toCharArray()) {
-                            if (Character.isLetter(c)) {
-                                // 根据大小写分别处理
-                                char base = Character.isUpperCase(c) ? 'A' : 'a';
-                                // 对字母进行替换，保持在字母范围内循环
-                                encrypted.append((char) ((c - base + 3) % 26 + base));
-                            } else {
-                                // 非字母字符保持不变
-                                encrypted.append(c);
-                            }
+                    final Throwable finalFailure = failure;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            finishRun(generation, finalFailure);
                         }
-                        return encrypted.toString();
-                    }
-                    
-                    @Override
-                    public String getName() {
-                        return "Encryption Service";
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            setRunning(false);
+            progressBar.setString("就绪");
+            JOptionPane.showMessageDialog(this, "系统繁忙，请稍后再试！", "提示", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+    
+    /**
+     * 在事件调度线程中处理后台任务的结果
+     */
+    private void finishRun(int generation, Throwable failure) {
+        if (generation != runGeneration) {
+            // 任务已被取消或已有更新的任务，丢弃结果
+            return;
+        }
+        runningTask = null;
+        double seconds = (System.nanoTime() - runStartNanos) / 1e9;
+        setRunning(false);
+        updateCacheLabel();
+        resultView.refresh();
+        if (failure == null) {
+            progressBar.setString(String.format("完成，耗时 %.3f 秒", seconds));
+        } else if (failure instanceof CancellationException) {
+            progressBar.setString("已取消");
+        } else {
+            progressBar.setString("执行失败");
+            JOptionPane.showMessageDialog(this, "服务执行失败: " + failure, "错误", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    /**
+     * 取消正在执行的服务：中断工作线程，服务会在下一个检查点抛出CancellationException
+     */
+    private void cancelExecution() {
+        if (runningTask == null) {
+            return;
+        }
+        runningTask.cancel(true);
+        runningTask = null;
+        runGeneration++;
+        setRunning(false);
+        progressBar.setString("已取消");
+    }
+    
+    /**
+     * 切换执行中/空闲状态下各控件的可用性和进度显示
+     */
+    private void setRunning(boolean running) {
+        executeButton.setEnabled(!running);
+        executeChainButton.setEnabled(!running);
+        runAllButton.setEnabled(!running);
+        cancelButton.setEnabled(running);
+        progressBar.setIndeterminate(running);
+        if (running) {
+            runStartNanos = System.nanoTime();
+            progressBar.setString("正在执行…");
+            elapsedTimer.start();
+        } else {
+            elapsedTimer.stop();
+        }
+    }
+    
+    /**
+     * 开启实时预览或切换了服务：支持增量预览的服务先对整个输入执行一次，之后只处理编辑的区域
+     * <p>
+     * 第一次计算与输入大小成正比，在工作线程中对输入的快照执行，结果写入一个尚未显示的文档，
+     * 再通过SwingUtilities.invokeLater换到结果区，事件调度线程不做与文档大小成正比的工作。
+     * 计算期间的编辑照常记录在新的{@link LivePreview}中，结果显示之后立即增量补上。
+     * </p>
+     */
+    private void startLivePreview() {
+        liveTimer.stop();
+        cancelLiveReset();
+        int serviceId = serviceComboBox.getSelectedIndex();
+        if (!LivePreview.supports(serviceId)) {
+            livePreview = null;
+            updateLivePreview();
+            return;
+        }
+        cancelExecution();
+        final LivePreview preview = new LivePreview(serviceId);
+        final String text = inputField.getText();
+        final long start = System.nanoTime();
+        livePreview = preview;
+        liveArea.setDocument(new PlainDocument());
+        showResultCard(LIVE_CARD);
+        progressBar.setString("实时预览（保留首尾空白），正在计算…");
+        try {
+            liveReset = ServiceExecutors.workers().submit(new Runnable() {
+                @Override
+                public void run() {
+                    final PlainDocument result = new PlainDocument();
+                    Throwable failure = null;
+                    try {
+                        result.insertString(0, preview.reset(text), null);
+                    } catch (CancellationException e) {
+                        return;
+                    } catch (Throwable t) {
+                        // 包括超大输入导致的OutOfMemoryError
+                        failure = t;
                     }
-                }.execute(input);
-                case "随机打乱服务":
-                // 【匿名内部类实现示例7】
-                // 展示了使用Fisher-Yates洗牌算法对字符进行随机打乱
-                // 这是接口+匿名内部类设计模式在算法实现中的典型应用
-                return new Service() {
-                    @Override
-                    public String execute(String in) {
-                        // 将字符串转换为字符数组以便操作
-                        char[] chars = in.toCharArray();
-                        // Fisher-Yates 洗牌算法实现
-                        // 这是一种高效且无偏的随机排列算法
-                        for (int i = chars.length - 1; i > 0; i--) {
-                            // 生成[0,i]范围内的随机索引
-                            int j = (int) (Math.random() * (i + 1));
-                            // 交换字符
-                            char temp = chars[i];
-                            chars[i] = chars[j];
-                            chars[j] = temp;
+                    final Throwable finalFailure = failure;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            publishLivePreview(preview, result, finalFailure, start);
                         }
-                        // 将打乱后的字符数组转换回字符串
-                        return new String(chars);
-                    }
-                    
-                    @Override
-                    public String getName() {
-                        return "Shuffle Service";
-                    }
-                }.execute(input);
-            default:
-                return "未知服务类型";
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            livePreview = null;
+            progressBar.setString("系统繁忙，实时预览暂停");
+        }
+    }
+    
+    /**
+     * 在事件调度线程中显示第一次预览计算的结果
+     */
+    private void publishLivePreview(LivePreview preview, PlainDocument result, Throwable failure, long start) {
+        if (preview != livePreview) {
+            // 计算期间切换了服务或关闭了实时预览
+            return;
+        }
+        liveReset = null;
+        if (failure != null) {
+            livePreview = null;
+            progressBar.setString("实时预览失败");
+            JOptionPane.showMessageDialog(this, "实时预览失败: " + failure, "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        liveArea.setDocument(result);
+        progressBar.setString(String.format("实时预览（保留首尾空白），完整计算耗时 %.1f 毫秒",
+                (System.nanoTime() - start) / 1e6));
+        if (preview.isDirty()) {
+            updateLivePreview();
+        }
+    }
+    
+    /**
+     * 取消尚未完成的第一次预览计算
+     */
+    private void cancelLiveReset() {
+        if (liveReset != null) {
+            liveReset.cancel(true);
+            liveReset = null;
         }
     }
     
-    public static void main(String[] args) {
+    /**
+     * 关闭实时预览
+     */
+    private void stopLivePreview() {
+        liveTimer.stop();
+        cancelLiveReset();
+        livePreview = null;
+        showResultCard(PAGED_CARD);
+    }
+    
+    /**
+     * 输入变化后重新开始防抖计时，连续输入期间不会更新结果
+     */
+    private void scheduleLiveUpdate() {
+        if (liveCheckBox.isSelected()) {
+            liveTimer.restart();
+        }
+    }
+    
+    /**
+     * 防抖计时器到期：增量预览在事件调度线程中直接修改结果，其余服务取消上一次执行后在后台重新执行
+     */
+    private void updateLivePreview() {
+        if (livePreview == null) {
+            cancelExecution();
+            if (!inputField.getText().trim().isEmpty()) {
+                executeService();
+            }
+            return;
+        }
+        if (liveReset != null) {
+            // 第一次计算还没有完成，结果显示时会补上这段时间的编辑
+            return;
+        }
+        long start = System.nanoTime();
+        LivePreview.Patch patch = livePreview.flush(inputField.getDocument());
+        if (patch == null) {
+            return;
+        }
+        try {
+            ((AbstractDocument) liveArea.getDocument()).replace(patch.offset, patch.removed, patch.text, null);
+        } catch (BadLocationException e) {
+            // 结果文档只由增量修改维护，不会越界；万一不一致就完整重新计算
+            startLivePreview();
+            return;
+        }
+        showResultCard(LIVE_CARD);
+        progressBar.setString(String.format("实时预览（保留首尾空白），增量更新耗时 %.2f 毫秒", (System.nanoTime() - start) / 1e6));
+    }
+    
+    /**
+     * 切换结果区显示的视图
+     */
+    private void showResultCard(String name) {
+        ((CardLayout) resultCards.getLayout()).show(resultCards, name);
+    }
+    
+    /**
+     * 在服务链标签上显示当前的服务链
+     */
+    private void updateChainLabel() {
+        if (chainIds.isEmpty()) {
+            chainLabel.setText("服务链: （空）");
+            return;
+        }
+        StringBuilder text = new StringBuilder("服务链: ");
+        for (int i = 0; i < chainIds.size(); i++) {
+            if (i > 0) {
+                text.append(" → ");
+            }
+            text.append(ServiceRegistry.getLabel(chainIds.get(i)));
+        }
+        chainLabel.setText(text.toString());
+    }
+    
+    /**
+     * 在缓存标签上显示共享结果缓存的统计信息
+     */
+    private void updateCacheLabel() {
+        cacheLabel.setText(ResultCache.shared().stats());
+    }
+    
+    /**
+     * 打开服务统计窗口（非模态，窗口打开期间统计数据每秒刷新）
+     */
+    private void showStatsDialog() {
+        if (statsDialog == null) {
+            statsDialog = new JDialog(this, "服务统计", false);
+            statsDialog.setContentPane(new ServiceStatsPanel());
+            statsDialog.setSize(900, 320);
+            statsDialog.setLocationRelativeTo(this);
+        }
+        statsDialog.setVisible(true);
+    }
+    
+    /**
+     * 使用选择的服务处理文本
+     * <p>
+     * 服务实现以匿名内部类单例的形式集中定义在{@link ServiceRegistry}中，
+     * 这里按下拉菜单的选中索引直接在注册表数组中定位服务，
+     * 每次点击既不需要比较服务名称字符串，也不会创建新的服务对象。
+     * 确定性服务的结果会保存在共享的{@link ResultCache}中，重复提交相同输入时直接返回。
+     * 不使用缓存时，逐块处理的服务以流式方式直接写入结果缓冲区，边执行边显示。
+     * </p>
+     * <p>
+     * 开启了{@link ExecutionLog}时每次执行都被记录：这里只把输入、输出（或流式输出的哈希值）和耗时放进日志队列，
+     * 编码和写盘都在日志的后台线程中进行。
+     * </p>
+     * @param input 输入文本
+     * @param serviceId 服务编号（即下拉菜单的选中索引）
+     * @param sink 接收处理结果的缓冲区
+     * @throws IOException 写入结果缓冲区失败（例如已被新的执行替换）时抛出
+     */
+    private void processWithService(String input, int serviceId, ResultBuffer sink) throws IOException {
+        StreamingService service = ServiceRegistry.getStreaming(serviceId);
+        ExecutionLog log = ExecutionLog.active();
+        long start = System.nanoTime();
+        if (service.requiresFullInput()) {
+            // 重复、反转等服务返回惰性视图，创建几乎不花时间，
+            // 直接逐段写入结果缓冲区，既不生成完整的结果字符串，也不必经过结果缓存
+            CharSequence result = service.executeLazy(input);
+            TextViews.write(result, sink.writer());
+            if (log != null) {
+                log.record(serviceId, input, result, System.nanoTime() - start);
+            }
+        } else if (ResultCache.shared().isEnabled() && service.isDeterministic()) {
+            String result = ResultCache.shared().execute(serviceId, service, input);
+            sink.append(result);
+            if (log != null) {
+                log.record(serviceId, input, result, System.nanoTime() - start);
+            }
+        } else if (log != null) {
+            ExecutionLog.HashingWriter out = new ExecutionLog.HashingWriter(sink.writer());
+            service.execute(new StringReader(input), out);
+            log.record(serviceId, input, out.hash(), out.length(), System.nanoTime() - start);
+        } else {
+            service.execute(new StringReader(input), sink.writer());
+        }
+    }
+    
+    /**
+     * 打开执行日志并设为当前日志，程序退出时提交剩余的记录
+     * @param directory 日志目录
+     * @throws IOException 无法打开执行日志时抛出
+     */
+    static void installExecutionLog(Path directory) throws IOException {
+        final ExecutionLog log = ExecutionLog.open(directory);
+        ExecutionLog.setActive(log);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    System.err.println("执行日志写入失败: " + e.getMessage());
+                }
+            }
+        }, "execution-log-close"));
+    }
+
+    /**
+     * @param args 可选的执行日志目录，指定时记录每次执行（见{@link ExecutionLog}）
+     * @throws IOException 无法打开执行日志时抛出
+     */
+    public static void main(String[] args) throws IOException {
+        // 服务统计同时通过JMX公开，可以用JConsole查看
+        ServiceRegistry.registerMBeans();
+        if (args.length > 0) {
+            installExecutionLog(Paths.get(args[0]));
+        }
         // 在事件调度线程中运行GUI
         SwingUtilities.invokeLater(new Runnable() {
             @Override
@@ -0,0 +1,361 @@
+package m10d20.project2;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 打乱引擎 - 可复现、可并行的文本随机打乱
+ * <p>
+ * 随机数来自{@link SplittableRandom}：指定种子时，同样的输入和种子总是得到同样的结果；
+ * 不指定种子时，顺序打乱直接使用{@link ThreadLocalRandom}，多个线程同时打乱互不争用。
+ * 与Math.random()共享的全局Random不同，这两者都没有线程间的同步开销。
+ * </p>
+ * <p>
+ * 按码点打乱时，代理对（表情符号等补充平面字符）作为一个整体参与打乱，结果始终是合法的UTF-16；
+ * 按字符打乱则与原先的打乱服务一样逐个UTF-16单元处理。
+ * </p>
+ * <p>
+ * 超过{@link #PARALLEL_THRESHOLD}个单元的输入可以在fork-join线程池中并行打乱，
+ * 采用Rao-Sandelius分桶算法：每个单元被独立、均匀地分到若干个桶中的一个，
+ * 再对每个桶分别做Fisher-Yates洗牌，按桶的顺序拼接即为均匀随机的排列。
+ * 计数、分发和洗牌三步都按块并行，每块的随机数发生器以根随机数发生器事先生成的种子创建，
+ * 与线程调度无关，因此指定种子时并行结果同样可复现（但与顺序打乱的结果不同）。
+ * </p>
+ */
+public final class ShuffleEngine {
+
+    /** 输入达到此长度时打乱服务改用并行处理 */
+    public static final int PARALLEL_THRESHOLD = 1 << 20;
+    /** 并行处理时每块（也是每个桶）的目标单元数 */
+    private static final int BLOCK_SIZE = 1 << 16;
+    /** 桶的最大数量，限制计数表的大小 */
+    private static final int MAX_BUCKETS = 1 << 10;
+
+    private final boolean codePoints;
+    private final boolean seeded;
+    private final long seed;
+
+    /**
+     * 创建不指定种子的打乱引擎，每次打乱的结果都不同
+     * @param codePoints true表示按码点打乱，false表示按UTF-16字符打乱
+     */
+    public ShuffleEngine(boolean codePoints) {
+        this.codePoints = codePoints;
+        this.seeded = false;
+        this.seed = 0;
+    }
+
+    /**
+     * 创建指定种子的打乱引擎，同样的输入总是得到同样的结果
+     * @param seed 随机种子
+     * @param codePoints true表示按码点打乱，false表示按UTF-16字符打乱
+     */
+    public ShuffleEngine(long seed, boolean codePoints) {
+        this.codePoints = codePoints;
+        this.seeded = true;
+        this.seed = seed;
+    }
+
+    /**
+     * @return 是否按码点打乱
+     */
+    public boolean isCodePoints() {
+        return codePoints;
+    }
+
+    /**
+     * @return 是否指定了种子（结果可复现）
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * 顺序打乱文本
+     * @param input 文本
+     * @return 打乱后的文本
+     */
+    public String shuffle(String input) {
+        return shuffle(input, null);
+    }
+
+    /**
+     * 在指定线程池中并行打乱文本，短于{@link #PARALLEL_THRESHOLD}的输入仍然顺序处理
+     * @param input 文本
+     * @param pool 线程池
+     * @return 打乱后的文本
+     */
+    public String shuffleParallel(String input, ForkJoinPool pool) {
+        return shuffle(input, pool);
+    }
+
+    private String shuffle(String input, ForkJoinPool pool) {
+        int length = input.length();
+        char[] chars = new char[length];
+        input.getChars(0, length, chars, 0);
+        // 按码点打乱时只有真正含有代理对的文本才需要转换为码点数组
+        if (codePoints && hasSurrogates(chars)) {
+            int[] units = new int[input.codePointCount(0, length)];
+            for (int i = 0, k = 0; i < length; k++) {
+                units[k] = input.codePointAt(i);
+                i += Character.charCount(units[k]);
+            }
+            if (pool != null && units.length >= PARALLEL_THRESHOLD) {
+                units = new ParallelShuffle(units.length, newRandom()).run(units, pool);
+            } else {
+                shuffle(units, 0, units.length, newRandom());
+            }
+            StringBuilder result = new StringBuilder(length);
+            for (int unit : units) {
+                result.appendCodePoint(unit);
+            }
+            return result.toString();
+        }
+        if (pool != null && length >= PARALLEL_THRESHOLD) {
+            return new String(new ParallelShuffle(length, newRandom()).run(chars, pool));
+        }
+        shuffle(chars, 0, length, newRandom());
+        return new String(chars);
+    }
+
+    /**
+     * 不指定种子时，顺序打乱返回null表示使用ThreadLocalRandom，
+     * 并行打乱也以ThreadLocalRandom生成的种子创建根随机数发生器
+     */
+    private SplittableRandom newRandom() {
+        return seeded ? new SplittableRandom(seed) : null;
+    }
+
+    private static boolean hasSurrogates(char[] chars) {
+        for (char c : chars) {
+            if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int nextInt(SplittableRandom random, int bound) {
+        return random != null ? random.nextInt(bound) : ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    /**
+     * 对[from, to)区间做Fisher-Yates洗牌
+     */
+    private static void shuffle(char[] chars, int from, int to, SplittableRandom random) {
+        for (int i = to - 1; i > from; i--) {
+            if ((i & Cancellation.CHECK_MASK) == 0) {
+                Cancellation.checkpoint();
+            }
+            // 生成[from, i]范围内的随机索引并交换
+            int j = from + nextInt(random, i - from + 1);
+            char temp = chars[i];
+            chars[i] = chars[j];
+            chars[j] = temp;
+        }
+    }
+
+    private static void shuffle(int[] units, int from, int to, SplittableRandom random) {
+        for (int i = to - 1; i > from; i--) {
+            if ((i & Cancellation.CHECK_MASK) == 0) {
+                Cancellation.checkpoint();
+            }
+            int j = from + nextInt(random, i - from + 1);
+            int temp = units[i];
+            units[i] = units[j];
+            units[j] = temp;
+        }
+    }
+
+    /**
+     * 一次并行打乱：把输入分成若干块，桶的数量与块数相同
+     * <p>
+     * 计数、分发和洗牌的下标只计算一次，字符数组和码点数组通过{@link Target}移动各自的单元，
+     * 同样的种子对两种单元产生同样的排列。
+     * 每块的分桶随机数由固定的种子创建，计数和分发两遍使用同样的种子重新生成同样的随机序列，
+     * 因此不需要额外保存每个单元所属的桶。
+     * </p>
+     */
+    private static final class ParallelShuffle {
+        private final int length;
+        private final int blocks;
+        private final int buckets;
+        private final long[] blockSeeds;
+        private final long[] bucketSeeds;
+        /** counts[b * buckets + k]先是第b块分到第k个桶的单元数，之后变为它们在输出中的起始位置 */
+        private final int[] counts;
+        /** 第k个桶在输出中的区间为[bucketStarts[k], bucketStarts[k + 1]) */
+        private final int[] bucketStarts;
+
+        ParallelShuffle(int length, SplittableRandom random) {
+            this.length = length;
+            this.blocks = Math.max(1, Math.min(MAX_BUCKETS, length / BLOCK_SIZE));
+            this.buckets = blocks;
+            if (random == null) {
+                random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+            }
+            blockSeeds = new long[blocks];
+            bucketSeeds = new long[buckets];
+            for (int b = 0; b < blocks; b++) {
+                blockSeeds[b] = random.nextLong();
+            }
+            for (int k = 0; k < buckets; k++) {
+                bucketSeeds[k] = random.nextLong();
+            }
+            counts = new int[blocks * buckets];
+            bucketStarts = new int[buckets + 1];
+        }
+
+        private int blockStart(int block) {
+            return (int) ((long) length * block / blocks);
+        }
+
+        char[] run(final char[] source, ForkJoinPool pool) {
+            final char[] target = new char[length];
+            permute(pool, new Target() {
+                @Override
+                void move(int from, int to) {
+                    target[to] = source[from];
+                }
+
+                @Override
+                void shuffle(int from, int to, SplittableRandom random) {
+                    ShuffleEngine.shuffle(target, from, to, random);
+                }
+            });
+            return target;
+        }
+
+        int[] run(final int[] source, ForkJoinPool pool) {
+            final int[] target = new int[length];
+            permute(pool, new Target() {
+                @Override
+                void move(int from, int to) {
+                    target[to] = source[from];
+                }
+
+                @Override
+                void shuffle(int from, int to, SplittableRandom random) {
+                    ShuffleEngine.shuffle(target, from, to, random);
+                }
+            });
+            return target;
+        }
+
+        /**
+         * 计数、分发和按桶洗牌三步，单元的移动交给target完成
+         */
+        private void permute(ForkJoinPool pool, final Target target) {
+            pool.invoke(new Range(0, blocks) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                void compute(int block) {
+                    count(block);
+                }
+            });
+            computeOffsets();
+            pool.invoke(new Range(0, blocks) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                void compute(int block) {
+                    SplittableRandom random = new SplittableRandom(blockSeeds[block]);
+                    int[] offsets = counts;
+                    int base = block * buckets;
+                    for (int i = blockStart(block), end = blockStart(block + 1); i < end; i++) {
+                        target.move(i, offsets[base + random.nextInt(buckets)]++);
+                    }
+                }
+            });
+            pool.invoke(new Range(0, buckets) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                void compute(int bucket) {
+                    target.shuffle(bucketStarts[bucket], bucketStarts[bucket + 1],
+                            new SplittableRandom(bucketSeeds[bucket]));
+                }
+            });
+        }
+
+        private void count(int block) {
+            SplittableRandom random = new SplittableRandom(blockSeeds[block]);
+            int base = block * buckets;
+            for (int i = blockStart(block), end = blockStart(block + 1); i < end; i++) {
+                counts[base + random.nextInt(buckets)]++;
+            }
+        }
+
+        /**
+         * 把计数转换为起始位置：桶按编号排列，同一个桶内按块的顺序排列
+         */
+        private void computeOffsets() {
+            int position = 0;
+            for (int k = 0; k < buckets; k++) {
+                bucketStarts[k] = position;
+                for (int b = 0; b < blocks; b++) {
+                    int count = counts[b * buckets + k];
+                    counts[b * buckets + k] = position;
+                    position += count;
+                }
+            }
+            bucketStarts[buckets] = position;
+        }
+    }
+
+    /**
+     * 并行打乱的输出数组：分桶和洗牌的下标由{@link ParallelShuffle}决定，字符数组和码点数组各自完成单元的移动
+     */
+    private abstract static class Target {
+        /** 把输入的第from个单元放到输出的第to个位置 */
+        abstract void move(int from, int to);
+
+        /** 对输出的[from, to)区间做Fisher-Yates洗牌 */
+        abstract void shuffle(int from, int to, SplittableRandom random);
+    }
+
+    /**
+     * 并行处理[from, to)区间内每个编号的任务：递归二分，叶子任务处理一个编号
+     */
+    private abstract static class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        abstract void compute(int index);
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                compute(from);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            final Range outer = this;
+            invokeAll(new Range(from, middle) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                void compute(int index) {
+                    outer.compute(index);
+                }
+            }, new Range(middle, to) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                void compute(int index) {
+                    outer.compute(index);
+                }
+            });
+        }
+    }
+}
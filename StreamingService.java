@@ -0,0 +1,95 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * 流式服务接口 - Service接口的流式扩展
+ * <p>
+ * {@link Service#execute(String)}要求完整的输入和输出都以String形式驻留在堆中，
+ * 处理数GB的日志文件时内存无法承受。流式服务从Reader读取、向Writer写出，
+ * 只使用固定大小的缓冲区，内存占用与输入大小无关。
+ * </p>
+ * <p>
+ * 逐字符或逐单词处理的服务（大小写转换、空格去除、加密、字数统计等）应当覆盖
+ * {@link #execute(Reader, Writer)}提供原生的流式实现，并让{@link #requiresFullInput()}返回false。
+ * 反转、打乱这类必须看到全部输入才能产生输出的服务直接继承默认实现：
+ * 先把输入完整读入内存，再调用execute(String)，并通过requiresFullInput()如实声明这一点。
+ * </p>
+ */
+public interface StreamingService extends Service {
+
+    /**
+     * 流式处理使用的缓冲区大小（字符数）
+     */
+    int BUFFER_SIZE = 8192;
+
+    /**
+     * 以流式方式执行服务
+     * <p>
+     * 默认实现会把输入全部读入内存后调用{@link #executeLazy(String)}，
+     * 结果是惰性视图时逐段写出，不生成完整的结果字符串。
+     * 方法不会关闭传入的Reader和Writer，但会在返回前刷新Writer。
+     * </p>
+     * @param in 输入文本
+     * @param out 处理结果的输出目标
+     * @throws IOException 读写失败时抛出
+     */
+    default void execute(Reader in, Writer out) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            text.append(buffer, 0, n);
+        }
+        TextViews.write(executeLazy(text.toString()), out);
+        out.flush();
+    }
+
+    /**
+     * 是否需要完整的输入才能产生输出
+     * @return true表示流式执行时会把整个输入缓冲在内存中
+     */
+    default boolean requiresFullInput() {
+        return true;
+    }
+
+    /**
+     * 是否可以把输入在空白字符处切成若干块、各块独立处理后按顺序拼接
+     * <p>
+     * 可切分的服务满足：对在空白字符之后切开的两段文本a和b，
+     * execute(a + b)等于execute(a) + execute(b)。批量处理文件时，
+     * 这类服务的各块可以分配到多个CPU核心上并行执行。
+     * </p>
+     * @return 可以切分并行处理时返回true
+     */
+    default boolean isSplittable() {
+        return false;
+    }
+
+    /**
+     * 把普通服务适配为流式服务
+     * <p>
+     * 已经是流式服务的直接返回；否则返回一个缓冲全部输入的适配器。
+     * </p>
+     * @param service 任意服务
+     * @return 流式服务
+     */
+    static StreamingService of(final Service service) {
+        if (service instanceof StreamingService) {
+            return (StreamingService) service;
+        }
+        return new StreamingService() {
+            @Override
+            public String execute(String input) {
+                return service.execute(input);
+            }
+
+            @Override
+            public String getName() {
+                return service.getName();
+            }
+        };
+    }
+}
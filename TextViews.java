@@ -0,0 +1,247 @@
+package m10d20.project2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 惰性文本视图 - 不生成完整字符串的服务结果
+ * <p>
+ * 重复服务的结果是输入的简单重复，反转服务的结果只是下标的反向映射，
+ * 把它们真正拼成String既占用大量内存又没有必要。{@link Service#executeLazy(String)}
+ * 可以返回这里的视图：创建视图是O(1)的，charAt按下标即时计算，
+ * {@link #write(CharSequence, Writer)}逐段写出，整个结果从不驻留在内存中。
+ * 视图持有输入String的引用，而String不可变，因此视图本身也是不可变、线程安全的。
+ * </p>
+ */
+final class TextViews {
+
+    /** CharSequence能表示的最大长度，留出数组头部的余量 */
+    private static final long MAX_LENGTH = Integer.MAX_VALUE - 8;
+    /** 逐段写出时每段的字符数 */
+    private static final int WRITE_CHUNK = StreamingService.BUFFER_SIZE;
+
+    private TextViews() {
+    }
+
+    /**
+     * 创建重复视图：text重复times次，相邻两次之间插入separator
+     * @param text 被重复的文本
+     * @param times 重复次数，不大于0时结果为空文本
+     * @param separator 分隔符
+     * @return 重复视图
+     * @throws IllegalArgumentException 结果超过CharSequence能表示的长度时抛出
+     */
+    static CharSequence repeat(String text, int times, String separator) {
+        if (times == 1) {
+            return text;
+        }
+        long length = repeatedLength(text, times, separator);
+        if (length == 0) {
+            return "";
+        }
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("重复结果长度" + length + "超过了" + MAX_LENGTH + "个字符");
+        }
+        return new RepeatView(text, times, separator, (int) length);
+    }
+
+    /**
+     * 计算重复结果的长度
+     */
+    static long repeatedLength(String text, int times, String separator) {
+        return times <= 0 ? 0 : (long) text.length() * times + (long) separator.length() * (times - 1);
+    }
+
+    /**
+     * 创建反转视图，代理对保持原有顺序，结果与StringBuilder.reverse()相同
+     * @param text 文本
+     * @return 反转视图
+     */
+    static CharSequence reverse(String text) {
+        return text.length() < 2 ? text : new ReversedView(text);
+    }
+
+    /**
+     * 把text重复times次写出，不受CharSequence长度的限制
+     * <p>
+     * 文本较短时先把若干个"文本+分隔符"拼成一个约{@link #WRITE_CHUNK}个字符的块，
+     * 按块写出，避免每次重复都调用一次Writer。
+     * </p>
+     * @param text 被重复的文本
+     * @param times 重复次数
+     * @param separator 分隔符
+     * @param out 输出
+     * @throws IOException 写出失败时抛出
+     */
+    static void writeRepeated(String text, int times, String separator, Writer out) throws IOException {
+        if (times <= 0) {
+            return;
+        }
+        String unit = text + separator;
+        int unitsPerBlock = Math.max(1, WRITE_CHUNK / Math.max(1, unit.length()));
+        String block = unit;
+        if (unitsPerBlock > 1) {
+            StringBuilder builder = new StringBuilder(unit.length() * unitsPerBlock);
+            for (int i = 0; i < unitsPerBlock; i++) {
+                builder.append(unit);
+            }
+            block = builder.toString();
+        }
+        // 前times - 1次后面都跟着分隔符，最后一次没有
+        int remaining = times - 1;
+        while (remaining >= unitsPerBlock) {
+            Cancellation.checkpoint();
+            out.write(block);
+            remaining -= unitsPerBlock;
+        }
+        for (int i = 0; i < remaining; i++) {
+            out.write(unit);
+        }
+        out.write(text);
+    }
+
+    /**
+     * 把任意文本写出：String直接写出，视图逐段计算后写出
+     * @param text 文本
+     * @param out 输出，不刷新也不关闭
+     * @throws IOException 写出失败时抛出
+     */
+    static void write(CharSequence text, Writer out) throws IOException {
+        if (text instanceof String) {
+            out.write((String) text);
+            return;
+        }
+        if (text instanceof RepeatView) {
+            RepeatView view = (RepeatView) text;
+            writeRepeated(view.text, view.times, view.separator, out);
+            return;
+        }
+        char[] chunk = new char[WRITE_CHUNK];
+        int length = text.length();
+        for (int start = 0; start < length; start += WRITE_CHUNK) {
+            Cancellation.checkpoint();
+            int end = Math.min(length, start + WRITE_CHUNK);
+            for (int i = start; i < end; i++) {
+                chunk[i - start] = text.charAt(i);
+            }
+            out.write(chunk, 0, end - start);
+        }
+    }
+
+    /**
+     * 重复视图
+     */
+    private static final class RepeatView implements CharSequence {
+        final String text;
+        final int times;
+        final String separator;
+        private final int period;
+        private final int length;
+
+        RepeatView(String text, int times, String separator, int length) {
+            this.text = text;
+            this.times = times;
+            this.separator = separator;
+            this.period = text.length() + separator.length();
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            int offset = index % period;
+            return offset < text.length() ? text.charAt(offset) : separator.charAt(offset - text.length());
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            }
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                chars[i - start] = charAt(i);
+            }
+            return new String(chars);
+        }
+
+        /**
+         * 按最终长度一次分配字符数组，先放入一个周期，再成倍复制已填充的部分
+         */
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            text.getChars(0, text.length(), chars, 0);
+            separator.getChars(0, Math.min(separator.length(), length - text.length()), chars, text.length());
+            int filled = Math.min(period, length);
+            while (filled < length) {
+                Cancellation.checkpoint();
+                int count = Math.min(filled, length - filled);
+                System.arraycopy(chars, 0, chars, filled, count);
+                filled += count;
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * 反转视图
+     */
+    private static final class ReversedView implements CharSequence {
+        private final String text;
+
+        ReversedView(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        /**
+         * 第index个字符对应原文的第length - 1 - index个字符；
+         * 如果那里是一个代理对的一半，则取这个代理对的另一半，使代理对保持高位在前
+         */
+        @Override
+        public char charAt(int index) {
+            int length = text.length();
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            int source = length - 1 - index;
+            char c = text.charAt(source);
+            if (Character.isLowSurrogate(c) && source > 0 && Character.isHighSurrogate(text.charAt(source - 1))) {
+                return text.charAt(source - 1);
+            }
+            if (Character.isHighSurrogate(c) && source + 1 < length && Character.isLowSurrogate(text.charAt(source + 1))) {
+                return text.charAt(source + 1);
+            }
+            return c;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > text.length() || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + text.length());
+            }
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                chars[i - start] = charAt(i);
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(text).reverse().toString();
+        }
+    }
+}
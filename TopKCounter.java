@@ -0,0 +1,544 @@
+package m10d20.project2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 词频统计器 - 统计出现次数最多的K个单词或n元词组
+ * <p>
+ * 单词的划分与{@link WordCounter}一致：由\s分隔的连续字符，区分大小写；n元词组是连续的n个单词，以一个空格连接。
+ * 每个单词（或词组）只计算一个64位哈希值，次数记录在以哈希值为键的{@link LongIntHashMap}中，
+ * 统计过程中不为单词创建String，也没有装箱的Integer，每个不同的单词只占哈希表中的一个槽位。
+ * 两个不同的单词哈希值相同的概率约为2^-64乘以不同单词数的平方，对任何实际的语料都可以忽略。
+ * </p>
+ * <p>
+ * 单词的文本只为前K名保存。逐块喂入时，统计器同时维护一个大小为K的最小堆，
+ * 保存当前排名前K的单词：某个单词的次数加1之后超过堆顶时，才把它换入堆中并生成它的文本，
+ * 其余单词（绝大多数）只需要一次哈希表更新和一次比较。次数只增不减，第K名的次数随之单调不减，
+ * 因此最终前K名中的每个单词在最后一次出现时一定在堆中，流式统计的结果是精确的。
+ * </p>
+ * <p>
+ * 并行统计（{@link #countParallel(CharSequence, int, int, ForkJoinPool)}）在空白处把文本切成若干段，
+ * 每段用自己的哈希表统计（不维护堆，也不保存文本），合并后用有界堆选出前K名，
+ * 最后再扫描一遍文本找回这K个哈希值对应的文本，通常在文本开头就能全部找到。
+ * n元词组跨越分段边界时，由后一段负责：它先读入边界之前的n-1个单词作为上下文，但不计数。
+ * </p>
+ * <p>
+ * 排名按次数从多到少，次数相同时按哈希值排序，因此流式统计和并行统计选出的前K名完全相同；
+ * 输出时次数相同的单词再按文本排序。
+ * </p>
+ */
+final class TopKCounter {
+
+    /** 文本长度达到此值时词频统计服务改用并行统计 */
+    static final int PARALLEL_THRESHOLD = 1 << 22;
+    /** 并行统计时每个任务处理的最小字符数 */
+    private static final int SPLIT_THRESHOLD = 1 << 20;
+    /** 找回文本时每扫描这么多字符检查一次是否已经全部找到 */
+    private static final int RECOVER_STEP = 1 << 16;
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final int k;
+    private final int n;
+    /** 单词（或词组）的哈希值到出现次数 */
+    private final LongIntHashMap counts;
+    /** 是否维护前K名的堆；并行统计的各段和找回文本时为false */
+    private final boolean tracking;
+    /** 是否保存最近n个单词的文本；并行统计的各段为false */
+    private final boolean keepText;
+    /** 并行统计合并后的不同单词数；逐块统计时为-1，以哈希表的大小为准 */
+    private int distinct = -1;
+
+    /** 当前单词的FNV-1a哈希值和文本 */
+    private long hash;
+    private boolean inWord;
+    private StringBuilder current = new StringBuilder();
+    /** 最近n个单词的哈希值和文本，下标为单词序号模n */
+    private final long[] recentHashes;
+    private final StringBuilder[] recentText;
+    /** 已结束的单词数 */
+    private long words;
+    /** 序号小于此值的单词只作为上下文，以它结尾的词组不计数 */
+    private long emitFrom;
+    /** 计数的单词（或词组）总数 */
+    private long total;
+
+    /** 前K名的最小堆：堆顶是排名最低的一个 */
+    private final long[] heapHashes;
+    private final int[] heapCounts;
+    private final String[] heapTokens;
+    private int heapSize;
+    /** 堆中的哈希值到堆下标加1 */
+    private final LongIntHashMap heapIndex;
+
+    /** 找回文本时要找的哈希值到堆下标加1，找到后删除；不在找回文本时为null */
+    private LongIntHashMap wanted;
+    /** 找回的文本写入这个统计器的堆 */
+    private TopKCounter recoverInto;
+
+    /**
+     * @param k 保留的名次数
+     * @param n 每个词组的单词数，1表示统计单词
+     */
+    TopKCounter(int k, int n) {
+        this(k, n, true, true);
+    }
+
+    private TopKCounter(int k, int n, boolean tracking, boolean keepText) {
+        if (k < 1 || n < 1) {
+            throw new IllegalArgumentException("名次数和词组长度都必须大于0: k=" + k + ", n=" + n);
+        }
+        this.k = k;
+        this.n = n;
+        this.tracking = tracking;
+        this.keepText = keepText;
+        this.counts = new LongIntHashMap();
+        recentHashes = new long[n];
+        recentText = new StringBuilder[n];
+        for (int i = 0; i < n; i++) {
+            recentText[i] = new StringBuilder();
+        }
+        heapHashes = new long[k];
+        heapCounts = new int[k];
+        heapTokens = new String[k];
+        heapIndex = new LongIntHashMap(tracking ? k : 0);
+    }
+
+    /**
+     * 单线程统计整段文本
+     * @param text 文本
+     * @param k 保留的名次数
+     * @param n 每个词组的单词数
+     * @return 统计结果
+     */
+    static TopKCounter count(CharSequence text, int k, int n) {
+        TopKCounter counter = new TopKCounter(k, n);
+        counter.accept(text, 0, text.length());
+        counter.finish();
+        return counter;
+    }
+
+    /**
+     * 在fork-join线程池中并行统计整段文本
+     * @param text 文本
+     * @param k 保留的名次数
+     * @param n 每个词组的单词数
+     * @param pool 线程池
+     * @return 统计结果，前K名与{@link #count(CharSequence, int, int)}完全一致
+     */
+    static TopKCounter countParallel(CharSequence text, int k, int n, ForkJoinPool pool) {
+        TopKCounter merged = pool.invoke(new CountTask(text, k, n, 0, text.length()));
+        TopKCounter result = new TopKCounter(k, n);
+        result.total = merged.total;
+        result.distinct = merged.counts.size();
+        result.select(merged.counts);
+        result.recover(text);
+        return result;
+    }
+
+    /**
+     * 喂入一块文本，单词可以跨越两块的边界
+     * @param buffer 字符缓冲区
+     * @param offset 起始位置
+     * @param length 字符数
+     */
+    void accept(char[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            accept(buffer[i]);
+        }
+    }
+
+    /**
+     * 喂入文本的一个区间
+     * @param text 文本
+     * @param start 起始位置（包含）
+     * @param end 结束位置（不包含）
+     */
+    void accept(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if ((i & Cancellation.CHECK_MASK) == 0) {
+                Cancellation.checkpoint();
+            }
+            accept(text.charAt(i));
+        }
+    }
+
+    private void accept(char c) {
+        if (WordCounter.isSpace(c)) {
+            if (inWord) {
+                endWord();
+            }
+            return;
+        }
+        if (!inWord) {
+            inWord = true;
+            hash = FNV_OFFSET;
+            if (keepText) {
+                current.setLength(0);
+            }
+        }
+        hash = (hash ^ c) * FNV_PRIME;
+        if (keepText) {
+            current.append(c);
+        }
+    }
+
+    /**
+     * 输入结束：统计最后一个单词
+     */
+    void finish() {
+        if (inWord) {
+            endWord();
+        }
+    }
+
+    private void endWord() {
+        inWord = false;
+        int slot = (int) (words % n);
+        recentHashes[slot] = mix(hash);
+        if (keepText) {
+            // 交换而不是复制：当前单词的缓冲区放入最近单词表，被替换下来的缓冲区留给下一个单词
+            StringBuilder oldest = recentText[slot];
+            recentText[slot] = current;
+            current = oldest;
+        }
+        words++;
+        if (words < n || words - 1 < emitFrom) {
+            return;
+        }
+        long key = recentHashes[slot];
+        if (n > 1) {
+            key = 0;
+            for (long i = words - n; i < words; i++) {
+                key = (key ^ recentHashes[(int) (i % n)]) * GOLDEN;
+            }
+            key = mix(key);
+        }
+        if (wanted != null) {
+            found(key);
+            return;
+        }
+        total++;
+        int count = counts.addTo(key, 1);
+        if (tracking) {
+            offer(key, count);
+        }
+    }
+
+    /**
+     * 单词的次数变为count后更新前K名的堆
+     */
+    private void offer(long key, int count) {
+        if (heapSize == k && !outranks(count, key, heapCounts[0], heapHashes[0])) {
+            // 绝大多数单词走这条路径：堆中的单词次数加1后一定超过堆顶，所以不在堆中
+            return;
+        }
+        int position = heapIndex.get(key) - 1;
+        if (position >= 0) {
+            heapCounts[position] = count;
+            siftDown(position);
+            return;
+        }
+        if (heapSize < k) {
+            position = heapSize++;
+            heapHashes[position] = key;
+            heapCounts[position] = count;
+            heapTokens[position] = text();
+            heapIndex.put(key, position + 1);
+            siftUp(position);
+            return;
+        }
+        heapIndex.remove(heapHashes[0]);
+        heapHashes[0] = key;
+        heapCounts[0] = count;
+        heapTokens[0] = text();
+        heapIndex.put(key, 1);
+        siftDown(0);
+    }
+
+    /**
+     * 从合并后的哈希表中选出前K名，文本稍后由{@link #recover(CharSequence)}找回
+     */
+    private void select(LongIntHashMap source) {
+        source.forEach(new LongIntHashMap.Visitor() {
+            @Override
+            public void visit(long key, int value) {
+                if (heapSize < k) {
+                    heapHashes[heapSize] = key;
+                    heapCounts[heapSize] = value;
+                    siftUp(heapSize++);
+                } else if (outranks(value, key, heapCounts[0], heapHashes[0])) {
+                    heapHashes[0] = key;
+                    heapCounts[0] = value;
+                    siftDown(0);
+                }
+            }
+        });
+    }
+
+    /**
+     * 扫描文本，找回堆中各哈希值对应的文本
+     */
+    private void recover(CharSequence text) {
+        TopKCounter scanner = new TopKCounter(1, n, false, true);
+        scanner.wanted = new LongIntHashMap(heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            scanner.wanted.put(heapHashes[i], i + 1);
+        }
+        scanner.recoverInto = this;
+        int length = text.length();
+        for (int start = 0; start < length && scanner.wanted.size() > 0; start += RECOVER_STEP) {
+            scanner.accept(text, start, Math.min(length, start + RECOVER_STEP));
+        }
+        scanner.finish();
+    }
+
+    private void found(long key) {
+        int position = wanted.remove(key) - 1;
+        if (position >= 0) {
+            recoverInto.heapTokens[position] = text();
+        }
+    }
+
+    /**
+     * @return 最近n个单词组成的文本
+     */
+    private String text() {
+        if (n == 1) {
+            return recentText[(int) ((words - 1) % n)].toString();
+        }
+        StringBuilder text = new StringBuilder();
+        for (long i = words - n; i < words; i++) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(recentText[(int) (i % n)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 排名比较：次数多的在前，次数相同时哈希值小的在前
+     */
+    private static boolean outranks(int count, long key, int otherCount, long otherKey) {
+        return count > otherCount || (count == otherCount && key < otherKey);
+    }
+
+    private boolean lower(int i, int j) {
+        return outranks(heapCounts[j], heapHashes[j], heapCounts[i], heapHashes[i]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!lower(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && lower(child + 1, child)) {
+                child++;
+            }
+            if (!lower(child, i)) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long hashI = heapHashes[i];
+        heapHashes[i] = heapHashes[j];
+        heapHashes[j] = hashI;
+        int countI = heapCounts[i];
+        heapCounts[i] = heapCounts[j];
+        heapCounts[j] = countI;
+        String tokenI = heapTokens[i];
+        heapTokens[i] = heapTokens[j];
+        heapTokens[j] = tokenI;
+        if (tracking) {
+            heapIndex.put(heapHashes[i], i + 1);
+            heapIndex.put(heapHashes[j], j + 1);
+        }
+    }
+
+    /**
+     * MurmurHash3的64位终结函数，让FNV哈希值的每一位都影响结果的每一位
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return 计数的单词（或词组）总数
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * @return 不同的单词（或词组）数
+     */
+    int distinct() {
+        return distinct >= 0 ? distinct : counts.size();
+    }
+
+    /**
+     * 前K名，按次数从多到少排列，次数相同时按文本排列
+     * @return 名次列表
+     */
+    List<Entry> top() {
+        List<Entry> entries = new ArrayList<>(heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            entries.add(new Entry(heapTokens[i], heapCounts[i]));
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (a.count != b.count) {
+                    return a.count > b.count ? -1 : 1;
+                }
+                return a.token.compareTo(b.token);
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * 按词频统计服务的输出格式生成结果文本
+     * @return 统计结果，每行一个名次
+     */
+    String format() {
+        String unit = n == 1 ? "单词" : n + "元词组";
+        StringBuilder result = new StringBuilder();
+        result.append(unit).append("总数: ").append(total)
+                .append("，不同").append(unit).append(": ").append(distinct());
+        result.append("\n前").append(k).append("名:");
+        int rank = 0;
+        for (Entry entry : top()) {
+            result.append('\n').append(++rank).append(". ").append(entry.token).append('\t').append(entry.count);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 一个名次：单词（或词组）的文本和出现次数
+     */
+    static final class Entry {
+        final String token;
+        final int count;
+
+        Entry(String token, int count) {
+            this.token = token;
+            this.count = count;
+        }
+
+        @Override
+        public String toString() {
+            return token + "=" + count;
+        }
+    }
+
+    /**
+     * 并行统计任务：在空白处二分区间，叶子任务只统计哈希值的次数，回溯时合并哈希表
+     */
+    private static final class CountTask extends RecursiveTask<TopKCounter> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient CharSequence text;
+        private final int k;
+        private final int n;
+        private final int start;
+        private final int end;
+
+        CountTask(CharSequence text, int k, int n, int start, int end) {
+            this.text = text;
+            this.k = k;
+            this.n = n;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected TopKCounter compute() {
+            if (end - start <= SPLIT_THRESHOLD) {
+                return countRange();
+            }
+            int middle = (start + end) >>> 1;
+            // 切分点移到空白之后，单词不会被切开
+            while (middle < end && !WordCounter.isSpace(text.charAt(middle - 1))) {
+                middle++;
+            }
+            if (middle == end) {
+                return countRange();
+            }
+            CountTask left = new CountTask(text, k, n, start, middle);
+            CountTask right = new CountTask(text, k, n, middle, end);
+            right.fork();
+            TopKCounter result = left.compute();
+            TopKCounter other = right.join();
+            // 把较小的表合并到较大的表中
+            if (other.counts.size() > result.counts.size()) {
+                TopKCounter swap = result;
+                result = other;
+                other = swap;
+            }
+            result.counts.addAll(other.counts);
+            result.total += other.total;
+            return result;
+        }
+
+        private TopKCounter countRange() {
+            TopKCounter counter = new TopKCounter(k, n, false, false);
+            if (n > 1 && start > 0) {
+                // 读入start之前的n-1个单词作为上下文，以它们结尾的词组由前一段统计
+                counter.emitFrom = Long.MAX_VALUE;
+                counter.accept(text, contextStart(), start);
+                counter.finish();
+                counter.emitFrom = counter.words;
+            }
+            counter.accept(text, start, end);
+            counter.finish();
+            return counter;
+        }
+
+        /**
+         * start之前第n-1个单词的起始位置
+         */
+        private int contextStart() {
+            int position = start;
+            for (int i = 0; i < n - 1 && position > 0; i++) {
+                while (position > 0 && WordCounter.isSpace(text.charAt(position - 1))) {
+                    position--;
+                }
+                while (position > 0 && !WordCounter.isSpace(text.charAt(position - 1))) {
+                    position--;
+                }
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package m10d20.project2;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 字数统计器 - 单遍扫描、可逐块喂入、可并行合并的统计状态机
+ * <p>
+ * 统计字符数（UTF-16单元）、单词数、行数、UTF-8字节数和码点数。
+ * 统计器内部只有几个计数器，扫描过程中不创建任何对象，也不保存文本本身，
+ * 因此可以处理任意大的输入；计数器使用long类型，不会因为输入超过2G字符而溢出。
+ * </p>
+ * <p>
+ * 统计口径与原先基于正则表达式的实现保持一致：
+ * 单词是由正则表达式\s（空格、制表符、换行、回车、换页、垂直制表符）分隔的连续字符；
+ * 行数等于按\r?\n拆分后去掉末尾空行的段数，空文本算作1行。
+ * 唯一的区别是：原实现先trim()再拆分，会丢弃首尾的其他控制字符，
+ * 本统计器会把它们当作单词的一部分，这对正常文本没有影响。
+ * 字节数按String.getBytes(UTF_8)计算，不成对的代理项按替换字符'?'计1字节。
+ * </p>
+ * <p>
+ * 两个统计器可以通过{@link #merge(WordCounter)}合并：即使单词、\r\n或代理对
+ * 恰好跨越两块的边界，合并结果也与整体扫描完全一致，这是并行统计的基础。
+ * </p>
+ */
+final class WordCounter {
+
+    /** 文本长度达到此值时字数统计服务改用并行统计 */
+    static final int PARALLEL_THRESHOLD = 1 << 22;
+    /** 并行统计时每个任务处理的最小字符数 */
+    private static final int SPLIT_THRESHOLD = 1 << 20;
+
+    private long chars;
+    private long words;
+    private long codePoints;
+    private long utf8Bytes;
+    private boolean inWord;
+    /** 上一个字符是高代理项 */
+    private boolean lastHigh;
+    /** 第一个字符，用于合并时处理跨边界的情况 */
+    private char firstChar;
+
+    /** 当前所处的行段序号 */
+    private long segment;
+    /** 最后一个非空行段的序号 */
+    private long lastNonEmptySegment = -1;
+    /** 上一个字符是\r，还不能确定它是换行符的一部分还是普通内容 */
+    private boolean pendingCr;
+
+    /**
+     * 判断字符是否属于正则表达式中的\s
+     * @param c 字符
+     * @return 是空白字符时返回true
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * 单线程统计整段文本
+     * @param text 文本
+     * @return 统计结果
+     */
+    static WordCounter count(CharSequence text) {
+        WordCounter counter = new WordCounter();
+        counter.accept(text, 0, text.length());
+        return counter;
+    }
+
+    /**
+     * 在fork-join线程池中并行统计整段文本
+     * <p>
+     * 文本被递归二分，直到每段不超过1M字符，各段独立统计后按顺序合并。
+     * </p>
+     * @param text 文本
+     * @param pool 线程池
+     * @return 统计结果，与{@link #count(CharSequence)}完全一致
+     */
+    static WordCounter countParallel(CharSequence text, ForkJoinPool pool) {
+        return pool.invoke(new CountTask(text, 0, text.length()));
+    }
+
+    /**
+     * 喂入一块文本
+     * @param buffer 字符缓冲区
+     * @param offset 起始位置
+     * @param length 字符数
+     */
+    void accept(char[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            accept(buffer[i]);
+        }
+    }
+
+    /**
+     * 喂入文本的一个区间
+     * @param text 文本
+     * @param start 起始位置（包含）
+     * @param end 结束位置（不包含）
+     */
+    void accept(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if ((i & Cancellation.CHECK_MASK) == 0) {
+                Cancellation.checkpoint();
+            }
+            accept(text.charAt(i));
+        }
+    }
+
+    private void accept(char c) {
+        if (chars == 0) {
+            firstChar = c;
+        }
+        chars++;
+
+        boolean high = false;
+        if (c < 0x80) {
+            utf8Bytes += 1;
+        } else if (c < 0x800) {
+            utf8Bytes += 2;
+        } else if (Character.isSurrogate(c)) {
+            if (lastHigh && Character.isLowSurrogate(c)) {
+                // 与前面的高代理项组成一个4字节的码点，高代理项已计1字节和1个码点
+                utf8Bytes += 3;
+                codePoints--;
+            } else {
+                utf8Bytes += 1;
+                high = Character.isHighSurrogate(c);
+            }
+        } else {
+            utf8Bytes += 3;
+        }
+        codePoints++;
+        lastHigh = high;
+
+        if (isSpace(c)) {
+            inWord = false;
+        } else if (!inWord) {
+            inWord = true;
+            words++;
+        }
+
+        if (c == '\n') {
+            // \n或\r\n结束当前行段
+            pendingCr = false;
+            segment++;
+        } else {
+            if (pendingCr) {
+                // 单独的\r不是换行符，而是行内容
+                lastNonEmptySegment = segment;
+                pendingCr = false;
+            }
+            if (c == '\r') {
+                pendingCr = true;
+            } else {
+                lastNonEmptySegment = segment;
+            }
+        }
+    }
+
+    /**
+     * 把紧跟在本统计器所统计文本之后的另一段文本的统计结果合并进来
+     * @param next 后一段文本的统计器
+     */
+    void merge(WordCounter next) {
+        if (next.chars == 0) {
+            return;
+        }
+        if (chars == 0) {
+            copyFrom(next);
+            return;
+        }
+        char first = next.firstChar;
+        // 跨边界的单词：后一段开头的单词与本段末尾的单词是同一个
+        long mergedWords = words + next.words;
+        if (inWord && !isSpace(first)) {
+            mergedWords--;
+        }
+        // 跨边界的代理对：后一段把低代理项当作单独字符计了1字节和1个码点
+        long mergedBytes = utf8Bytes + next.utf8Bytes;
+        long mergedCodePoints = codePoints + next.codePoints;
+        if (lastHigh && Character.isLowSurrogate(first)) {
+            mergedBytes += 2;
+            mergedCodePoints--;
+        }
+        // 跨边界的\r：后一段不以\n开头时，本段末尾的\r是行内容
+        long lastNonEmpty = lastNonEmptySegment;
+        if (pendingCr && first != '\n') {
+            lastNonEmpty = segment;
+        }
+        if (next.lastNonEmptySegment >= 0) {
+            lastNonEmpty = segment + next.lastNonEmptySegment;
+        }
+
+        chars += next.chars;
+        words = mergedWords;
+        utf8Bytes = mergedBytes;
+        codePoints = mergedCodePoints;
+        lastNonEmptySegment = lastNonEmpty;
+        segment += next.segment;
+        pendingCr = next.pendingCr;
+        inWord = next.inWord;
+        lastHigh = next.lastHigh;
+    }
+
+    private void copyFrom(WordCounter other) {
+        chars = other.chars;
+        words = other.words;
+        codePoints = other.codePoints;
+        utf8Bytes = other.utf8Bytes;
+        inWord = other.inWord;
+        lastHigh = other.lastHigh;
+        firstChar = other.firstChar;
+        segment = other.segment;
+        lastNonEmptySegment = other.lastNonEmptySegment;
+        pendingCr = other.pendingCr;
+    }
+
+    long chars() {
+        return chars;
+    }
+
+    long words() {
+        return words;
+    }
+
+    long lines() {
+        if (chars == 0) {
+            return 1;
+        }
+        long last = pendingCr ? segment : lastNonEmptySegment;
+        return last + 1;
+    }
+
+    long codePoints() {
+        return codePoints;
+    }
+
+    /**
+     * @return 换行符（\n或\r\n）的个数
+     */
+    long newlines() {
+        return segment;
+    }
+
+    long utf8Bytes() {
+        return utf8Bytes;
+    }
+
+    /**
+     * 按字数统计服务的输出格式生成结果文本
+     * @return 统计结果
+     */
+    String format() {
+        return format(chars(), words(), lines(), utf8Bytes(), codePoints());
+    }
+
+    /**
+     * 按字数统计服务的输出格式生成结果文本，供不持有完整统计器的调用方使用
+     */
+    static String format(long chars, long words, long lines, long utf8Bytes, long codePoints) {
+        return "字符数: " + chars + "\n单词数: " + words + "\n行数: " + lines
+                + "\n字节数: " + utf8Bytes + "\n码点数: " + codePoints;
+    }
+
+    /**
+     * 并行统计任务：递归二分区间，叶子任务顺序扫描，回溯时按顺序合并
+     */
+    private static final class CountTask extends RecursiveTask<WordCounter> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient CharSequence text;
+        private final int start;
+        private final int end;
+
+        CountTask(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected WordCounter compute() {
+            if (end - start <= SPLIT_THRESHOLD) {
+                WordCounter counter = new WordCounter();
+                counter.accept(text, start, end);
+                return counter;
+            }
+            int middle = (start + end) >>> 1;
+            CountTask left = new CountTask(text, start, middle);
+            CountTask right = new CountTask(text, middle, end);
+            right.fork();
+            WordCounter result = left.compute();
+            result.merge(right.join());
+            return result;
+        }
+    }
+}